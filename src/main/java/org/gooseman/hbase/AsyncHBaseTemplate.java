@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Non-blocking counterpart of {@link HBaseTemplate} built on {@link AsyncConnection}. Row and put
+ * mappers are the same functions used with the blocking template; they run on the thread that
+ * completes the RPC, so they should not block.
+ */
+public class AsyncHBaseTemplate implements Closeable {
+
+    private final AsyncConnection connection;
+    private final ConcurrentMap<String, AsyncTable<AdvancedScanResultConsumer>> tables = new ConcurrentHashMap<>();
+    private boolean indexedOutputSets;
+
+    public AsyncHBaseTemplate(AsyncConnection connection) {
+        this.connection = connection;
+    }
+
+    public <T> CompletableFuture<T> get(String tableName, Get get, Function<HBaseOutputSet, T> rowMapper) {
+        return table(tableName).get(get).thenApply(result -> rowMapper.apply(outputSet(result)));
+    }
+
+    public <T> CompletableFuture<List<T>> get(String tableName, List<Get> gets, Function<HBaseOutputSet, T> rowMapper) {
+        return table(tableName).getAll(gets).thenApply(results -> {
+            List<T> rows = new ArrayList<>(results.size());
+            for (Result result : results) {
+                rows.add(rowMapper.apply(outputSet(result)));
+            }
+            return rows;
+        });
+    }
+
+    // every batch of rows the region server returns is handed to the consumer; while the stage it
+    // returns is incomplete the scan is suspended, so a slow consumer holds back the scanner
+    public <T> CompletableFuture<Void> scan(String tableName, Scan scan, Function<HBaseOutputSet, T> rowMapper,
+                                            Function<List<T>, ? extends CompletionStage<?>> batchConsumer) {
+        BackpressuredScanConsumer<T> consumer = new BackpressuredScanConsumer<>(result -> rowMapper.apply(outputSet(result)), batchConsumer);
+        table(tableName).scan(scan, consumer);
+        return consumer.completion;
+    }
+
+    public <T> CompletableFuture<Void> save(String tableName, T entity, Function<T, HBaseInputSet> putMapper) {
+        return save(tableName, Collections.singletonList(entity), putMapper);
+    }
+
+    public <T> CompletableFuture<Void> save(String tableName, List<T> entities, Function<T, HBaseInputSet> putMapper) {
+        List<Put> puts = new ArrayList<>(entities.size());
+        for (T entity : entities) {
+            puts.add(putMapper.apply(entity).getPut());
+        }
+        return table(tableName).putAll(puts);
+    }
+
+    public boolean isIndexedOutputSets() {
+        return indexedOutputSets;
+    }
+
+    public void setIndexedOutputSets(boolean indexedOutputSets) {
+        this.indexedOutputSets = indexedOutputSets;
+    }
+
+    private HBaseOutputSet outputSet(Result result) {
+        return indexedOutputSets ? HBaseOutputSet.indexed(result) : new HBaseOutputSet(result);
+    }
+
+    // async tables are thread-safe, one per table name is enough
+    private AsyncTable<AdvancedScanResultConsumer> table(String tableName) {
+        AsyncTable<AdvancedScanResultConsumer> table = tables.get(tableName);
+        if (table == null) {
+            table = tables.computeIfAbsent(tableName, name -> connection.getTable(TableName.valueOf(name)));
+        }
+        return table;
+    }
+
+    public void close() throws IOException {
+        tables.clear();
+        connection.close();
+    }
+
+    private static class BackpressuredScanConsumer<T> implements AdvancedScanResultConsumer {
+
+        private final Function<Result, T> rowMapper;
+        private final Function<List<T>, ? extends CompletionStage<?>> batchConsumer;
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+        private volatile Throwable failure;
+
+        private BackpressuredScanConsumer(Function<Result, T> rowMapper,
+                                          Function<List<T>, ? extends CompletionStage<?>> batchConsumer) {
+            this.rowMapper = rowMapper;
+            this.batchConsumer = batchConsumer;
+        }
+
+        @Override
+        public void onNext(Result[] results, ScanController controller) {
+            if (stopped(controller)) {
+                return;
+            }
+            CompletableFuture<?> processed;
+            try {
+                List<T> batch = new ArrayList<>(results.length);
+                for (Result result : results) {
+                    batch.add(rowMapper.apply(result));
+                }
+                processed = batchConsumer.apply(batch).toCompletableFuture();
+            } catch (RuntimeException e) {
+                failure = e;
+                controller.terminate();
+                return;
+            }
+            if (processed.isDone()) {
+                processed.whenComplete((ignored, e) -> failed(e));
+                stopped(controller);
+                return;
+            }
+            ScanResumer resumer = controller.suspend();
+            processed.whenComplete((ignored, e) -> {
+                // a failed batch still resumes so the next callback can terminate the scan
+                failed(e);
+                resumer.resume();
+            });
+        }
+
+        @Override
+        public void onHeartbeat(ScanController controller) {
+            stopped(controller);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            completion.completeExceptionally(failure != null ? failure : error);
+        }
+
+        @Override
+        public void onComplete() {
+            if (failure != null) {
+                completion.completeExceptionally(failure);
+            } else {
+                completion.complete(null);
+            }
+        }
+
+        private void failed(Throwable e) {
+            if (e != null && failure == null) {
+                failure = e;
+            }
+        }
+
+        private boolean stopped(ScanController controller) {
+            if (failure != null || completion.isDone()) {
+                controller.terminate();
+                return true;
+            }
+            return false;
+        }
+    }
+}
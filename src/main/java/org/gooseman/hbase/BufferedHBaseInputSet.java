@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NavigableMap;
+
+/**
+ * Input set for high write rates. Values are encoded straight into a growable buffer, borrowed
+ * from a per-thread pool along with the cell bookkeeping, in the serialized {@link KeyValue}
+ * layout; building the put copies the buffer once into a single array for the whole row and every
+ * cell is a view over it. This saves the value array and the cell array {@link Put#addColumn}
+ * allocates per column.
+ */
+class BufferedHBaseInputSet extends HBaseInputSet {
+
+    private static final int INITIAL_CAPACITY = 512;
+    // larger buffers are left to the garbage collector rather than kept per thread
+    private static final int POOLED_CAPACITY_LIMIT = 1 << 20;
+    private static final ThreadLocal<Scratch> POOL = new ThreadLocal<>();
+
+    private final byte[] row;
+    private final long timestamp;
+    private Scratch scratch;
+    private byte[] buffer;
+    private int size;
+    private int cells;
+
+    BufferedHBaseInputSet(Put put) {
+        super(put);
+        this.row = put.getRow();
+        this.timestamp = put.getTimestamp();
+        Scratch pooled = POOL.get();
+        if (pooled == null) {
+            this.scratch = new Scratch();
+        } else {
+            // taken out of the pool so an input set built alongside this one gets its own buffer
+            POOL.set(null);
+            this.scratch = pooled;
+        }
+        this.buffer = scratch.buffer;
+    }
+
+    @Override
+    public HBaseInputSet addString(HBaseColumn column, String value) {
+        if (buffer == null) {
+            return super.addString(column, value);
+        }
+        // the buffer may grow while the cell is started, so it is read only afterwards
+        int offset = startCell(column, utf8Length(value));
+        encodeUtf8(value, buffer, offset);
+        return this;
+    }
+
+    @Override
+    public HBaseInputSet addDouble(HBaseColumn column, double value) {
+        if (buffer == null) {
+            return super.addDouble(column, value);
+        }
+        int offset = startCell(column, Bytes.SIZEOF_DOUBLE);
+        Bytes.putDouble(buffer, offset, value);
+        return this;
+    }
+
+    @Override
+    public HBaseInputSet addInt(HBaseColumn column, int value) {
+        if (buffer == null) {
+            return super.addInt(column, value);
+        }
+        int offset = startCell(column, Bytes.SIZEOF_INT);
+        Bytes.putInt(buffer, offset, value);
+        return this;
+    }
+
+    @Override
+    public HBaseInputSet addLong(HBaseColumn column, long value) {
+        if (buffer == null) {
+            return super.addLong(column, value);
+        }
+        int offset = startCell(column, Bytes.SIZEOF_LONG);
+        Bytes.putLong(buffer, offset, value);
+        return this;
+    }
+
+    @Override
+    public HBaseInputSet addFloat(HBaseColumn column, float value) {
+        if (buffer == null) {
+            return super.addFloat(column, value);
+        }
+        int offset = startCell(column, Bytes.SIZEOF_FLOAT);
+        Bytes.putFloat(buffer, offset, value);
+        return this;
+    }
+
+    @Override
+    public HBaseInputSet addBoolean(HBaseColumn column, boolean value) {
+        if (buffer == null) {
+            return super.addBoolean(column, value);
+        }
+        // same encoding as Bytes.toBytes(boolean)
+        int offset = startCell(column, 1);
+        buffer[offset] = value ? (byte) -1 : (byte) 0;
+        return this;
+    }
+
+    @Override
+    public HBaseInputSet addShort(HBaseColumn column, short value) {
+        if (buffer == null) {
+            return super.addShort(column, value);
+        }
+        int offset = startCell(column, Bytes.SIZEOF_SHORT);
+        Bytes.putShort(buffer, offset, value);
+        return this;
+    }
+
+    @Override
+    HBaseInputSet add(HBaseColumn column, byte[] value) {
+        if (buffer == null) {
+            return super.add(column, value);
+        }
+        int offset = startCell(column, value.length);
+        System.arraycopy(value, 0, buffer, offset, value.length);
+        return this;
+    }
+
+    // writes the key of a new cell and returns where its value goes
+    private int startCell(HBaseColumn column, int valueLength) {
+        byte[] family = column.family();
+        byte[] qualifier = column.qualifier();
+        int keyLength = KeyValue.KEY_INFRASTRUCTURE_SIZE + row.length + family.length + qualifier.length;
+        ensureCapacity(KeyValue.KEYVALUE_INFRASTRUCTURE_SIZE + keyLength + valueLength);
+        if (cells == scratch.offsets.length) {
+            scratch.offsets = Arrays.copyOf(scratch.offsets, cells * 2);
+            scratch.columns = Arrays.copyOf(scratch.columns, cells * 2);
+        }
+        scratch.columns[cells] = column;
+        scratch.offsets[cells++] = size;
+        int offset = Bytes.putInt(buffer, size, keyLength);
+        offset = Bytes.putInt(buffer, offset, valueLength);
+        offset = Bytes.putShort(buffer, offset, (short) row.length);
+        offset = Bytes.putBytes(buffer, offset, row, 0, row.length);
+        offset = Bytes.putByte(buffer, offset, (byte) family.length);
+        offset = Bytes.putBytes(buffer, offset, family, 0, family.length);
+        offset = Bytes.putBytes(buffer, offset, qualifier, 0, qualifier.length);
+        offset = Bytes.putLong(buffer, offset, timestamp);
+        offset = Bytes.putByte(buffer, offset, KeyValue.Type.Put.getCode());
+        size = offset + valueLength;
+        return offset;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            scratch.buffer = buffer;
+        }
+    }
+
+    // the buffer goes back to the pool once the put is built, later adds go to the put directly
+    @Override
+    Put getPut() {
+        Put put = super.getPut();
+        if (buffer == null) {
+            return put;
+        }
+        byte[] cellArray = Arrays.copyOf(buffer, size);
+        int[] offsets = scratch.offsets;
+        NavigableMap<byte[], List<Cell>> familyCells = put.getFamilyCellMap();
+        for (int i = 0; i < cells; i++) {
+            int end = i + 1 < cells ? offsets[i + 1] : size;
+            byte[] family = scratch.columns[i].family();
+            List<Cell> familyList = familyCells.get(family);
+            if (familyList == null) {
+                familyList = new ArrayList<>();
+                familyCells.put(family, familyList);
+            }
+            familyList.add(new KeyValue(cellArray, offsets[i], end - offsets[i]));
+        }
+        if (buffer.length <= POOLED_CAPACITY_LIMIT) {
+            Arrays.fill(scratch.columns, 0, cells, null);
+            POOL.set(scratch);
+        }
+        scratch = null;
+        buffer = null;
+        return put;
+    }
+
+    private static final class Scratch {
+        private byte[] buffer = new byte[INITIAL_CAPACITY];
+        private HBaseColumn[] columns = new HBaseColumn[16];
+        private int[] offsets = new int[16];
+    }
+
+    // matches String.getBytes(UTF_8), which Bytes.toBytes(String) uses, including the '?' it
+    // writes for unpaired surrogates
+    static int utf8Length(String value) {
+        int length = value.length();
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    length++;
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    length += 2;
+                    i++;
+                } else if (!Character.isSurrogate(c)) {
+                    length += 2;
+                }
+            }
+        }
+        return length;
+    }
+
+    static int encodeUtf8(String value, byte[] buffer, int offset) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[offset++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[offset++] = (byte) (0xc0 | c >> 6);
+                buffer[offset++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[offset++] = (byte) (0xf0 | codePoint >> 18);
+                buffer[offset++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                buffer[offset++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                buffer[offset++] = (byte) (0x80 | codePoint & 0x3f);
+            } else if (Character.isSurrogate(c)) {
+                buffer[offset++] = '?';
+            } else {
+                buffer[offset++] = (byte) (0xe0 | c >> 12);
+                buffer[offset++] = (byte) (0x80 | c >> 6 & 0x3f);
+                buffer[offset++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        return offset;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import java.util.DoubleSummaryStatistics;
+import java.util.LongSummaryStatistics;
+import java.util.Map;
+
+/**
+ * The rows of one group of an {@link HBaseAggregation} and the statistics of each of its
+ * metrics, by metric name.
+ */
+public class HBaseAggregate {
+
+    private final Map<String, Integer> longIndexes;
+    private final Map<String, Integer> doubleIndexes;
+    long count;
+    final LongSummaryStatistics[] longs;
+    final DoubleSummaryStatistics[] doubles;
+
+    HBaseAggregate(Map<String, Integer> longIndexes, int longCount, Map<String, Integer> doubleIndexes, int doubleCount) {
+        this.longIndexes = longIndexes;
+        this.doubleIndexes = doubleIndexes;
+        this.longs = new LongSummaryStatistics[longCount];
+        for (int i = 0; i < longCount; i++) {
+            longs[i] = new LongSummaryStatistics();
+        }
+        this.doubles = new DoubleSummaryStatistics[doubleCount];
+        for (int i = 0; i < doubleCount; i++) {
+            doubles[i] = new DoubleSummaryStatistics();
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public LongSummaryStatistics getLongs(String name) {
+        return longs[index(longIndexes, name)];
+    }
+
+    public DoubleSummaryStatistics getDoubles(String name) {
+        return doubles[index(doubleIndexes, name)];
+    }
+
+    private static int index(Map<String, Integer> indexes, String name) {
+        Integer index = indexes.get(name);
+        if (index == null) {
+            throw new IllegalArgumentException("No such aggregate: " + name);
+        }
+        return index;
+    }
+
+    void merge(HBaseAggregate other) {
+        count += other.count;
+        for (int i = 0; i < longs.length; i++) {
+            longs[i].combine(other.longs[i]);
+        }
+        for (int i = 0; i < doubles.length; i++) {
+            doubles[i].combine(other.doubles[i]);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Result of an {@link HBaseAggregation}: one aggregate per group and their total.
+ */
+public class HBaseAggregates<K> {
+
+    private final Map<K, HBaseAggregate> groups;
+    private final HBaseAggregate total;
+
+    HBaseAggregates(Map<K, HBaseAggregate> groups, HBaseAggregate total) {
+        this.groups = Collections.unmodifiableMap(groups);
+        this.total = total;
+    }
+
+    public Map<K, HBaseAggregate> getGroups() {
+        return groups;
+    }
+
+    // null for a key no row had
+    public HBaseAggregate getGroup(K key) {
+        return groups.get(key);
+    }
+
+    public HBaseAggregate getTotal() {
+        return total;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Count, sum, min, max and average of values read from every row of a scan, optionally grouped by
+ * a key, run by {@link HBaseTemplate#aggregate}. Values are accumulated in
+ * {@link java.util.LongSummaryStatistics} and {@link java.util.DoubleSummaryStatistics}, so
+ * nothing is boxed per row.
+ * <p>
+ * Metrics over a column skip rows without it. When the key and every metric declare the columns
+ * they read, only those columns are fetched, and only the row keys when none are needed. Scans
+ * that already carry a filter are left as they are, the filter may test columns nobody declared.
+ */
+public class HBaseAggregation<K> {
+
+    private final Function<HBaseOutputSet, K> key;
+    private final Set<HBaseColumn> columns = new LinkedHashSet<>();
+    private boolean fullRows;
+    private final Map<String, Integer> longIndexes = new HashMap<>();
+    private final List<HBaseColumn> longColumns = new ArrayList<>();
+    private final List<ToLongFunction<HBaseOutputSet>> longExtractors = new ArrayList<>();
+    private final Map<String, Integer> doubleIndexes = new HashMap<>();
+    private final List<HBaseColumn> doubleColumns = new ArrayList<>();
+    private final List<ToDoubleFunction<HBaseOutputSet>> doubleExtractors = new ArrayList<>();
+
+    private HBaseAggregation(Function<HBaseOutputSet, K> key, HBaseColumn[] keyColumns, boolean keyReadsColumns) {
+        this.key = key;
+        Collections.addAll(columns, keyColumns);
+        this.fullRows = keyReadsColumns && keyColumns.length == 0;
+    }
+
+    // a single group over every row
+    public static HBaseAggregation<Void> total() {
+        return new HBaseAggregation<>(outputSet -> null, new HBaseColumn[0], false);
+    }
+
+    public static HBaseAggregation<String> groupBy(HBaseColumn column) {
+        return new HBaseAggregation<>(outputSet -> outputSet.getString(column), new HBaseColumn[] { column }, true);
+    }
+
+    // a key read without declaring its columns makes every row come back whole
+    public static <K> HBaseAggregation<K> groupBy(Function<HBaseOutputSet, K> key, HBaseColumn... keyColumns) {
+        return new HBaseAggregation<>(key, keyColumns, true);
+    }
+
+    public HBaseAggregation<K> ints(String name, HBaseColumn column) {
+        return addLongs(name, column, outputSet -> outputSet.getInt(column, 0), new HBaseColumn[] { column });
+    }
+
+    public HBaseAggregation<K> longs(String name, HBaseColumn column) {
+        return addLongs(name, column, outputSet -> outputSet.getLong(column, 0L), new HBaseColumn[] { column });
+    }
+
+    // every row counts, the extractor decides what a missing value is worth
+    public HBaseAggregation<K> longs(String name, ToLongFunction<HBaseOutputSet> extractor, HBaseColumn... reads) {
+        return addLongs(name, null, extractor, reads);
+    }
+
+    public HBaseAggregation<K> doubles(String name, HBaseColumn column) {
+        return addDoubles(name, column, outputSet -> outputSet.getDouble(column, 0.0), new HBaseColumn[] { column });
+    }
+
+    public HBaseAggregation<K> doubles(String name, ToDoubleFunction<HBaseOutputSet> extractor, HBaseColumn... reads) {
+        return addDoubles(name, null, extractor, reads);
+    }
+
+    private HBaseAggregation<K> addLongs(String name, HBaseColumn column, ToLongFunction<HBaseOutputSet> extractor, HBaseColumn[] reads) {
+        checkName(name);
+        longIndexes.put(name, longExtractors.size());
+        longColumns.add(column);
+        longExtractors.add(extractor);
+        return reads(reads);
+    }
+
+    private HBaseAggregation<K> addDoubles(String name, HBaseColumn column, ToDoubleFunction<HBaseOutputSet> extractor, HBaseColumn[] reads) {
+        checkName(name);
+        doubleIndexes.put(name, doubleExtractors.size());
+        doubleColumns.add(column);
+        doubleExtractors.add(extractor);
+        return reads(reads);
+    }
+
+    private void checkName(String name) {
+        if (longIndexes.containsKey(name) || doubleIndexes.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate aggregate: " + name);
+        }
+    }
+
+    private HBaseAggregation<K> reads(HBaseColumn[] reads) {
+        if (reads.length == 0) {
+            fullRows = true;
+        }
+        Collections.addAll(columns, reads);
+        return this;
+    }
+
+    // returns a narrowed copy, the caller's scan is not touched
+    Scan apply(Scan scan) throws IOException {
+        if (fullRows || scan.getFilter() != null) {
+            return scan;
+        }
+        Scan narrowed = new Scan(scan);
+        if (columns.isEmpty()) {
+            // counting rows only needs one cell per row, without its value
+            return narrowed.setFilter(new FilterList(new FirstKeyOnlyFilter(), new KeyOnlyFilter()));
+        }
+        for (HBaseColumn column : columns) {
+            narrowed.addColumn(column.family(), column.qualifier());
+        }
+        return narrowed;
+    }
+
+    void accumulate(Map<K, HBaseAggregate> groups, HBaseOutputSet outputSet) {
+        K groupKey = key.apply(outputSet);
+        HBaseAggregate group = groups.get(groupKey);
+        if (group == null) {
+            group = newAggregate();
+            groups.put(groupKey, group);
+        }
+        group.count++;
+        for (int i = 0; i < group.longs.length; i++) {
+            HBaseColumn column = longColumns.get(i);
+            if (column == null || outputSet.has(column)) {
+                group.longs[i].accept(longExtractors.get(i).applyAsLong(outputSet));
+            }
+        }
+        for (int i = 0; i < group.doubles.length; i++) {
+            HBaseColumn column = doubleColumns.get(i);
+            if (column == null || outputSet.has(column)) {
+                group.doubles[i].accept(doubleExtractors.get(i).applyAsDouble(outputSet));
+            }
+        }
+    }
+
+    HBaseAggregate newAggregate() {
+        return new HBaseAggregate(longIndexes, longExtractors.size(), doubleIndexes, doubleExtractors.size());
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed size direct buffers shared by the {@link HBaseResultBuffer}s of a template. At most
+ * capacity bytes are ever allocated, chunks are reused once the buffer holding them is closed, and
+ * rows that find no free chunk are spilled to files under the spill directory.
+ */
+public class HBaseBufferPool {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+    public static final long DEFAULT_CAPACITY = 256L * 1024 * 1024;
+
+    private final int chunkSize;
+    private final long capacity;
+    private final Path spillDirectory;
+    private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+    private final AtomicLong allocated = new AtomicLong();
+
+    public HBaseBufferPool() {
+        this(DEFAULT_CHUNK_SIZE, DEFAULT_CAPACITY, Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    public HBaseBufferPool(int chunkSize, long capacity, Path spillDirectory) {
+        if (chunkSize <= 0 || capacity < 0) {
+            throw new IllegalArgumentException("chunkSize must be positive and capacity not negative");
+        }
+        this.chunkSize = chunkSize;
+        this.capacity = capacity;
+        this.spillDirectory = spillDirectory;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public Path getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    // direct memory held by the pool, whether in use or free
+    public long getAllocatedBytes() {
+        return allocated.get();
+    }
+
+    // null once the capacity is used up and no chunk has been released
+    ByteBuffer acquire() {
+        ByteBuffer chunk = free.poll();
+        if (chunk != null) {
+            return chunk;
+        }
+        long current;
+        do {
+            current = allocated.get();
+            if (current + chunkSize > capacity) {
+                return null;
+            }
+        } while (!allocated.compareAndSet(current, current + chunkSize));
+        return ByteBuffer.allocateDirect(chunkSize);
+    }
+
+    void release(ByteBuffer chunk) {
+        chunk.clear();
+        free.offer(chunk);
+    }
+}
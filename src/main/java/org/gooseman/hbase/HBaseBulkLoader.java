@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptor;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.RegionLocator;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.client.TableDescriptor;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.io.hfile.HFileContextBuilder;
+import org.apache.hadoop.hbase.regionserver.BloomType;
+import org.apache.hadoop.hbase.regionserver.HStoreFile;
+import org.apache.hadoop.hbase.regionserver.StoreFileWriter;
+import org.apache.hadoop.hbase.tool.LoadIncrementalHFiles;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Writes mapped rows as sorted HFiles under a directory instead of sending puts to the region
+ * servers, then hands the files to the cluster with {@link #load()}. Rows are buffered in memory up
+ * to {@link #bufferSize(long)} and every time the buffer fills it is sorted and spilled into one
+ * file per region and family, so memory stays bounded however many rows are written. Spills are not
+ * merged, a large load leaves several files per store which HBase compacts as usual. Of several
+ * writes to the same cell only those buffered together are resolved to the last one, rows written
+ * more than once should carry explicit timestamps.
+ * <p>
+ * Every loader writes into a subdirectory of its own under the directory, so several loaders can
+ * share one. The directory should be on the cluster's filesystem, the files are moved from there
+ * into the regions. Bulk loads need hbase-server on the classpath.
+ */
+public class HBaseBulkLoader<T> implements Closeable {
+
+    public static final long DEFAULT_BUFFER_SIZE = 64L * 1024 * 1024;
+
+    private final Connection connection;
+    private final TableName tableName;
+    private final TableDescriptor descriptor;
+    private final byte[][] startKeys;
+    private final HBaseRowKeySalt salt;
+    private final Function<T, HBaseInputSet> putMapper;
+    private final Path directory;
+    private final HBaseRowCache rowCache;
+    private final HBaseOperationRecorder recorder;
+    private final Configuration conf;
+    private final byte[] timestamp;
+
+    private final List<Cell> cells = new ArrayList<>();
+    private final List<Path> files = new ArrayList<>();
+    private long bufferSize = DEFAULT_BUFFER_SIZE;
+    private long bufferedBytes;
+    private int spills;
+    private boolean closed;
+
+    HBaseBulkLoader(Connection connection, TableName tableName, TableDescriptor descriptor, byte[][] startKeys,
+                    HBaseRowKeySalt salt, Function<T, HBaseInputSet> putMapper, Path directory,
+                    HBaseRowCache rowCache, HBaseOperationRecorder recorder) {
+        this.connection = connection;
+        this.tableName = tableName;
+        this.descriptor = descriptor;
+        this.startKeys = startKeys.length == 0 ? new byte[][]{HConstants.EMPTY_START_ROW} : startKeys;
+        this.salt = salt;
+        this.putMapper = putMapper;
+        this.directory = new Path(directory, UUID.randomUUID().toString());
+        this.rowCache = rowCache;
+        this.recorder = recorder;
+        this.conf = connection.getConfiguration();
+        // cells written without a timestamp all get the time the loader was created, like the
+        // region server would stamp them on arrival
+        this.timestamp = Bytes.toBytes(System.currentTimeMillis());
+    }
+
+    // the heap size of buffered puts that triggers a spill
+    public HBaseBulkLoader<T> bufferSize(long bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive");
+        }
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    public void write(T entity) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Bulk loader is closed");
+        }
+        Put put = recorder.map(putMapper, entity).getPut();
+        if (salt != null) {
+            put = salt.salt(put);
+        }
+        recorder.wrote(put);
+        for (List<Cell> familyCells : put.getFamilyCellMap().values()) {
+            for (Cell cell : familyCells) {
+                KeyValue keyValue = cell instanceof KeyValue ? (KeyValue) cell : KeyValueUtil.copyToNewKeyValue(cell);
+                keyValue.updateLatestStamp(timestamp);
+                cells.add(keyValue);
+            }
+        }
+        bufferedBytes += put.heapSize();
+        if (bufferedBytes >= bufferSize) {
+            spill();
+        }
+    }
+
+    public void writeAll(Iterator<T> entities) throws IOException {
+        while (entities.hasNext()) {
+            write(entities.next());
+        }
+    }
+
+    // the files written so far, grouped by family directory as the bulk load expects them; files of
+    // a failed spill are deleted and not listed
+    public List<Path> getFiles() {
+        return files;
+    }
+
+    // spills whatever is still buffered, the files stay in the directory until load() is called
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            spill();
+        } finally {
+            recorder.report();
+        }
+    }
+
+    // loads the files this loader wrote into the table, rows that moved to another region since the
+    // loader was created are split by the bulk load itself
+    public void load() throws IOException {
+        close();
+        if (files.isEmpty()) {
+            return;
+        }
+        Map<byte[], List<Path>> familyFiles = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+        for (Path file : files) {
+            familyFiles.computeIfAbsent(Bytes.toBytes(file.getParent().getName()), family -> new ArrayList<>()).add(file);
+        }
+        try {
+            recorder.call(() -> {
+                try (Admin admin = connection.getAdmin();
+                     Table table = connection.getTable(tableName);
+                     RegionLocator regionLocator = connection.getRegionLocator(tableName)) {
+                    new LoadIncrementalHFiles(conf).doBulkLoad(familyFiles, admin, table, regionLocator, false, false);
+                }
+                return null;
+            });
+        } finally {
+            recorder.report();
+        }
+        // loaded rows are not known one by one without reading the files back
+        if (rowCache != null) {
+            rowCache.invalidateAll();
+        }
+    }
+
+    private void spill() throws IOException {
+        if (cells.isEmpty()) {
+            return;
+        }
+        CellComparator comparator = CellComparator.getInstance();
+        // the sort is stable, of several writes to the same cell the last one ends up last
+        cells.sort(comparator);
+        Map<byte[], StoreFileWriter> writers = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+        List<Path> spilled = new ArrayList<>();
+        boolean written = false;
+        try {
+            recorder.call(() -> {
+                int region = -1;
+                byte[] regionEnd = null;
+                for (int i = 0; i < cells.size(); i++) {
+                    Cell cell = cells.get(i);
+                    if (i + 1 < cells.size() && comparator.compare(cell, cells.get(i + 1)) == 0) {
+                        continue;
+                    }
+                    if (region < 0 || regionEnd != null && Bytes.compareTo(cell.getRowArray(), cell.getRowOffset(),
+                            cell.getRowLength(), regionEnd, 0, regionEnd.length) >= 0) {
+                        closeAll(writers);
+                        region = regionOf(Bytes.copy(cell.getRowArray(), cell.getRowOffset(), cell.getRowLength()));
+                        regionEnd = region + 1 < startKeys.length ? startKeys[region + 1] : null;
+                    }
+                    byte[] family = Bytes.copy(cell.getFamilyArray(), cell.getFamilyOffset(), cell.getFamilyLength());
+                    StoreFileWriter writer = writers.get(family);
+                    if (writer == null) {
+                        writer = createWriter(family, region);
+                        writers.put(family, writer);
+                        spilled.add(writer.getPath());
+                    }
+                    writer.append(cell);
+                }
+                closeAll(writers);
+                return null;
+            });
+            written = true;
+        } finally {
+            try {
+                closeAll(writers);
+            } finally {
+                if (written) {
+                    files.addAll(spilled);
+                } else {
+                    delete(spilled);
+                }
+                spills++;
+                cells.clear();
+                bufferedBytes = 0;
+            }
+        }
+    }
+
+    private int regionOf(byte[] row) {
+        int index = Arrays.binarySearch(startKeys, row, Bytes.BYTES_COMPARATOR);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    // written the way HFileOutputFormat2 writes them, with the family's bloom filter and the time
+    // range of the cells so reads can skip the file
+    private StoreFileWriter createWriter(byte[] family, int region) throws IOException {
+        Path path = new Path(new Path(directory, Bytes.toString(family)), String.format("%05d-%05d", spills, region));
+        FileSystem fs = path.getFileSystem(conf);
+        HFileContextBuilder context = new HFileContextBuilder().withCreateTime(System.currentTimeMillis());
+        BloomType bloomType = BloomType.NONE;
+        ColumnFamilyDescriptor familyDescriptor = descriptor == null ? null : descriptor.getColumnFamily(family);
+        if (familyDescriptor != null) {
+            context.withCompression(familyDescriptor.getCompressionType())
+                    .withBlockSize(familyDescriptor.getBlocksize())
+                    .withDataBlockEncoding(familyDescriptor.getDataBlockEncoding());
+            bloomType = familyDescriptor.getBloomFilterType();
+        }
+        return new StoreFileWriter.Builder(conf, CacheConfig.DISABLED, fs)
+                .withFilePath(path)
+                .withComparator(CellComparator.getInstance())
+                .withBloomType(bloomType)
+                .withFileContext(context.build())
+                .build();
+    }
+
+    private void closeAll(Map<byte[], StoreFileWriter> writers) throws IOException {
+        try {
+            for (StoreFileWriter writer : writers.values()) {
+                writer.appendFileInfo(HStoreFile.BULKLOAD_TIME_KEY, timestamp);
+                writer.appendTrackedTimestampsToMetadata();
+                writer.close();
+            }
+        } finally {
+            writers.clear();
+        }
+    }
+
+    // best effort, the spill has already failed and load() only loads the listed files anyway
+    private void delete(List<Path> paths) {
+        for (Path path : paths) {
+            try {
+                path.getFileSystem(conf).delete(path, false);
+            } catch (IOException e) {
+                // left behind in the loader's own directory
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The rows changed within one window of an incremental scan. The checkpoint only moves when
+ * {@link #commit()} is called, which should happen once every row has been processed; a run that
+ * fails before that is read again in full by the next one.
+ */
+public class HBaseChangeScan<T> implements Iterator<T>, Closeable {
+
+    private final HBaseScanIterator<T> rows;
+    private final HBaseCheckpointStore checkpoints;
+    private final String checkpointName;
+    private final long from;
+    private final long to;
+
+    HBaseChangeScan(HBaseScanIterator<T> rows, HBaseCheckpointStore checkpoints, String checkpointName, long from, long to) {
+        this.rows = rows;
+        this.checkpoints = checkpoints;
+        this.checkpointName = checkpointName;
+        this.from = from;
+        this.to = to;
+    }
+
+    // inclusive
+    public long getFrom() {
+        return from;
+    }
+
+    // exclusive, the checkpoint saved on commit
+    public long getTo() {
+        return to;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return rows != null && rows.hasNext();
+    }
+
+    @Override
+    public T next() {
+        if (rows == null) {
+            throw new NoSuchElementException();
+        }
+        return rows.next();
+    }
+
+    public Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED), false)
+                .onClose(this::close);
+    }
+
+    public void commit() throws IOException {
+        if (to > from) {
+            checkpoints.save(checkpointName, to);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (rows != null) {
+            rows.close();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import java.io.IOException;
+
+/**
+ * Keeps the high-water mark of every incremental scan, by checkpoint name, across runs.
+ */
+public interface HBaseCheckpointStore {
+
+    // null when the checkpoint has never been saved
+    Long load(String checkpointName) throws IOException;
+
+    void save(String checkpointName, long timestamp) throws IOException;
+}
@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encoding of a field type the input and output sets have no typed methods for. Implementations
+ * need a public no-arg constructor and are shared by all rows, so they have to be stateless.
+ */
+public interface HBaseCodec<T> {
+
+    byte[] encode(T value);
+
+    // the buffer is a read-only view over the cell, positioned at the value
+    T decode(ByteBuffer value);
+}
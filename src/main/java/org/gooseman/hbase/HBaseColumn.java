@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.apache.hadoop.hbase.util.Bytes.toBytes;
+
+/**
+ * Immutable family/qualifier pair with both names encoded once, meant to be kept in a constant and
+ * reused for every row.
+ */
+public final class HBaseColumn {
+
+    static final int CACHE_LIMIT = 4096;
+
+    private static final ConcurrentMap<String, ConcurrentMap<String, HBaseColumn>> CACHE = new ConcurrentHashMap<>();
+    private static final AtomicInteger CACHED = new AtomicInteger();
+
+    private final String familyName;
+    private final String qualifierName;
+    private final byte[] family;
+    private final byte[] qualifier;
+    private final int hash;
+
+    private HBaseColumn(String familyName, String qualifierName, byte[] family, byte[] qualifier) {
+        this.familyName = familyName;
+        this.qualifierName = qualifierName;
+        this.family = family;
+        this.qualifier = qualifier;
+        this.hash = hash(family, 0, family.length, qualifier, 0, qualifier.length);
+    }
+
+    public static HBaseColumn of(String family, String qualifier) {
+        return new HBaseColumn(family, qualifier, toBytes(family), toBytes(qualifier));
+    }
+
+    public static HBaseColumn of(byte[] family, byte[] qualifier) {
+        return new HBaseColumn(Bytes.toString(family), Bytes.toString(qualifier), family.clone(), qualifier.clone());
+    }
+
+    // backs the String overloads of the input and output sets; once the cache is full new
+    // columns are still encoded, just not retained
+    static HBaseColumn cached(String family, String qualifier) {
+        ConcurrentMap<String, HBaseColumn> columns = CACHE.get(family);
+        if (columns == null) {
+            if (CACHED.get() >= CACHE_LIMIT) {
+                return of(family, qualifier);
+            }
+            columns = CACHE.computeIfAbsent(family, name -> new ConcurrentHashMap<>());
+        }
+        HBaseColumn column = columns.get(qualifier);
+        if (column == null) {
+            column = of(family, qualifier);
+            if (CACHED.get() < CACHE_LIMIT && columns.putIfAbsent(qualifier, column) == null) {
+                CACHED.incrementAndGet();
+            }
+        }
+        return column;
+    }
+
+    // shared with IndexedHBaseOutputSet, which hashes family and qualifier in place inside the cells
+    static int hash(byte[] family, int familyOffset, int familyLength, byte[] qualifier, int qualifierOffset, int qualifierLength) {
+        int hash = 1;
+        for (int i = familyOffset; i < familyOffset + familyLength; i++) {
+            hash = 31 * hash + family[i];
+        }
+        hash = 31 * hash + ':';
+        for (int i = qualifierOffset; i < qualifierOffset + qualifierLength; i++) {
+            hash = 31 * hash + qualifier[i];
+        }
+        return hash;
+    }
+
+    public String getFamilyName() {
+        return familyName;
+    }
+
+    public String getQualifierName() {
+        return qualifierName;
+    }
+
+    public byte[] getFamily() {
+        return family.clone();
+    }
+
+    public byte[] getQualifier() {
+        return qualifier.clone();
+    }
+
+    byte[] family() {
+        return family;
+    }
+
+    byte[] qualifier() {
+        return qualifier;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof HBaseColumn)) {
+            return false;
+        }
+        HBaseColumn other = (HBaseColumn) o;
+        return hash == other.hash && Bytes.equals(family, other.family) && Bytes.equals(qualifier, other.qualifier);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return familyName + ":" + qualifierName;
+    }
+}
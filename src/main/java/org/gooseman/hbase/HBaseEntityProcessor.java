@@ -0,0 +1,375 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates {@code <Entity>HBaseMapper} classes for {@link HBaseEntity} classes. The generated
+ * mappers call the typed getters and adders with precomputed {@link HBaseColumn} constants, so they
+ * cost the same as hand-written ones and need no reflection at runtime.
+ */
+@SupportedAnnotationTypes("org.gooseman.hbase.HBaseEntity")
+public class HBaseEntityProcessor extends AbstractProcessor {
+
+    private static final Map<String, ColumnType> COLUMN_TYPES = new HashMap<>();
+
+    // primitive fields are passed unboxed, addInt and the primitive overloads of the other adders
+    static {
+        COLUMN_TYPES.put("java.lang.String", new ColumnType("addString", "getString", null));
+        COLUMN_TYPES.put("java.lang.Integer", new ColumnType("addInteger", "getInteger", null));
+        COLUMN_TYPES.put("int", new ColumnType("addInt", null, "getInt"));
+        COLUMN_TYPES.put("java.lang.Long", new ColumnType("addLong", "getLong", null));
+        COLUMN_TYPES.put("long", new ColumnType("addLong", null, "getLong"));
+        COLUMN_TYPES.put("java.lang.Double", new ColumnType("addDouble", "getDouble", null));
+        COLUMN_TYPES.put("double", new ColumnType("addDouble", null, "getDouble"));
+        COLUMN_TYPES.put("java.lang.Float", new ColumnType("addFloat", "getFloat", null));
+        COLUMN_TYPES.put("float", new ColumnType("addFloat", null, "getFloat"));
+        COLUMN_TYPES.put("java.lang.Short", new ColumnType("addShort", "getShort", null));
+        COLUMN_TYPES.put("short", new ColumnType("addShort", null, "getShort"));
+        COLUMN_TYPES.put("java.lang.Boolean", new ColumnType("addBoolean", "getBoolean", null));
+        COLUMN_TYPES.put("boolean", new ColumnType("addBoolean", null, "getBoolean"));
+        COLUMN_TYPES.put("java.math.BigDecimal", new ColumnType("addBigDecimal", "getBigDecimal", null));
+        COLUMN_TYPES.put("java.time.LocalDate", new ColumnType("addLocalDate", "getLocalDate", null));
+        COLUMN_TYPES.put("java.time.LocalDateTime", new ColumnType("addLocalDateTime", "getLocalDateTime", null));
+        COLUMN_TYPES.put("byte[]", new ColumnType("addBytes", "getBytes", null));
+    }
+
+    private static final Map<String, String> ROW_KEY_DECODERS = new HashMap<>();
+
+    static {
+        ROW_KEY_DECODERS.put("java.lang.String", "Bytes.toString(row)");
+        ROW_KEY_DECODERS.put("byte[]", "row");
+        ROW_KEY_DECODERS.put("int", "Bytes.toInt(row)");
+        ROW_KEY_DECODERS.put("java.lang.Integer", "Bytes.toInt(row)");
+        ROW_KEY_DECODERS.put("long", "Bytes.toLong(row)");
+        ROW_KEY_DECODERS.put("java.lang.Long", "Bytes.toLong(row)");
+        ROW_KEY_DECODERS.put("short", "Bytes.toShort(row)");
+        ROW_KEY_DECODERS.put("java.lang.Short", "Bytes.toShort(row)");
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(HBaseEntity.class)) {
+            try {
+                generate(entity(element));
+            } catch (InvalidEntityException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage(), e.element);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Could not write mapper: " + e.getMessage(), element);
+            }
+        }
+        return true;
+    }
+
+    private Entity entity(Element element) {
+        if (element.getKind() != ElementKind.CLASS || element.getModifiers().contains(Modifier.ABSTRACT)) {
+            throw new InvalidEntityException(element, "@HBaseEntity only applies to concrete classes");
+        }
+        TypeElement type = (TypeElement) element;
+        if (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)) {
+            throw new InvalidEntityException(element, "@HBaseEntity classes nested in another class have to be static");
+        }
+        List<ExecutableElement> constructors = ElementFilter.constructorsIn(type.getEnclosedElements());
+        if (constructors.stream().noneMatch(constructor -> constructor.getParameters().isEmpty()
+                && !constructor.getModifiers().contains(Modifier.PRIVATE))) {
+            throw new InvalidEntityException(element, "@HBaseEntity classes need a non-private no-arg constructor");
+        }
+
+        Entity entity = new Entity(type);
+        String family = type.getAnnotation(HBaseEntity.class).family();
+        Set<String> constants = new HashSet<>();
+        Set<String> columns = new HashSet<>();
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            if (field.getModifiers().contains(Modifier.STATIC) || field.getModifiers().contains(Modifier.TRANSIENT)) {
+                continue;
+            }
+            Field mapped = field(type, field);
+            if (field.getAnnotation(HBaseRowKey.class) != null) {
+                if (entity.rowKey != null) {
+                    throw new InvalidEntityException(field, "Only one field can be the @HBaseRowKey");
+                }
+                if (!ROW_KEY_DECODERS.containsKey(mapped.typeName)) {
+                    throw new InvalidEntityException(field, "Row keys have to be a String, byte[], int, long or short");
+                }
+                entity.rowKey = mapped;
+                continue;
+            }
+            HBaseQualifier qualifier = field.getAnnotation(HBaseQualifier.class);
+            mapped.family = qualifier == null || qualifier.family().isEmpty() ? family : qualifier.family();
+            mapped.qualifier = qualifier == null || qualifier.value().isEmpty() ? mapped.name : qualifier.value();
+            mapped.constant = constantName(mapped.name);
+            mapped.codec = codec(field);
+            if (mapped.codec == null) {
+                mapped.columnType = COLUMN_TYPES.get(mapped.typeName);
+                mapped.isEnum = field.asType().getKind() == TypeKind.DECLARED
+                        && ((DeclaredType) field.asType()).asElement().getKind() == ElementKind.ENUM;
+                if (mapped.columnType == null && !mapped.isEnum) {
+                    throw new InvalidEntityException(field, "No column type for " + mapped.typeName
+                            + ", use @HBaseQualifier(codec = ...) or make the field transient");
+                }
+            }
+            if (mapped.family.isEmpty()) {
+                throw new InvalidEntityException(field, "No column family for " + mapped.name);
+            }
+            if (!columns.add(mapped.family + ":" + mapped.qualifier)) {
+                throw new InvalidEntityException(field, "Column " + mapped.family + ":" + mapped.qualifier + " is mapped twice");
+            }
+            if (!constants.add(mapped.constant) || mapped.constant.equals("ROW_MAPPER") || mapped.constant.equals("PUT_MAPPER")) {
+                throw new InvalidEntityException(field, "Field " + mapped.name + " clashes with another generated constant");
+            }
+            entity.fields.add(mapped);
+        }
+        if (entity.rowKey == null) {
+            throw new InvalidEntityException(element, "@HBaseEntity classes need a @HBaseRowKey field");
+        }
+        return entity;
+    }
+
+    // non-private fields are accessed directly, private ones through bean accessors, which may not
+    // exist yet when they are generated by another processor such as Lombok
+    private Field field(TypeElement type, VariableElement element) {
+        Field field = new Field();
+        field.name = element.getSimpleName().toString();
+        field.typeName = element.asType().toString();
+        if (!element.getModifiers().contains(Modifier.PRIVATE)) {
+            field.getter = field.name;
+            field.setter = field.name + " = ";
+            return field;
+        }
+        String capitalized = Character.toUpperCase(field.name.charAt(0)) + field.name.substring(1);
+        field.getter = "get" + capitalized + "()";
+        if (element.asType().getKind() == TypeKind.BOOLEAN) {
+            boolean declaresGet = ElementFilter.methodsIn(type.getEnclosedElements()).stream()
+                    .anyMatch(method -> method.getSimpleName().contentEquals("get" + capitalized) && method.getParameters().isEmpty());
+            if (!declaresGet) {
+                field.getter = "is" + capitalized + "()";
+            }
+        }
+        field.setter = "set" + capitalized + "(";
+        return field;
+    }
+
+    private static String codec(VariableElement field) {
+        for (AnnotationMirror annotation : field.getAnnotationMirrors()) {
+            if (!annotation.getAnnotationType().toString().equals(HBaseQualifier.class.getCanonicalName())) {
+                continue;
+            }
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value : annotation.getElementValues().entrySet()) {
+                if (value.getKey().getSimpleName().contentEquals("codec")) {
+                    String codec = value.getValue().getValue().toString();
+                    return codec.equals(HBaseCodec.class.getCanonicalName()) ? null : codec;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void generate(Entity entity) throws IOException {
+        String entityName = entity.type.getQualifiedName().toString();
+        PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(entity.type);
+        String packageName = packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+        String mapperName = entityName.substring(packageName.isEmpty() ? 0 : packageName.length() + 1).replace('.', '_')
+                + "HBaseMapper";
+
+        StringBuilder out = new StringBuilder();
+        out.append("// Generated by ").append(HBaseEntityProcessor.class.getSimpleName()).append(" from ")
+                .append(entityName).append(", do not edit\n");
+        if (!packageName.isEmpty()) {
+            out.append("package ").append(packageName).append(";\n\n");
+        }
+        out.append("import org.apache.hadoop.hbase.client.Put;\n")
+                .append("import org.apache.hadoop.hbase.util.Bytes;\n")
+                .append("import org.gooseman.hbase.HBaseColumn;\n")
+                .append("import org.gooseman.hbase.HBaseInputSet;\n")
+                .append("import org.gooseman.hbase.HBaseOutputSet;\n\n")
+                .append("import java.nio.ByteBuffer;\n")
+                .append("import java.util.function.Function;\n\n")
+                .append("public final class ").append(mapperName).append(" {\n\n");
+
+        for (Field field : entity.fields) {
+            out.append("    public static final HBaseColumn ").append(field.constant).append(" = HBaseColumn.of(")
+                    .append(literal(field.family)).append(", ").append(literal(field.qualifier)).append(");\n");
+        }
+        for (Field field : entity.fields) {
+            if (field.codec != null) {
+                out.append("    private static final ").append(field.codec).append(' ').append(field.constant)
+                        .append("_CODEC = new ").append(field.codec).append("();\n");
+            }
+        }
+        out.append('\n')
+                .append("    public static final Function<HBaseOutputSet, ").append(entityName).append("> ROW_MAPPER = ")
+                .append(mapperName).append("::toEntity;\n")
+                .append("    public static final Function<").append(entityName).append(", HBaseInputSet> PUT_MAPPER = ")
+                .append(mapperName).append("::toInputSet;\n\n")
+                .append("    private ").append(mapperName).append("() {\n")
+                .append("    }\n\n");
+
+        out.append("    // null for a row that does not exist\n")
+                .append("    public static ").append(entityName).append(" toEntity(HBaseOutputSet outputSet) {\n")
+                .append("        byte[] row = outputSet.getRow();\n")
+                .append("        if (row == null) {\n")
+                .append("            return null;\n")
+                .append("        }\n")
+                .append("        ").append(entityName).append(" entity = new ").append(entityName).append("();\n")
+                .append("        entity.").append(set(entity.rowKey, ROW_KEY_DECODERS.get(entity.rowKey.typeName))).append(";\n");
+        for (Field field : entity.fields) {
+            if (field.codec != null) {
+                String local = field.name + "Value";
+                out.append("        ByteBuffer ").append(local).append(" = outputSet.getValueBuffer(").append(field.constant).append(");\n")
+                        .append("        entity.").append(set(field, local + " == null ? null : " + field.constant + "_CODEC.decode(" + local + ")"))
+                        .append(";\n");
+            } else if (field.isEnum) {
+                String local = field.name + "Name";
+                out.append("        String ").append(local).append(" = outputSet.getString(").append(field.constant).append(");\n")
+                        .append("        entity.").append(set(field, local + " == null ? null : " + field.typeName + ".valueOf(" + local + ")"))
+                        .append(";\n");
+            } else if (field.columnType.primitiveGetter != null) {
+                // a missing cell leaves whatever the constructor put in the field
+                out.append("        entity.").append(set(field, "outputSet." + field.columnType.primitiveGetter + "(" + field.constant
+                        + ", entity." + field.getter + ")")).append(";\n");
+            } else {
+                out.append("        entity.").append(set(field, "outputSet." + field.columnType.boxedGetter + "(" + field.constant + ")"))
+                        .append(";\n");
+            }
+        }
+        out.append("        return entity;\n")
+                .append("    }\n\n");
+
+        String rowKey = "entity." + entity.rowKey.getter;
+        out.append("    public static HBaseInputSet toInputSet(").append(entityName).append(" entity) {\n")
+                .append("        HBaseInputSet inputSet = new HBaseInputSet(new Put(")
+                .append(entity.rowKey.typeName.equals("byte[]") ? rowKey : "Bytes.toBytes(" + rowKey + ")").append("));\n");
+        for (Field field : entity.fields) {
+            String value = "entity." + field.getter;
+            if (field.columnType != null && field.columnType.primitiveGetter != null) {
+                out.append("        inputSet.").append(field.columnType.addMethod).append('(').append(field.constant).append(", ")
+                        .append(value).append(");\n");
+                continue;
+            }
+            String encoded = field.codec != null ? field.constant + "_CODEC.encode(" + value + ")"
+                    : field.isEnum ? value + ".name()" : value;
+            String addMethod = field.codec != null ? "addBytes" : field.isEnum ? "addString" : field.columnType.addMethod;
+            out.append("        if (").append(value).append(" != null) {\n")
+                    .append("            inputSet.").append(addMethod).append('(').append(field.constant).append(", ")
+                    .append(encoded).append(");\n")
+                    .append("        }\n");
+        }
+        out.append("        return inputSet;\n")
+                .append("    }\n")
+                .append("}\n");
+
+        String qualifiedMapperName = packageName.isEmpty() ? mapperName : packageName + "." + mapperName;
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedMapperName, entity.type).openWriter()) {
+            writer.write(out.toString());
+        }
+    }
+
+    private static String set(Field field, String value) {
+        return field.setter + value + (field.setter.endsWith("(") ? ")" : "");
+    }
+
+    static String constantName(String fieldName) {
+        StringBuilder constant = new StringBuilder(fieldName.length() + 4);
+        for (int i = 0; i < fieldName.length(); i++) {
+            char c = fieldName.charAt(i);
+            if (Character.isUpperCase(c) && i > 0 && !Character.isUpperCase(fieldName.charAt(i - 1))) {
+                constant.append('_');
+            }
+            constant.append(Character.toUpperCase(c));
+        }
+        return constant.toString();
+    }
+
+    private static String literal(String value) {
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    private static final class ColumnType {
+
+        private final String addMethod;
+        private final String boxedGetter;
+        private final String primitiveGetter;
+
+        private ColumnType(String addMethod, String boxedGetter, String primitiveGetter) {
+            this.addMethod = addMethod;
+            this.boxedGetter = boxedGetter;
+            this.primitiveGetter = primitiveGetter;
+        }
+    }
+
+    private static final class Entity {
+
+        private final TypeElement type;
+        private final List<Field> fields = new ArrayList<>();
+        private Field rowKey;
+
+        private Entity(TypeElement type) {
+            this.type = type;
+        }
+    }
+
+    private static final class Field {
+
+        private String name;
+        private String typeName;
+        private String getter;
+        private String setter;
+        private String family;
+        private String qualifier;
+        private String constant;
+        private String codec;
+        private ColumnType columnType;
+        private boolean isEnum;
+    }
+
+    private static final class InvalidEntityException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Element element;
+
+        private InvalidEntityException(Element element, String message) {
+            super(message);
+            this.element = element;
+        }
+    }
+}
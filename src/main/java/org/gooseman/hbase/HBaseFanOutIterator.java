@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Runs a list of sources (region scans, chunks of gets) on a bounded number of workers and hands
+ * what they emit to a single consumer through bounded queues. In ordered mode every source gets
+ * its own queue and the queues are drained in source order; otherwise all workers share one queue
+ * and items come out as they arrive.
+ */
+class HBaseFanOutIterator<T> implements Iterator<T>, Closeable {
+
+    interface Source<T> {
+        // emitter returns false once the consumer has gone away, sources should stop then
+        void run(Predicate<T> emitter) throws Exception;
+    }
+
+    interface ScannerOpener {
+        ResultScanner open(Scan scan) throws IOException;
+    }
+
+    private static final Object END = new Object();
+    private static final Object NULL = new Object();
+    private static final long OFFER_TIMEOUT_MS = 100;
+
+    private final List<Source<T>> sources;
+    private final List<BlockingQueue<Object>> queues;
+    private final AtomicInteger nextSource = new AtomicInteger();
+    private volatile boolean closed;
+
+    private int current;
+    private int remaining;
+    private Object next;
+    private long limit;
+    private long returned;
+
+    HBaseFanOutIterator(List<Source<T>> sources, boolean ordered, int queueCapacity) {
+        this.sources = sources;
+        this.remaining = sources.size();
+        int queueCount = ordered ? sources.size() : 1;
+        this.queues = new ArrayList<>(queueCount);
+        for (int i = 0; i < queueCount; i++) {
+            queues.add(new LinkedBlockingQueue<>(queueCapacity));
+        }
+    }
+
+    // stops every source once limit items were handed out, 0 or less for no limit
+    HBaseFanOutIterator<T> limit(long limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    // one sub-scan per region overlapping the scan's key range, bounded by the region's keys; a
+    // limit stays on every sub-scan as a cap per region, the overall limit is the consumer's to apply
+    static List<Scan> splitByRegions(Scan scan, byte[][] startKeys, byte[][] endKeys) throws IOException {
+        if (scan.isReversed()) {
+            throw new IllegalArgumentException("Reversed scans cannot be split by region");
+        }
+        byte[] scanStart = scan.getStartRow();
+        byte[] scanStop = scan.getStopRow();
+        List<Scan> scans = new ArrayList<>(startKeys.length);
+        for (int i = 0; i < startKeys.length; i++) {
+            byte[] regionStart = startKeys[i];
+            byte[] regionEnd = endKeys[i];
+            if (scanStop.length > 0 && regionStart.length > 0) {
+                int compare = Bytes.compareTo(regionStart, scanStop);
+                if (compare > 0 || (compare == 0 && !scan.includeStopRow())) {
+                    continue;
+                }
+            }
+            if (regionEnd.length > 0 && Bytes.compareTo(regionEnd, scanStart) <= 0) {
+                continue;
+            }
+            Scan regionScan = new Scan(scan);
+            if (regionStart.length > 0 && Bytes.compareTo(regionStart, scanStart) > 0) {
+                regionScan.withStartRow(regionStart, true);
+            }
+            if (regionEnd.length > 0 && (scanStop.length == 0 || Bytes.compareTo(regionEnd, scanStop) < 0)) {
+                regionScan.withStopRow(regionEnd, false);
+            }
+            scans.add(regionScan);
+        }
+        return scans;
+    }
+
+    // every scan becomes a source that maps its rows on the worker
+    static <T> List<Source<T>> scanSources(List<Scan> scans, ScannerOpener opener, Function<Result, T> rowMapper,
+                                           Supplier<HBaseOperationRecorder> recorders) {
+        List<Source<T>> sources = new ArrayList<>(scans.size());
+        for (Scan scan : scans) {
+            sources.add(emitter -> {
+                HBaseOperationRecorder recorder = recorders.get();
+                try (HBaseScanIterator<T> rows = new HBaseScanIterator<>(recorder.call(() -> opener.open(scan)),
+                        rowMapper, recorder)) {
+                    while (rows.hasNext()) {
+                        if (!emitter.test(rows.next())) {
+                            return;
+                        }
+                    }
+                }
+            });
+        }
+        return sources;
+    }
+
+    HBaseFanOutIterator<T> start(ExecutorService executor, int parallelism) {
+        int workers = Math.max(1, Math.min(parallelism, sources.size()));
+        for (int i = 0; i < workers; i++) {
+            executor.execute(this::work);
+        }
+        return this;
+    }
+
+    private void work() {
+        for (int index; !closed && (index = nextSource.getAndIncrement()) < sources.size();) {
+            BlockingQueue<Object> queue = queues.get(queues.size() == 1 ? 0 : index);
+            try {
+                sources.get(index).run(item -> offer(queue, item == null ? NULL : item));
+                if (!offer(queue, END)) {
+                    return;
+                }
+            } catch (Throwable e) {
+                offer(queue, new Failure(e));
+                return;
+            }
+        }
+    }
+
+    // waits for room in the queue, giving up once the consumer has gone away
+    private boolean offer(BlockingQueue<Object> queue, Object item) {
+        try {
+            while (!closed) {
+                if (queue.offer(item, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && limit > 0 && returned >= limit) {
+            close();
+            return false;
+        }
+        while (next == null && remaining > 0 && !closed) {
+            Object item = take(queues.get(queues.size() == 1 ? 0 : current));
+            if (item == END) {
+                remaining--;
+                current++;
+            } else if (item instanceof Failure) {
+                throw rethrow((Failure) item);
+            } else {
+                next = item;
+            }
+        }
+        return next != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T value(Object item) {
+        return item == NULL ? null : (T) item;
+    }
+
+    private RuntimeException rethrow(Failure failure) {
+        close();
+        Throwable cause = failure.cause;
+        if (cause instanceof IOException) {
+            return new UncheckedIOException((IOException) cause);
+        }
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return new IllegalStateException(cause);
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Object row = next;
+        next = null;
+        returned++;
+        return value(row);
+    }
+
+    private Object take(BlockingQueue<Object> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new UncheckedIOException(new InterruptedIOException("Interrupted while waiting for scan results"));
+        }
+    }
+
+    Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED), false)
+                .onClose(this::close);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (BlockingQueue<Object> queue : queues) {
+            queue.clear();
+        }
+    }
+
+    private static final class Failure {
+
+        private final Throwable cause;
+
+        private Failure(Throwable cause) {
+            this.cause = cause;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Checkpoints kept in a properties file. Every save rewrites the file through a temporary file
+ * moved over it, so a crash leaves either the old or the new checkpoints. Meant for a single
+ * process, concurrent writers from other processes are not detected.
+ */
+public class HBaseFileCheckpointStore implements HBaseCheckpointStore {
+
+    private final Path file;
+
+    public HBaseFileCheckpointStore(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public synchronized Long load(String checkpointName) throws IOException {
+        String timestamp = read().getProperty(checkpointName);
+        return timestamp == null ? null : Long.valueOf(timestamp);
+    }
+
+    @Override
+    public synchronized void save(String checkpointName, long timestamp) throws IOException {
+        Properties checkpoints = read();
+        checkpoints.setProperty(checkpointName, Long.toString(timestamp));
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                checkpoints.store(out, null);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private Properties read() throws IOException {
+        Properties checkpoints = new Properties();
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                checkpoints.load(in);
+            }
+        }
+        return checkpoints;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+/**
+ * Outcome of a single key of a chunked multi-get: either the mapped row or the failure that
+ * prevented reading it.
+ */
+public class HBaseGetResult<T> {
+
+    private final byte[] row;
+    private final T value;
+    private final Throwable error;
+
+    private HBaseGetResult(byte[] row, T value, Throwable error) {
+        this.row = row;
+        this.value = value;
+        this.error = error;
+    }
+
+    static <T> HBaseGetResult<T> success(byte[] row, T value) {
+        return new HBaseGetResult<>(row, value, null);
+    }
+
+    static <T> HBaseGetResult<T> failure(byte[] row, Throwable error) {
+        return new HBaseGetResult<>(row, null, error);
+    }
+
+    public byte[] getRow() {
+        return row;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
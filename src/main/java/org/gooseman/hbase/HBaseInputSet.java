@@ -27,58 +27,174 @@ public class HBaseInputSet {
         this.put = put;
     }
 
+    // encodes values into a pooled buffer instead of an array per value, for high write rates
+    public static HBaseInputSet buffered(Put put) {
+        return new BufferedHBaseInputSet(put);
+    }
+
     public HBaseInputSet addString(String family, String column, String value) {
-        put.addColumn(toBytes(family), toBytes(column), toBytes(value));
-        return this;
+        return addString(HBaseColumn.cached(family, column), value);
+    }
+
+    public HBaseInputSet addString(HBaseColumn column, String value) {
+        return add(column, toBytes(value));
     }
 
     public HBaseInputSet addDouble(String family, String column, Double value) {
-        put.addColumn(toBytes(family), toBytes(column), toBytes(value));
-        return this;
+        return addDouble(HBaseColumn.cached(family, column), value);
+    }
+
+    public HBaseInputSet addDouble(HBaseColumn column, Double value) {
+        return addDouble(column, (double) value);
+    }
+
+    public HBaseInputSet addDouble(String family, String column, double value) {
+        return addDouble(HBaseColumn.cached(family, column), value);
+    }
+
+    public HBaseInputSet addDouble(HBaseColumn column, double value) {
+        return add(column, toBytes(value));
     }
 
     public HBaseInputSet addInteger(String family, String column, Integer value) {
-        put.addColumn(toBytes(family), toBytes(column), toBytes(value));
-        return this;
+        return addInteger(HBaseColumn.cached(family, column), value);
+    }
+
+    public HBaseInputSet addInteger(HBaseColumn column, Integer value) {
+        return addInt(column, (int) value);
+    }
+
+    public HBaseInputSet addInt(String family, String column, int value) {
+        return addInt(HBaseColumn.cached(family, column), value);
+    }
+
+    public HBaseInputSet addInt(HBaseColumn column, int value) {
+        return add(column, toBytes(value));
     }
 
     public HBaseInputSet addLong(String family, String column, Long value) {
-        put.addColumn(toBytes(family), toBytes(column), toBytes(value));
-        return this;
+        return addLong(HBaseColumn.cached(family, column), value);
+    }
+
+    public HBaseInputSet addLong(HBaseColumn column, Long value) {
+        return addLong(column, (long) value);
+    }
+
+    public HBaseInputSet addLong(String family, String column, long value) {
+        return addLong(HBaseColumn.cached(family, column), value);
+    }
+
+    public HBaseInputSet addLong(HBaseColumn column, long value) {
+        return add(column, toBytes(value));
     }
 
     public HBaseInputSet addFloat(String family, String column, Float value) {
-        put.addColumn(toBytes(family), toBytes(column), toBytes(value));
-        return this;
+        return addFloat(HBaseColumn.cached(family, column), value);
+    }
+
+    public HBaseInputSet addFloat(HBaseColumn column, Float value) {
+        return addFloat(column, (float) value);
+    }
+
+    public HBaseInputSet addFloat(String family, String column, float value) {
+        return addFloat(HBaseColumn.cached(family, column), value);
+    }
+
+    public HBaseInputSet addFloat(HBaseColumn column, float value) {
+        return add(column, toBytes(value));
     }
 
     public HBaseInputSet addBoolean(String family, String column, Boolean value) {
-        put.addColumn(toBytes(family), toBytes(column), toBytes(value));
-        return this;
+        return addBoolean(HBaseColumn.cached(family, column), value);
+    }
+
+    public HBaseInputSet addBoolean(HBaseColumn column, Boolean value) {
+        return addBoolean(column, (boolean) value);
+    }
+
+    public HBaseInputSet addBoolean(String family, String column, boolean value) {
+        return addBoolean(HBaseColumn.cached(family, column), value);
+    }
+
+    public HBaseInputSet addBoolean(HBaseColumn column, boolean value) {
+        return add(column, toBytes(value));
     }
 
     public HBaseInputSet addShort(String family, String column, Short value) {
-        put.addColumn(toBytes(family), toBytes(column), toBytes(value));
-        return this;
+        return addShort(HBaseColumn.cached(family, column), value);
+    }
+
+    public HBaseInputSet addShort(HBaseColumn column, Short value) {
+        return addShort(column, (short) value);
+    }
+
+    public HBaseInputSet addShort(String family, String column, short value) {
+        return addShort(HBaseColumn.cached(family, column), value);
+    }
+
+    public HBaseInputSet addShort(HBaseColumn column, short value) {
+        return add(column, toBytes(value));
     }
 
     public HBaseInputSet addBigDecimal(String family, String column, BigDecimal value) {
-        put.addColumn(toBytes(family), toBytes(column), toBytes(value));
-        return this;
+        return addBigDecimal(HBaseColumn.cached(family, column), value);
+    }
+
+    public HBaseInputSet addBigDecimal(HBaseColumn column, BigDecimal value) {
+        return add(column, toBytes(value));
     }
 
     public HBaseInputSet addLocalDate(String family, String column, LocalDate value) {
-        put.addColumn(toBytes(family), toBytes(column), toBytes(value.toEpochDay()));
-        return this;
+        return addLocalDate(HBaseColumn.cached(family, column), value);
+    }
+
+    public HBaseInputSet addLocalDate(HBaseColumn column, LocalDate value) {
+        return addLong(column, value.toEpochDay());
     }
 
     public HBaseInputSet addLocalDateTime(String family, String column, LocalDateTime value) {
-        addLocalDateTime(family, column, value, ZoneOffset.UTC);
-        return this;
+        return addLocalDateTime(HBaseColumn.cached(family, column), value, ZoneOffset.UTC);
     }
 
     public HBaseInputSet addLocalDateTime(String family, String column, LocalDateTime value, ZoneOffset zoneOffset) {
-        put.addColumn(toBytes(family), toBytes(column), toBytes(value.toInstant(zoneOffset).toEpochMilli()));
+        return addLocalDateTime(HBaseColumn.cached(family, column), value, zoneOffset);
+    }
+
+    public HBaseInputSet addLocalDateTime(HBaseColumn column, LocalDateTime value) {
+        return addLocalDateTime(column, value, ZoneOffset.UTC);
+    }
+
+    public HBaseInputSet addLocalDateTime(HBaseColumn column, LocalDateTime value, ZoneOffset zoneOffset) {
+        return addLong(column, value.toInstant(zoneOffset).toEpochMilli());
+    }
+
+    public HBaseInputSet addBytes(String family, String column, byte[] value) {
+        return addBytes(HBaseColumn.cached(family, column), value);
+    }
+
+    public HBaseInputSet addBytes(HBaseColumn column, byte[] value) {
+        return add(column, value);
+    }
+
+    public HBaseInputSet addPacked(String family, String column, HBasePackedWriter value) {
+        return addPacked(HBaseColumn.cached(family, column), value);
+    }
+
+    public HBaseInputSet addPacked(HBaseColumn column, HBasePackedWriter value) {
+        return add(column, value.toByteArray());
+    }
+
+    // value whose bytes sort like the values themselves, for columns compared by filters
+    public HBaseInputSet addOrdered(String family, String column, HBaseKeyBuilder value) {
+        return addOrdered(HBaseColumn.cached(family, column), value);
+    }
+
+    public HBaseInputSet addOrdered(HBaseColumn column, HBaseKeyBuilder value) {
+        return add(column, value.build());
+    }
+
+    HBaseInputSet add(HBaseColumn column, byte[] value) {
+        put.addColumn(column.family(), column.qualifier(), value);
         return this;
     }
 
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Order;
+import org.apache.hadoop.hbase.util.OrderedBytes;
+import org.apache.hadoop.hbase.util.PositionedByteRange;
+import org.apache.hadoop.hbase.util.SimplePositionedMutableByteRange;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Builds row keys (or column values) out of components encoded with HBase's {@link OrderedBytes},
+ * so that the byte order of the result matches the natural order of the values component by
+ * component: negative numbers sort before positive ones, doubles sort numerically, and a shorter
+ * string sorts before any longer string it is a prefix of. Components are ascending unless
+ * {@link #descending()} was called before adding them. Read back with {@link HBaseKeyReader}.
+ */
+public class HBaseKeyBuilder {
+
+    private PositionedByteRange range = new SimplePositionedMutableByteRange(32);
+    private Order order = Order.ASCENDING;
+
+    // applies to the components added from here on
+    public HBaseKeyBuilder ascending() {
+        order = Order.ASCENDING;
+        return this;
+    }
+
+    public HBaseKeyBuilder descending() {
+        order = Order.DESCENDING;
+        return this;
+    }
+
+    public HBaseKeyBuilder addNull() {
+        OrderedBytes.encodeNull(ensure(1), order);
+        return this;
+    }
+
+    public HBaseKeyBuilder addString(String value) {
+        if (value == null) {
+            return addNull();
+        }
+        OrderedBytes.encodeString(ensure(value.length() * 3 + 2), value, order);
+        return this;
+    }
+
+    public HBaseKeyBuilder addBytes(byte[] value) {
+        if (value == null) {
+            return addNull();
+        }
+        OrderedBytes.encodeBlobVar(ensure(OrderedBytes.blobVarEncodedLength(value.length)), value, order);
+        return this;
+    }
+
+    public HBaseKeyBuilder addShort(short value) {
+        OrderedBytes.encodeInt16(ensure(3), value, order);
+        return this;
+    }
+
+    public HBaseKeyBuilder addInt(int value) {
+        OrderedBytes.encodeInt32(ensure(5), value, order);
+        return this;
+    }
+
+    public HBaseKeyBuilder addLong(long value) {
+        OrderedBytes.encodeInt64(ensure(9), value, order);
+        return this;
+    }
+
+    public HBaseKeyBuilder addFloat(float value) {
+        OrderedBytes.encodeFloat32(ensure(5), value, order);
+        return this;
+    }
+
+    public HBaseKeyBuilder addDouble(double value) {
+        OrderedBytes.encodeFloat64(ensure(9), value, order);
+        return this;
+    }
+
+    public HBaseKeyBuilder addBigDecimal(BigDecimal value) {
+        if (value == null) {
+            return addNull();
+        }
+        OrderedBytes.encodeNumeric(ensure(value.precision() + 16), value, order);
+        return this;
+    }
+
+    public HBaseKeyBuilder addLocalDate(LocalDate value) {
+        return value == null ? addNull() : addLong(value.toEpochDay());
+    }
+
+    // epoch millis, like HBaseInputSet#addLocalDateTime
+    public HBaseKeyBuilder addLocalDateTime(LocalDateTime value) {
+        return addLocalDateTime(value, ZoneOffset.UTC);
+    }
+
+    public HBaseKeyBuilder addLocalDateTime(LocalDateTime value, ZoneOffset zoneOffset) {
+        return value == null ? addNull() : addLong(value.toInstant(zoneOffset).toEpochMilli());
+    }
+
+    public byte[] build() {
+        return Arrays.copyOf(range.getBytes(), range.getPosition());
+    }
+
+    // scan of every row whose key starts with the components added so far
+    public Scan prefixScan() {
+        return new Scan().setRowPrefixFilter(build());
+    }
+
+    // scan between two keys, each standing for every row that starts with it; with both bounds
+    // inclusive, from (a, 1) to (a, 5) also returns (a, 5, x)
+    public static Scan scan(HBaseKeyBuilder from, boolean fromInclusive, HBaseKeyBuilder to, boolean toInclusive) {
+        byte[] start = fromInclusive ? from.build() : prefixEnd(from.build());
+        byte[] stop = toInclusive ? prefixEnd(to.build()) : to.build();
+        return new Scan().withStartRow(start, true).withStopRow(stop, false);
+    }
+
+    // smallest key sorting after every key that starts with the prefix, empty when there is none
+    static byte[] prefixEnd(byte[] prefix) {
+        for (int i = prefix.length - 1; i >= 0; i--) {
+            if (prefix[i] != (byte) 0xFF) {
+                byte[] end = Arrays.copyOf(prefix, i + 1);
+                end[i]++;
+                return end;
+            }
+        }
+        return new byte[0];
+    }
+
+    private PositionedByteRange ensure(int extra) {
+        int position = range.getPosition();
+        if (position + extra > range.getLength()) {
+            byte[] bytes = Arrays.copyOf(range.getBytes(), Math.max(range.getLength() * 2, position + extra));
+            range = new SimplePositionedMutableByteRange(bytes);
+            range.setPosition(position);
+        }
+        return range;
+    }
+}
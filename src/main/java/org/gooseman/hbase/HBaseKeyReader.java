@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import org.apache.hadoop.hbase.util.OrderedBytes;
+import org.apache.hadoop.hbase.util.PositionedByteRange;
+import org.apache.hadoop.hbase.util.SimplePositionedByteRange;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Reads the components of a key written by {@link HBaseKeyBuilder} in the order they were added.
+ * The order each component was written in is part of its encoding, so the reader needs no schema
+ * beyond the component types.
+ */
+public class HBaseKeyReader {
+
+    private final PositionedByteRange range;
+
+    HBaseKeyReader(byte[] array, int offset, int length) {
+        this.range = new SimplePositionedByteRange(array, offset, length);
+    }
+
+    public static HBaseKeyReader of(byte[] key) {
+        return new HBaseKeyReader(key, 0, key.length);
+    }
+
+    public boolean hasRemaining() {
+        return range.getRemaining() > 0;
+    }
+
+    // true when the next component is null, which every read then returns as null or skips
+    public boolean isNull() {
+        return OrderedBytes.isNull(range);
+    }
+
+    public HBaseKeyReader skip() {
+        OrderedBytes.skip(range);
+        return this;
+    }
+
+    public String readString() {
+        return OrderedBytes.decodeString(range);
+    }
+
+    public byte[] readBytes() {
+        return OrderedBytes.decodeBlobVar(range);
+    }
+
+    public short readShort() {
+        return OrderedBytes.decodeInt16(range);
+    }
+
+    public int readInt() {
+        return OrderedBytes.decodeInt32(range);
+    }
+
+    public long readLong() {
+        return OrderedBytes.decodeInt64(range);
+    }
+
+    public float readFloat() {
+        return OrderedBytes.decodeFloat32(range);
+    }
+
+    public double readDouble() {
+        return OrderedBytes.decodeFloat64(range);
+    }
+
+    public BigDecimal readBigDecimal() {
+        if (isNull()) {
+            skip();
+            return null;
+        }
+        return OrderedBytes.decodeNumericAsBigDecimal(range);
+    }
+
+    public LocalDate readLocalDate() {
+        if (isNull()) {
+            skip();
+            return null;
+        }
+        return LocalDate.ofEpochDay(readLong());
+    }
+
+    public LocalDateTime readLocalDateTime() {
+        return readLocalDateTime(ZoneOffset.UTC);
+    }
+
+    public LocalDateTime readLocalDateTime(ZoneOffset zoneOffset) {
+        if (isNull()) {
+            skip();
+            return null;
+        }
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(readLong()), zoneOffset);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.metrics.ScanMetrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Merges scanners that each return their rows sorted into one sorted scanner. The scanners are
+ * opened and read up to their first row on the executor, all at once, and the consuming thread
+ * takes over any it finds not started yet, so a busy or small executor only slows the open down.
+ * After that the merge pulls from the scanners on the consuming thread; scans should have async
+ * prefetch on so every scanner keeps fetching its next batch meanwhile.
+ */
+final class HBaseMergedScanner implements ResultScanner {
+
+    private final List<ResultScanner> scanners;
+    private final PriorityQueue<Head> heads;
+    private final int limit;
+    private boolean closed;
+    private int returned;
+
+    private HBaseMergedScanner(List<ResultScanner> scanners, Comparator<Result> order, int limit) {
+        this.scanners = scanners;
+        this.heads = new PriorityQueue<>(Math.max(1, scanners.size()), (left, right) -> order.compare(left.result, right.result));
+        this.limit = limit;
+    }
+
+    // a limit of 0 or less returns every row
+    static HBaseMergedScanner open(List<Scan> scans, HBaseFanOutIterator.ScannerOpener opener, Comparator<Result> order,
+                                   int limit, Executor executor) throws IOException {
+        List<FutureTask<Head>> opens = new ArrayList<>(scans.size());
+        for (Scan scan : scans) {
+            opens.add(new FutureTask<>(() -> first(opener.open(scan))));
+        }
+        for (int i = 1; i < opens.size(); i++) {
+            try {
+                executor.execute(opens.get(i));
+            } catch (RejectedExecutionException e) {
+                // opened on the consuming thread below
+            }
+        }
+        HBaseMergedScanner merged = new HBaseMergedScanner(new ArrayList<>(scans.size()), order, limit);
+        Throwable failure = null;
+        for (FutureTask<Head> open : opens) {
+            // a no-op once the executor has started it
+            open.run();
+            try {
+                Head head = await(open);
+                merged.scanners.add(head.scanner);
+                if (head.result != null) {
+                    merged.heads.add(head);
+                }
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            }
+        }
+        if (failure != null) {
+            merged.close();
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            throw new IllegalStateException(failure);
+        }
+        return merged;
+    }
+
+    private static Head first(ResultScanner scanner) throws IOException {
+        try {
+            return new Head(scanner.next(), scanner);
+        } catch (IOException | RuntimeException e) {
+            scanner.close();
+            throw e;
+        }
+    }
+
+    // every open is waited for, interrupted or not, so no scanner is left open behind the caller
+    private static <V> V await(FutureTask<V> task) throws ExecutionException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public Result next() throws IOException {
+        if (closed || limit > 0 && returned >= limit) {
+            return null;
+        }
+        try {
+            Head head = heads.poll();
+            if (head == null) {
+                close();
+                return null;
+            }
+            advance(head.scanner);
+            returned++;
+            return head.result;
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private void advance(ResultScanner scanner) throws IOException {
+        Result result = scanner.next();
+        if (result != null) {
+            heads.add(new Head(result, scanner));
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        heads.clear();
+        scanners.forEach(ResultScanner::close);
+    }
+
+    @Override
+    public boolean renewLease() {
+        return false;
+    }
+
+    @Override
+    public ScanMetrics getScanMetrics() {
+        return null;
+    }
+
+    private static final class Head {
+
+        private final Result result;
+        private final ResultScanner scanner;
+
+        private Head(Result result, ResultScanner scanner) {
+            this.result = result;
+            this.scanner = scanner;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import org.apache.hadoop.hbase.DoNotRetryIOException;
+import org.apache.hadoop.hbase.client.Consistency;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.exceptions.TimeoutIOException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * How {@link HBaseTemplate} reads a table: a deadline over the whole operation, retries with
+ * jittered exponential backoff and hedged reads. A hedged read sends a second request once the
+ * first has been outstanding for the hedge delay and takes whichever answers first; by default the
+ * second request is a timeline consistent {@link Get}, which region replicas may answer with stale
+ * data. Policy retries come on top of the ones the HBase client makes itself.
+ * <p>
+ * Reads stay on the calling thread, only hedges run on the template's executor. A read that loses
+ * to its hedge or outlives the deadline is interrupted, which the HBase client answers by giving
+ * up on the call.
+ * <p>
+ * A policy can be shared by several tables, it then also shares the latency percentile used for
+ * hedging.
+ */
+public class HBaseOperationPolicy {
+
+    // latency percentiles are only trusted once this many reads were timed
+    static final int MIN_LATENCY_SAMPLES = 100;
+
+    // only starts hedges and interrupts late reads, its tasks never block
+    private static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "hbase-operation-policy-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    private long timeoutNanos;
+    private int maxAttempts = 1;
+    private long backoffNanos = TimeUnit.MILLISECONDS.toNanos(50);
+    private long maxBackoffNanos = TimeUnit.SECONDS.toNanos(1);
+    private Predicate<IOException> retryable = e -> !(e instanceof DoNotRetryIOException);
+    private long hedgeDelayNanos = -1;
+    private double hedgeQuantile;
+    private UnaryOperator<Get> hedgedGet = HBaseOperationPolicy::timelineGet;
+    private final HBaseHistogram latencies = new HBaseHistogram();
+
+    // the deadline covers every attempt and the backoff between them
+    public HBaseOperationPolicy timeout(Duration timeout) {
+        this.timeoutNanos = timeout.toNanos();
+        return this;
+    }
+
+    // up to maxAttempts calls in total, waiting a random time of up to backoff * 2^retry, capped at
+    // maxBackoff, between them
+    public HBaseOperationPolicy retries(int maxAttempts, Duration backoff, Duration maxBackoff) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        }
+        this.maxAttempts = maxAttempts;
+        this.backoffNanos = backoff.toNanos();
+        this.maxBackoffNanos = maxBackoff.toNanos();
+        return this;
+    }
+
+    // by default everything but DoNotRetryIOException is retried
+    public HBaseOperationPolicy retryOn(Predicate<IOException> retryable) {
+        this.retryable = retryable;
+        return this;
+    }
+
+    public HBaseOperationPolicy hedgeAfter(Duration delay) {
+        this.hedgeDelayNanos = delay.toNanos();
+        this.hedgeQuantile = 0;
+        return this;
+    }
+
+    // hedges reads slower than the given percentile of the reads made so far, but never sooner
+    // than minDelay, which is also the delay used until enough reads were timed
+    public HBaseOperationPolicy hedgeAtPercentile(double percentile, Duration minDelay) {
+        if (percentile <= 0 || percentile >= 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+        this.hedgeDelayNanos = minDelay.toNanos();
+        this.hedgeQuantile = percentile / 100;
+        return this;
+    }
+
+    // the get sent as the hedge of a read, a timeline consistent copy of the original by default
+    public HBaseOperationPolicy hedgeWith(UnaryOperator<Get> hedgedGet) {
+        this.hedgedGet = hedgedGet;
+        return this;
+    }
+
+    Get hedge(Get get) {
+        return hedgedGet.apply(get);
+    }
+
+    List<Get> hedge(List<Get> gets) {
+        List<Get> hedged = new ArrayList<>(gets.size());
+        for (Get get : gets) {
+            hedged.add(hedgedGet.apply(get));
+        }
+        return hedged;
+    }
+
+    long getHedgeDelayNanos() {
+        if (hedgeQuantile > 0 && latencies.getCount() >= MIN_LATENCY_SAMPLES) {
+            return Math.max(hedgeDelayNanos, latencies.getValueAtQuantile(hedgeQuantile));
+        }
+        return hedgeDelayNanos;
+    }
+
+    <R> R execute(HBaseOperationRecorder.ClientCall<R> call, HBaseOperationRecorder.ClientCall<R> hedge,
+                  ExecutorService executor) throws IOException {
+        boolean hasDeadline = timeoutNanos > 0;
+        long deadline = System.nanoTime() + timeoutNanos;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return attempt(call, hedge, executor, hasDeadline, deadline);
+            } catch (IOException e) {
+                if (attempt >= maxAttempts || e instanceof InterruptedIOException || !retryable.test(e)) {
+                    throw e;
+                }
+                long backoff = backoff(attempt);
+                if (hasDeadline && deadline - System.nanoTime() <= backoff) {
+                    throw e;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw (IOException) new InterruptedIOException("Interrupted while backing off").initCause(e);
+                }
+            }
+        }
+    }
+
+    // full jitter, the delay is picked uniformly up to the exponential bound
+    private long backoff(int attempt) {
+        long bound = backoffNanos << Math.min(attempt - 1, 30);
+        if (bound <= 0 || bound > maxBackoffNanos) {
+            bound = maxBackoffNanos;
+        }
+        return bound <= 0 ? 0 : ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+
+    // the call runs on the calling thread, so a read made from a worker of the executor never waits
+    // for a second worker; only the hedge goes to the executor, and the caller is interrupted once
+    // the hedge wins or the deadline passes
+    private <R> R attempt(HBaseOperationRecorder.ClientCall<R> call, HBaseOperationRecorder.ClientCall<R> hedge,
+                          ExecutorService executor, boolean hasDeadline, long deadline) throws IOException {
+        long start = System.nanoTime();
+        if (!hasDeadline && hedgeDelayNanos < 0) {
+            R result = call.call();
+            latencies.record(System.nanoTime() - start);
+            return result;
+        }
+        if (hasDeadline && deadline - start <= 0) {
+            throw timeout();
+        }
+        Race<R> race = new Race<>(Thread.currentThread());
+        List<ScheduledFuture<?>> timers = new ArrayList<>(2);
+        if (hedgeDelayNanos >= 0) {
+            timers.add(TIMER.schedule(() -> race.hedge(hedge, executor), getHedgeDelayNanos(), TimeUnit.NANOSECONDS));
+        }
+        if (hasDeadline) {
+            timers.add(TIMER.schedule(race::expire, deadline - start, TimeUnit.NANOSECONDS));
+        }
+        try {
+            R result = call.call();
+            latencies.record(System.nanoTime() - start);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            return race.lost(e, start);
+        } finally {
+            for (ScheduledFuture<?> timer : timers) {
+                timer.cancel(false);
+            }
+            race.finish();
+        }
+    }
+
+    private TimeoutIOException timeout() {
+        return new TimeoutIOException("Read did not complete within " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms");
+    }
+
+    // state shared by the calling thread, the timer and the hedge; the caller is only ever
+    // interrupted while its call is still running, and that interrupt is cleared once it returns
+    private final class Race<R> {
+
+        private final Thread caller;
+        private boolean finished;
+        private boolean interrupted;
+        private boolean expired;
+        private boolean hedging;
+        private boolean hedged;
+        private R hedgeResult;
+        private IOException hedgeFailure;
+
+        private Race(Thread caller) {
+            this.caller = caller;
+        }
+
+        private void hedge(HBaseOperationRecorder.ClientCall<R> hedge, ExecutorService executor) {
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+                hedging = true;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        won(hedge.call());
+                    } catch (IOException e) {
+                        failed(e);
+                    } catch (RuntimeException e) {
+                        failed(new IOException(e));
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                failed(new IOException("Hedged read was rejected", e));
+            }
+        }
+
+        private synchronized void won(R result) {
+            hedged = true;
+            hedgeResult = result;
+            notifyAll();
+            interruptCaller();
+        }
+
+        private synchronized void failed(IOException failure) {
+            hedged = true;
+            hedgeFailure = failure;
+            notifyAll();
+        }
+
+        private synchronized void expire() {
+            expired = true;
+            notifyAll();
+            interruptCaller();
+        }
+
+        private void interruptCaller() {
+            if (!finished && !interrupted) {
+                interrupted = true;
+                caller.interrupt();
+            }
+        }
+
+        // the call failed or was interrupted, an outstanding hedge may still answer in time
+        private synchronized R lost(Exception failure, long start) throws IOException {
+            while (hedging && !hedged && !expired) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    if (!interrupted) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting for a hedged read");
+                    }
+                }
+            }
+            if (hedged && hedgeFailure == null) {
+                // the call was at least this slow, which keeps the percentile honest
+                latencies.record(System.nanoTime() - start);
+                return hedgeResult;
+            }
+            if (expired) {
+                throw timeout();
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            IOException ioFailure = (IOException) failure;
+            if (hedgeFailure != null) {
+                ioFailure.addSuppressed(hedgeFailure);
+            }
+            throw ioFailure;
+        }
+
+        private synchronized void finish() {
+            finished = true;
+            if (interrupted) {
+                Thread.interrupted();
+            }
+        }
+    }
+
+    private static Get timelineGet(Get get) {
+        return new Get(get).setConsistency(Consistency.TIMELINE);
+    }
+}
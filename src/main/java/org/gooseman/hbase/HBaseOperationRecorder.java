@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Accumulates the client time, mapper time, rows and bytes of a single operation and hands them to
+ * {@link HBaseTemplateMetrics} on {@link #report()}. A disabled recorder never reads the clock.
+ */
+final class HBaseOperationRecorder {
+
+    interface ClientCall<R> {
+        R call() throws IOException;
+    }
+
+    private final HBaseTemplateMetrics metrics;
+    private final String tableName;
+    private final HBaseOperation operation;
+    private final boolean enabled;
+
+    private int calls;
+    private long clientNanos;
+    private long rows;
+    private long bytes;
+    private boolean failed;
+    private long mapperNanos;
+    private long mappedRows;
+
+    HBaseOperationRecorder(HBaseTemplateMetrics metrics, String tableName, HBaseOperation operation) {
+        this.metrics = metrics;
+        this.tableName = tableName;
+        this.operation = operation;
+        this.enabled = metrics != HBaseTemplateMetrics.NOOP;
+    }
+
+    <R> R call(ClientCall<R> call) throws IOException {
+        if (!enabled) {
+            return call.call();
+        }
+        long start = System.nanoTime();
+        try {
+            return call.call();
+        } catch (IOException | RuntimeException e) {
+            failed = true;
+            throw e;
+        } finally {
+            clientNanos += System.nanoTime() - start;
+            calls++;
+        }
+    }
+
+    // variant for callers timing client work that is not a single call, like scanner iteration
+    long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    void called(long start) {
+        if (enabled) {
+            clientNanos += System.nanoTime() - start;
+            calls++;
+        }
+    }
+
+    void failed() {
+        failed = true;
+    }
+
+    <A, R> R map(Function<A, R> mapper, A row) {
+        if (!enabled) {
+            return mapper.apply(row);
+        }
+        long start = System.nanoTime();
+        try {
+            return mapper.apply(row);
+        } finally {
+            mapperNanos += System.nanoTime() - start;
+            mappedRows++;
+        }
+    }
+
+    void read(Result result) {
+        if (enabled && result != null && !result.isEmpty()) {
+            rows++;
+            bytes += sizeOf(result.rawCells());
+        }
+    }
+
+    void wrote(Put put) {
+        if (enabled) {
+            rows++;
+            for (List<Cell> cells : put.getFamilyCellMap().values()) {
+                for (Cell cell : cells) {
+                    bytes += KeyValueUtil.length(cell);
+                }
+            }
+        }
+    }
+
+    // hands over what was accumulated so far and starts over, so long-lived users such as writers
+    // can report once per flush
+    void report() {
+        if (!enabled) {
+            return;
+        }
+        if (calls > 0) {
+            metrics.recordCall(tableName, operation, clientNanos, rows, bytes, failed);
+        }
+        if (mappedRows > 0) {
+            metrics.recordMapping(tableName, operation, mapperNanos, mappedRows);
+        }
+        calls = 0;
+        clientNanos = 0;
+        rows = 0;
+        bytes = 0;
+        failed = false;
+        mapperNanos = 0;
+        mappedRows = 0;
+    }
+
+    private static long sizeOf(Cell[] cells) {
+        long size = 0;
+        for (Cell cell : cells) {
+            size += KeyValueUtil.length(cell);
+        }
+        return size;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals of one operation against one table, as collected by {@link HBaseTemplateStats}.
+ */
+public class HBaseOperationStats implements HBaseOperationStatsMXBean {
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final String tableName;
+    private final HBaseOperation operation;
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final HBaseHistogram latency = new HBaseHistogram();
+    private final HBaseHistogram rowsPerCall = new HBaseHistogram();
+    private final LongAdder mapperNanos = new LongAdder();
+    private final LongAdder mappedRows = new LongAdder();
+
+    HBaseOperationStats(String tableName, HBaseOperation operation) {
+        this.tableName = tableName;
+        this.operation = operation;
+    }
+
+    void recordCall(long nanos, long rows, long bytes, boolean failed) {
+        latency.record(nanos);
+        rowsPerCall.record(rows);
+        this.bytes.add(bytes);
+        if (failed) {
+            failures.increment();
+        }
+    }
+
+    void recordMapping(long nanos, long rows) {
+        mapperNanos.add(nanos);
+        mappedRows.add(rows);
+    }
+
+    @Override
+    public String getTableName() {
+        return tableName;
+    }
+
+    @Override
+    public String getOperation() {
+        return operation.name();
+    }
+
+    @Override
+    public long getCalls() {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public long getRows() {
+        return rowsPerCall.getSum();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public double getMeanRowsPerCall() {
+        return rowsPerCall.getMean();
+    }
+
+    @Override
+    public long getMaxRowsPerCall() {
+        return rowsPerCall.getMax();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return latency.getMean() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double get50thPercentileMillis() {
+        return latency.getValueAtQuantile(0.5) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double get95thPercentileMillis() {
+        return latency.getValueAtQuantile(0.95) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double get99thPercentileMillis() {
+        return latency.getValueAtQuantile(0.99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return latency.getMax() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public long getMappedRows() {
+        return mappedRows.sum();
+    }
+
+    @Override
+    public double getMapperMillis() {
+        return mapperNanos.sum() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMeanMapperMicrosPerRow() {
+        long rows = mappedRows.sum();
+        return rows == 0 ? 0 : mapperNanos.sum() / 1000.0 / rows;
+    }
+}
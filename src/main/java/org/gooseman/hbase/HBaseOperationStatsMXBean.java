@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+public interface HBaseOperationStatsMXBean {
+
+    String getTableName();
+
+    String getOperation();
+
+    long getCalls();
+
+    long getFailures();
+
+    long getRows();
+
+    long getBytes();
+
+    double getMeanRowsPerCall();
+
+    long getMaxRowsPerCall();
+
+    double getMeanMillis();
+
+    double get50thPercentileMillis();
+
+    double get95thPercentileMillis();
+
+    double get99thPercentileMillis();
+
+    double getMaxMillis();
+
+    long getMappedRows();
+
+    double getMapperMillis();
+
+    double getMeanMapperMicrosPerRow();
+}
@@ -10,66 +10,264 @@
 
 package org.gooseman.hbase;
 
+import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.util.Bytes;
 
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
-
-import static org.apache.hadoop.hbase.util.Bytes.toBytes;
+import java.util.Arrays;
+import java.util.Set;
 
 public class HBaseOutputSet {
 
     private final Result result;
+    private int rowPrefixLength;
+
+    private byte[] valueArray;
+    private int valueOffset;
+    private int valueLength;
 
     public HBaseOutputSet(Result result) {
         this.result = result;
     }
 
+    // indexes the cells of the result once so wide rows are not binary searched per column
+    public static HBaseOutputSet indexed(Result result) {
+        return new IndexedHBaseOutputSet(result);
+    }
+
+    // the logical row key, without the prefix of a salted table
+    public byte[] getRow() {
+        byte[] row = result.getRow();
+        return row == null || rowPrefixLength == 0 ? row : Arrays.copyOfRange(row, rowPrefixLength, row.length);
+    }
+
+    // components of a row key built with HBaseKeyBuilder
+    public HBaseKeyReader getRowKey() {
+        byte[] row = result.getRow();
+        return row == null ? null : new HBaseKeyReader(row, rowPrefixLength, row.length - rowPrefixLength);
+    }
+
     public String getString(String family, String column) {
-       return Bytes.toString(result.getValue(toBytes(family), toBytes(column)));
+        return getString(HBaseColumn.cached(family, column));
+    }
+
+    public String getString(HBaseColumn column) {
+        return locate(column) ? Bytes.toString(valueArray, valueOffset, valueLength) : null;
     }
 
     public Double getDouble(String family, String column) {
-        return Bytes.toDouble(result.getValue(toBytes(family), toBytes(column)));
+        return getDouble(HBaseColumn.cached(family, column));
+    }
+
+    public Double getDouble(HBaseColumn column) {
+        return locate(column) ? Bytes.toDouble(valueArray, valueOffset) : null;
     }
 
     public Integer getInteger(String family, String column) {
-        return Bytes.toInt(result.getValue(toBytes(family), toBytes(column)));
+        return getInteger(HBaseColumn.cached(family, column));
+    }
+
+    public Integer getInteger(HBaseColumn column) {
+        return locate(column) ? Bytes.toInt(valueArray, valueOffset, valueLength) : null;
     }
 
     public Long getLong(String family, String column) {
-        return Bytes.toLong(result.getValue(toBytes(family), toBytes(column)));
+        return getLong(HBaseColumn.cached(family, column));
+    }
+
+    public Long getLong(HBaseColumn column) {
+        return locate(column) ? Bytes.toLong(valueArray, valueOffset, valueLength) : null;
     }
 
     public Float getFloat(String family, String column) {
-        return Bytes.toFloat(result.getValue(toBytes(family), toBytes(column)));
+        return getFloat(HBaseColumn.cached(family, column));
+    }
+
+    public Float getFloat(HBaseColumn column) {
+        return locate(column) ? Bytes.toFloat(valueArray, valueOffset) : null;
     }
 
     public Boolean getBoolean(String family, String column) {
-        return Bytes.toBoolean(result.getValue(toBytes(family), toBytes(column)));
+        return getBoolean(HBaseColumn.cached(family, column));
+    }
+
+    public Boolean getBoolean(HBaseColumn column) {
+        return locate(column) ? toBoolean(valueArray, valueOffset, valueLength) : null;
     }
 
     public Short getShort(String family, String column) {
-        return Bytes.toShort(result.getValue(toBytes(family), toBytes(column)));
+        return getShort(HBaseColumn.cached(family, column));
+    }
+
+    public Short getShort(HBaseColumn column) {
+        return locate(column) ? Bytes.toShort(valueArray, valueOffset, valueLength) : null;
     }
 
     public BigDecimal getBigDecimal(String family, String column) {
-        return Bytes.toBigDecimal(result.getValue(toBytes(family), toBytes(column)));
+        return getBigDecimal(HBaseColumn.cached(family, column));
+    }
+
+    public BigDecimal getBigDecimal(HBaseColumn column) {
+        return locate(column) ? Bytes.toBigDecimal(valueArray, valueOffset, valueLength) : null;
     }
 
     public LocalDate getLocalDate(String family, String column) {
-        return LocalDate.ofEpochDay(Bytes.toLong(result.getValue(toBytes(family), toBytes(column))));
+        return getLocalDate(HBaseColumn.cached(family, column));
+    }
+
+    public LocalDate getLocalDate(HBaseColumn column) {
+        return locate(column) ? LocalDate.ofEpochDay(Bytes.toLong(valueArray, valueOffset, valueLength)) : null;
     }
 
     public LocalDateTime getLocalDateTime(String family, String column) {
-        return  getLocalDateTime(family, column, ZoneOffset.UTC);
+        return getLocalDateTime(HBaseColumn.cached(family, column), ZoneOffset.UTC);
     }
 
     public LocalDateTime getLocalDateTime(String family, String column, ZoneOffset zoneOffset) {
-        return  LocalDateTime.ofInstant(Instant.ofEpochMilli(Bytes.toLong(result.getValue(toBytes(family), toBytes(column)))), zoneOffset);
+        return getLocalDateTime(HBaseColumn.cached(family, column), zoneOffset);
+    }
+
+    public LocalDateTime getLocalDateTime(HBaseColumn column) {
+        return getLocalDateTime(column, ZoneOffset.UTC);
+    }
+
+    public LocalDateTime getLocalDateTime(HBaseColumn column, ZoneOffset zoneOffset) {
+        return locate(column) ? LocalDateTime.ofInstant(Instant.ofEpochMilli(Bytes.toLong(valueArray, valueOffset, valueLength)), zoneOffset) : null;
+    }
+
+    public boolean has(String family, String column) {
+        return has(HBaseColumn.cached(family, column));
+    }
+
+    public boolean has(HBaseColumn column) {
+        return locate(column);
+    }
+
+    public int getInt(String family, String column, int defaultValue) {
+        return getInt(HBaseColumn.cached(family, column), defaultValue);
+    }
+
+    public int getInt(HBaseColumn column, int defaultValue) {
+        return locate(column) ? Bytes.toInt(valueArray, valueOffset, valueLength) : defaultValue;
+    }
+
+    public long getLong(String family, String column, long defaultValue) {
+        return getLong(HBaseColumn.cached(family, column), defaultValue);
+    }
+
+    public long getLong(HBaseColumn column, long defaultValue) {
+        return locate(column) ? Bytes.toLong(valueArray, valueOffset, valueLength) : defaultValue;
+    }
+
+    public double getDouble(String family, String column, double defaultValue) {
+        return getDouble(HBaseColumn.cached(family, column), defaultValue);
+    }
+
+    public double getDouble(HBaseColumn column, double defaultValue) {
+        return locate(column) ? Bytes.toDouble(valueArray, valueOffset) : defaultValue;
+    }
+
+    public float getFloat(String family, String column, float defaultValue) {
+        return getFloat(HBaseColumn.cached(family, column), defaultValue);
+    }
+
+    public float getFloat(HBaseColumn column, float defaultValue) {
+        return locate(column) ? Bytes.toFloat(valueArray, valueOffset) : defaultValue;
+    }
+
+    public short getShort(String family, String column, short defaultValue) {
+        return getShort(HBaseColumn.cached(family, column), defaultValue);
+    }
+
+    public short getShort(HBaseColumn column, short defaultValue) {
+        return locate(column) ? Bytes.toShort(valueArray, valueOffset, valueLength) : defaultValue;
+    }
+
+    public boolean getBoolean(String family, String column, boolean defaultValue) {
+        return getBoolean(HBaseColumn.cached(family, column), defaultValue);
+    }
+
+    public boolean getBoolean(HBaseColumn column, boolean defaultValue) {
+        return locate(column) ? toBoolean(valueArray, valueOffset, valueLength) : defaultValue;
+    }
+
+    public byte[] getBytes(String family, String column) {
+        return getBytes(HBaseColumn.cached(family, column));
+    }
+
+    public byte[] getBytes(HBaseColumn column) {
+        return locate(column) ? Arrays.copyOfRange(valueArray, valueOffset, valueOffset + valueLength) : null;
+    }
+
+    public HBasePackedReader getPacked(String family, String column) {
+        return getPacked(HBaseColumn.cached(family, column));
+    }
+
+    // fields are decoded straight from the cell as they are read
+    public HBasePackedReader getPacked(HBaseColumn column) {
+        return locate(column) ? new HBasePackedReader(valueArray, valueOffset, valueLength) : null;
+    }
+
+    public HBaseKeyReader getOrdered(String family, String column) {
+        return getOrdered(HBaseColumn.cached(family, column));
+    }
+
+    public HBaseKeyReader getOrdered(HBaseColumn column) {
+        return locate(column) ? new HBaseKeyReader(valueArray, valueOffset, valueLength) : null;
+    }
+
+    public ByteBuffer getValueBuffer(String family, String column) {
+        return getValueBuffer(HBaseColumn.cached(family, column));
+    }
+
+    // read-only view over the cell's backing array, the value is not copied
+    public ByteBuffer getValueBuffer(HBaseColumn column) {
+        return locate(column) ? ByteBuffer.wrap(valueArray, valueOffset, valueLength).asReadOnlyBuffer() : null;
+    }
+
+    HBaseOutputSet withRowPrefix(int length) {
+        this.rowPrefixLength = length;
+        return this;
+    }
+
+    // a view over the same row that adds every column looked up to the given set
+    HBaseOutputSet recording(Set<HBaseColumn> columns) {
+        return new HBaseOutputSet(result) {
+            @Override
+            boolean locate(HBaseColumn column) {
+                columns.add(column);
+                return super.locate(column);
+            }
+        }.withRowPrefix(rowPrefixLength);
+    }
+
+    // points valueArray/valueOffset/valueLength at the column's latest value, the getters decode
+    // straight from there
+    boolean locate(HBaseColumn column) {
+        Cell cell = result.getColumnLatestCell(column.family(), column.qualifier());
+        if (cell == null) {
+            return found(null, 0, 0);
+        }
+        return found(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength());
+    }
+
+    final boolean found(byte[] array, int offset, int length) {
+        this.valueArray = array;
+        this.valueOffset = offset;
+        this.valueLength = length;
+        return array != null;
+    }
+
+    private static boolean toBoolean(byte[] array, int offset, int length) {
+        if (length != 1) {
+            throw new IllegalArgumentException("Array has wrong size: " + length);
+        }
+        return array[offset] != (byte) 0;
     }
 }
@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+import static org.gooseman.hbase.HBasePackedWriter.FIXED32;
+import static org.gooseman.hbase.HBasePackedWriter.FIXED64;
+import static org.gooseman.hbase.HBasePackedWriter.LENGTH_DELIMITED;
+import static org.gooseman.hbase.HBasePackedWriter.MAX_FIELD;
+import static org.gooseman.hbase.HBasePackedWriter.VARINT;
+
+/**
+ * Reads the fields of a value written by {@link HBasePackedWriter} in place. Nothing is decoded up
+ * front: the first field access walks the value once to note where each field starts, after which
+ * every getter decodes just its own field. Missing fields read as null or the given default. Like
+ * {@link HBaseOutputSet}, a reader is meant to be used by one thread.
+ */
+public final class HBasePackedReader {
+
+    private static final int ABSENT = -1;
+
+    private final byte[] array;
+    private final int end;
+    private final int schemaVersion;
+    private final int fieldsStart;
+
+    // position << 3 | wire type of each field, by field number
+    private int[] fields;
+    private int position;
+
+    HBasePackedReader(byte[] array, int offset, int length) {
+        this.array = array;
+        this.end = offset + length;
+        if (length < 2 || array[offset] != HBasePackedWriter.FORMAT) {
+            throw new IllegalArgumentException("Not a packed value");
+        }
+        this.position = offset + 1;
+        this.schemaVersion = (int) readVarint();
+        this.fieldsStart = position;
+    }
+
+    public static HBasePackedReader of(byte[] value) {
+        return new HBasePackedReader(value, 0, value.length);
+    }
+
+    public int getSchemaVersion() {
+        return schemaVersion;
+    }
+
+    public boolean has(int field) {
+        return locate(field) != ABSENT;
+    }
+
+    public int getInt(int field, int defaultValue) {
+        int location = locate(field, VARINT);
+        return location == ABSENT ? defaultValue : (int) HBasePackedWriter.unZigZag(varintAt(location));
+    }
+
+    public Integer getInteger(int field) {
+        int location = locate(field, VARINT);
+        return location == ABSENT ? null : (int) HBasePackedWriter.unZigZag(varintAt(location));
+    }
+
+    public long getLong(int field, long defaultValue) {
+        int location = locate(field, VARINT);
+        return location == ABSENT ? defaultValue : HBasePackedWriter.unZigZag(varintAt(location));
+    }
+
+    public Long getLong(int field) {
+        int location = locate(field, VARINT);
+        return location == ABSENT ? null : HBasePackedWriter.unZigZag(varintAt(location));
+    }
+
+    public short getShort(int field, short defaultValue) {
+        return (short) getInt(field, defaultValue);
+    }
+
+    public Short getShort(int field) {
+        Integer value = getInteger(field);
+        return value == null ? null : value.shortValue();
+    }
+
+    public boolean getBoolean(int field, boolean defaultValue) {
+        int location = locate(field, VARINT);
+        return location == ABSENT ? defaultValue : varintAt(location) != 0;
+    }
+
+    public Boolean getBoolean(int field) {
+        int location = locate(field, VARINT);
+        return location == ABSENT ? null : varintAt(location) != 0;
+    }
+
+    public double getDouble(int field, double defaultValue) {
+        int location = locate(field, FIXED64);
+        return location == ABSENT ? defaultValue : Double.longBitsToDouble(fixedAt(location, 8));
+    }
+
+    public Double getDouble(int field) {
+        int location = locate(field, FIXED64);
+        return location == ABSENT ? null : Double.longBitsToDouble(fixedAt(location, 8));
+    }
+
+    public float getFloat(int field, float defaultValue) {
+        int location = locate(field, FIXED32);
+        return location == ABSENT ? defaultValue : Float.intBitsToFloat((int) fixedAt(location, 4));
+    }
+
+    public Float getFloat(int field) {
+        int location = locate(field, FIXED32);
+        return location == ABSENT ? null : Float.intBitsToFloat((int) fixedAt(location, 4));
+    }
+
+    public String getString(int field) {
+        int location = locate(field, LENGTH_DELIMITED);
+        if (location == ABSENT) {
+            return null;
+        }
+        position = location;
+        int length = readLength();
+        return new String(array, position, length, StandardCharsets.UTF_8);
+    }
+
+    public byte[] getBytes(int field) {
+        ByteBuffer value = getValueBuffer(field);
+        if (value == null) {
+            return null;
+        }
+        byte[] bytes = new byte[value.remaining()];
+        value.get(bytes);
+        return bytes;
+    }
+
+    // read-only view over the field inside the cell, the value is not copied
+    public ByteBuffer getValueBuffer(int field) {
+        int location = locate(field, LENGTH_DELIMITED);
+        if (location == ABSENT) {
+            return null;
+        }
+        position = location;
+        int length = readLength();
+        return ByteBuffer.wrap(array, position, length).asReadOnlyBuffer();
+    }
+
+    public BigDecimal getBigDecimal(int field) {
+        int location = locate(field, LENGTH_DELIMITED);
+        if (location == ABSENT) {
+            return null;
+        }
+        position = location;
+        int length = readLength();
+        int valueEnd = position + length;
+        int scale = (int) HBasePackedWriter.unZigZag(readVarint());
+        byte[] unscaled = Arrays.copyOfRange(array, position, valueEnd);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+
+    public LocalDate getLocalDate(int field) {
+        Long epochDay = getLong(field);
+        return epochDay == null ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    public LocalDateTime getLocalDateTime(int field) {
+        return getLocalDateTime(field, ZoneOffset.UTC);
+    }
+
+    public LocalDateTime getLocalDateTime(int field, ZoneOffset zoneOffset) {
+        Long epochMilli = getLong(field);
+        return epochMilli == null ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMilli), zoneOffset);
+    }
+
+    private int locate(int field, int wireType) {
+        int location = locate(field);
+        if (location == ABSENT) {
+            return ABSENT;
+        }
+        if ((location & 7) != wireType) {
+            throw new IllegalArgumentException("Field " + field + " was written as a different type");
+        }
+        return location >>> 3;
+    }
+
+    private int locate(int field) {
+        if (fields == null) {
+            fields = index();
+        }
+        return field > 0 && field < fields.length ? fields[field] : ABSENT;
+    }
+
+    // a field written more than once reads as the last value, like any tagged format
+    private int[] index() {
+        int[] index = new int[16];
+        Arrays.fill(index, ABSENT);
+        position = fieldsStart;
+        while (position < end) {
+            long tag = readVarint();
+            // the writer never goes past MAX_FIELD, anything else would size the index from garbage
+            if (tag >>> 3 < 1 || tag >>> 3 > MAX_FIELD) {
+                throw new IllegalArgumentException("Packed value is malformed");
+            }
+            int field = (int) (tag >>> 3);
+            int wireType = (int) (tag & 7);
+            if (field >= index.length) {
+                int size = index.length;
+                index = Arrays.copyOf(index, Math.max(field + 1, size * 2));
+                Arrays.fill(index, size, index.length, ABSENT);
+            }
+            index[field] = position << 3 | wireType;
+            skip(wireType);
+        }
+        if (position != end) {
+            throw new IllegalArgumentException("Packed value is truncated");
+        }
+        return index;
+    }
+
+    private void skip(int wireType) {
+        switch (wireType) {
+            case VARINT:
+                readVarint();
+                break;
+            case FIXED64:
+                position += 8;
+                break;
+            case FIXED32:
+                position += 4;
+                break;
+            case LENGTH_DELIMITED:
+                int length = readLength();
+                position += length;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown wire type " + wireType);
+        }
+    }
+
+    private long varintAt(int location) {
+        position = location;
+        return readVarint();
+    }
+
+    private int readLength() {
+        long length = readVarint();
+        if (length < 0 || length > end - position) {
+            throw new IllegalArgumentException("Packed value is malformed");
+        }
+        return (int) length;
+    }
+
+    private long readVarint() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position >= end) {
+                throw new IllegalArgumentException("Packed value is truncated");
+            }
+            byte b = array[position++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    private long fixedAt(int location, int bytes) {
+        if (location + bytes > end) {
+            throw new IllegalArgumentException("Packed value is truncated");
+        }
+        long value = 0;
+        for (int i = 0; i < bytes; i++) {
+            value |= (array[location + i] & 0xFFL) << (i * 8);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Packs a group of fields into the value of a single cell instead of one cell per field, saving
+ * the row key, family, qualifier and timestamp every cell repeats. The layout is a format byte and
+ * the schema version followed by tagged fields: integers as zig-zag varints, floating point numbers
+ * as fixed little-endian words and everything else length-prefixed. Fields are identified by number
+ * (1 to {@value #MAX_FIELD}), null values are left out and readers skip fields they do not know,
+ * so fields can be added and dropped between schema versions. Read back with
+ * {@link HBaseOutputSet#getPacked(HBaseColumn)}.
+ */
+public final class HBasePackedWriter {
+
+    static final byte FORMAT = 1;
+    static final int MAX_FIELD = 1023;
+    static final int VARINT = 0;
+    static final int FIXED64 = 1;
+    static final int LENGTH_DELIMITED = 2;
+    static final int FIXED32 = 5;
+
+    private byte[] buffer = new byte[64];
+    private int length;
+
+    public HBasePackedWriter(int schemaVersion) {
+        if (schemaVersion < 0) {
+            throw new IllegalArgumentException("Schema version must not be negative: " + schemaVersion);
+        }
+        buffer[length++] = FORMAT;
+        writeVarint(schemaVersion);
+    }
+
+    public HBasePackedWriter putInt(int field, int value) {
+        tag(field, VARINT);
+        writeVarint(zigZag(value));
+        return this;
+    }
+
+    public HBasePackedWriter putInt(int field, Integer value) {
+        return value == null ? this : putInt(field, value.intValue());
+    }
+
+    public HBasePackedWriter putLong(int field, long value) {
+        tag(field, VARINT);
+        writeVarint(zigZag(value));
+        return this;
+    }
+
+    public HBasePackedWriter putLong(int field, Long value) {
+        return value == null ? this : putLong(field, value.longValue());
+    }
+
+    public HBasePackedWriter putShort(int field, short value) {
+        return putInt(field, value);
+    }
+
+    public HBasePackedWriter putShort(int field, Short value) {
+        return value == null ? this : putInt(field, value.shortValue());
+    }
+
+    public HBasePackedWriter putBoolean(int field, boolean value) {
+        tag(field, VARINT);
+        writeVarint(value ? 1 : 0);
+        return this;
+    }
+
+    public HBasePackedWriter putBoolean(int field, Boolean value) {
+        return value == null ? this : putBoolean(field, value.booleanValue());
+    }
+
+    public HBasePackedWriter putDouble(int field, double value) {
+        tag(field, FIXED64);
+        writeFixed(Double.doubleToRawLongBits(value), 8);
+        return this;
+    }
+
+    public HBasePackedWriter putDouble(int field, Double value) {
+        return value == null ? this : putDouble(field, value.doubleValue());
+    }
+
+    public HBasePackedWriter putFloat(int field, float value) {
+        tag(field, FIXED32);
+        writeFixed(Float.floatToRawIntBits(value), 4);
+        return this;
+    }
+
+    public HBasePackedWriter putFloat(int field, Float value) {
+        return value == null ? this : putFloat(field, value.floatValue());
+    }
+
+    public HBasePackedWriter putString(int field, String value) {
+        return value == null ? this : putBytes(field, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public HBasePackedWriter putBytes(int field, byte[] value) {
+        if (value != null) {
+            tag(field, LENGTH_DELIMITED);
+            writeVarint(value.length);
+            ensure(value.length);
+            System.arraycopy(value, 0, buffer, length, value.length);
+            length += value.length;
+        }
+        return this;
+    }
+
+    // scale as a zig-zag varint followed by the unscaled value's two's complement bytes
+    public HBasePackedWriter putBigDecimal(int field, BigDecimal value) {
+        if (value != null) {
+            byte[] unscaled = value.unscaledValue().toByteArray();
+            long scale = zigZag(value.scale());
+            tag(field, LENGTH_DELIMITED);
+            writeVarint(varintSize(scale) + unscaled.length);
+            writeVarint(scale);
+            ensure(unscaled.length);
+            System.arraycopy(unscaled, 0, buffer, length, unscaled.length);
+            length += unscaled.length;
+        }
+        return this;
+    }
+
+    public HBasePackedWriter putLocalDate(int field, LocalDate value) {
+        return value == null ? this : putLong(field, value.toEpochDay());
+    }
+
+    // stored as epoch millis like HBaseInputSet#addLocalDateTime
+    public HBasePackedWriter putLocalDateTime(int field, LocalDateTime value) {
+        return putLocalDateTime(field, value, ZoneOffset.UTC);
+    }
+
+    public HBasePackedWriter putLocalDateTime(int field, LocalDateTime value, ZoneOffset zoneOffset) {
+        return value == null ? this : putLong(field, value.toInstant(zoneOffset).toEpochMilli());
+    }
+
+    public int size() {
+        return length;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private void tag(int field, int wireType) {
+        if (field < 1 || field > MAX_FIELD) {
+            throw new IllegalArgumentException("Field numbers go from 1 to " + MAX_FIELD + ": " + field);
+        }
+        writeVarint((field << 3) | wireType);
+    }
+
+    private void writeVarint(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[length++] = (byte) value;
+    }
+
+    private void writeFixed(long value, int bytes) {
+        ensure(bytes);
+        for (int i = 0; i < bytes; i++) {
+            buffer[length++] = (byte) (value >>> (i * 8));
+        }
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+}
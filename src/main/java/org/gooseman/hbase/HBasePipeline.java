@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import org.apache.hadoop.hbase.client.Scan;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Scan, map and write as three concurrent stages joined by bounded queues: one thread reads the
+ * scan, a pool of workers maps the rows, and the thread calling {@link #run} hands the mapped rows
+ * to the sink in batches. A full queue blocks the stage feeding it, so the slowest stage sets the
+ * pace and memory stays bounded. Rows are written in no particular order, rows mapped to null are
+ * dropped.
+ * <p>
+ * The reader and the workers run on {@link HBaseTemplate#executorService()}: on a pool of a fixed size
+ * one thread goes to the reader and the workers are capped to the rest, a pool of a single thread is
+ * refused.
+ * <p>
+ * The first failure of any stage stops all of them and is thrown from {@link #run}.
+ * {@link #cancel()} stops reading, the rows already read are still mapped and written.
+ */
+public class HBasePipeline<T> {
+
+    public interface Sink<T> {
+        void write(List<T> batch) throws IOException;
+    }
+
+    private static final Object END = new Object();
+    private static final long POLL_TIMEOUT_MS = 100;
+
+    private final HBaseTemplate template;
+    private final String tableName;
+    private final Scan scan;
+    private final Function<HBaseOutputSet, T> rowMapper;
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private int queueCapacity = 1024;
+    private int batchSize = 1000;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private volatile boolean cancelled;
+
+    HBasePipeline(HBaseTemplate template, String tableName, Scan scan, Function<HBaseOutputSet, T> rowMapper) {
+        this.template = template;
+        this.tableName = tableName;
+        this.scan = scan;
+        this.rowMapper = rowMapper;
+    }
+
+    public HBasePipeline<T> workers(int workers) {
+        this.workers = Math.max(1, workers);
+        return this;
+    }
+
+    // capacity of each of the two queues, in rows
+    public HBasePipeline<T> queueCapacity(int queueCapacity) {
+        this.queueCapacity = Math.max(1, queueCapacity);
+        return this;
+    }
+
+    public HBasePipeline<T> batchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+        return this;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    // saves every batch to the given table, rows read from one table can go back to another
+    public long saveTo(String targetTableName, Function<T, HBaseInputSet> putMapper) throws IOException {
+        return run(batch -> template.save(targetTableName, batch, putMapper));
+    }
+
+    // returns the number of rows written; a pipeline runs once
+    public long run(Sink<T> sink) throws IOException {
+        if (!started.compareAndSet(false, true)) {
+            throw new IllegalStateException("The pipeline has already run");
+        }
+        ExecutorService executor = template.executorService();
+        // a worker queued behind busy threads would leave the reader blocked on a full queue forever
+        int workers = Math.min(this.workers, threads(executor) - 1);
+        if (workers < 1) {
+            throw new IllegalStateException("A pipeline needs an executor of at least two threads");
+        }
+        BlockingQueue<Object> rows = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Object> mapped = new ArrayBlockingQueue<>(queueCapacity);
+        // output sets are only wrapped on the reading thread, the workers do the mapping
+        HBaseScanIterator<HBaseOutputSet> scanner = template.scan(tableName, scan, Function.identity());
+        AtomicInteger runningWorkers = new AtomicInteger(workers);
+        try {
+            executor.execute(() -> read(scanner, rows));
+        } catch (RejectedExecutionException e) {
+            scanner.close();
+            throw e;
+        }
+        try {
+            for (int i = 0; i < workers; i++) {
+                executor.execute(() -> map(rows, mapped, runningWorkers));
+            }
+        } catch (RejectedExecutionException e) {
+            // stops the reader, which closes the scanner, and the workers already started
+            fail(e);
+        }
+        return write(mapped, sink);
+    }
+
+    // threads the executor runs at once, past its core size a pool only grows when its queue is full
+    private static int threads(ExecutorService executor) {
+        if (executor instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+            return pool.getQueue() instanceof SynchronousQueue ? pool.getMaximumPoolSize() : Math.max(1, pool.getCorePoolSize());
+        }
+        if (executor instanceof ForkJoinPool) {
+            return ((ForkJoinPool) executor).getParallelism();
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    private void read(HBaseScanIterator<HBaseOutputSet> scanner, BlockingQueue<Object> rows) {
+        try (HBaseScanIterator<HBaseOutputSet> source = scanner) {
+            while (!cancelled && failure.get() == null && source.hasNext()) {
+                if (!offer(rows, source.next())) {
+                    return;
+                }
+            }
+        } catch (Throwable e) {
+            fail(e);
+            return;
+        }
+        offer(rows, END);
+    }
+
+    private void map(BlockingQueue<Object> rows, BlockingQueue<Object> mapped, AtomicInteger runningWorkers) {
+        try {
+            for (Object row; (row = poll(rows)) != null;) {
+                if (row == END) {
+                    // put back for the other workers
+                    offer(rows, END);
+                    break;
+                }
+                T value = rowMapper.apply((HBaseOutputSet) row);
+                if (value != null && !offer(mapped, value)) {
+                    return;
+                }
+            }
+        } catch (Throwable e) {
+            fail(e);
+            return;
+        }
+        if (runningWorkers.decrementAndGet() == 0) {
+            offer(mapped, END);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private long write(BlockingQueue<Object> mapped, Sink<T> sink) throws IOException {
+        long written = 0;
+        List<T> batch = new ArrayList<>(batchSize);
+        try {
+            for (Object item; (item = poll(mapped)) != null && item != END;) {
+                batch.add((T) item);
+                if (batch.size() == batchSize) {
+                    sink.write(batch);
+                    written += batch.size();
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (failure.get() == null && !batch.isEmpty()) {
+                sink.write(batch);
+                written += batch.size();
+            }
+        } catch (IOException | RuntimeException | Error e) {
+            fail(e);
+        }
+        Throwable cause = failure.get();
+        if (cause == null) {
+            return written;
+        }
+        if (cause instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for mapped rows");
+        }
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        }
+        if (cause instanceof UncheckedIOException) {
+            throw ((UncheckedIOException) cause).getCause();
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        throw new IOException(cause);
+    }
+
+    private void fail(Throwable cause) {
+        failure.compareAndSet(null, cause);
+    }
+
+    // waits for room in the queue, giving up once any stage has failed
+    private boolean offer(BlockingQueue<Object> queue, Object item) {
+        try {
+            while (failure.get() == null) {
+                if (queue.offer(item, POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            fail(e);
+        }
+        return false;
+    }
+
+    // null once any stage has failed
+    private Object poll(BlockingQueue<Object> queue) {
+        try {
+            while (failure.get() == null) {
+                Object item = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (item != null) {
+                    return item;
+                }
+            }
+        } catch (InterruptedException e) {
+            fail(e);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import org.apache.hadoop.hbase.CompareOperator;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.BinaryComparator;
+import org.apache.hadoop.hbase.filter.BinaryPrefixComparator;
+import org.apache.hadoop.hbase.filter.ByteArrayComparable;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+import static org.apache.hadoop.hbase.util.Bytes.toBytes;
+
+/**
+ * A row mapper together with the columns it reads and the predicates rows have to match, applied
+ * to the {@link Get}s and {@link Scan}s it runs with so only those columns of matching rows come
+ * back from the region servers. Columns are either declared up front or recorded from the first
+ * row the mapper reads; a mapper that reads some columns only for some rows should declare them.
+ * <p>
+ * Predicates compare the stored bytes, which orders strings and non-negative numbers written by
+ * {@link HBaseInputSet} correctly; rows without the column never match. Configure the query before
+ * sharing it, it is safe to run from several threads afterwards.
+ */
+public class HBaseQuery<T> {
+
+    private final Function<HBaseOutputSet, T> rowMapper;
+    private final Set<HBaseColumn> columns = new LinkedHashSet<>();
+    private final Set<HBaseColumn> predicateColumns = new LinkedHashSet<>();
+    private final List<Filter> filters = new ArrayList<>();
+    private byte[] rowPrefix;
+    private boolean recordColumns;
+    private volatile Set<HBaseColumn> recordedColumns;
+
+    private HBaseQuery(Function<HBaseOutputSet, T> rowMapper) {
+        this.rowMapper = rowMapper;
+    }
+
+    public static <T> HBaseQuery<T> of(Function<HBaseOutputSet, T> rowMapper) {
+        return new HBaseQuery<>(rowMapper);
+    }
+
+    public HBaseQuery<T> column(String family, String qualifier) {
+        return column(HBaseColumn.of(family, qualifier));
+    }
+
+    public HBaseQuery<T> column(HBaseColumn column) {
+        columns.add(column);
+        return this;
+    }
+
+    public HBaseQuery<T> columns(HBaseColumn... columns) {
+        Collections.addAll(this.columns, columns);
+        return this;
+    }
+
+    // the first non-empty row is read in full and the columns the mapper looked up are fetched
+    // from then on, on top of the declared ones
+    public HBaseQuery<T> recordColumns() {
+        this.recordColumns = true;
+        return this;
+    }
+
+    public HBaseQuery<T> where(HBaseColumn column, CompareOperator operator, String value) {
+        return where(column, operator, toBytes(value));
+    }
+
+    public HBaseQuery<T> where(HBaseColumn column, CompareOperator operator, Integer value) {
+        return where(column, operator, toBytes(value));
+    }
+
+    public HBaseQuery<T> where(HBaseColumn column, CompareOperator operator, Long value) {
+        return where(column, operator, toBytes(value));
+    }
+
+    public HBaseQuery<T> where(HBaseColumn column, CompareOperator operator, byte[] value) {
+        return filter(column, operator, new BinaryComparator(value));
+    }
+
+    public HBaseQuery<T> whereStartsWith(HBaseColumn column, String prefix) {
+        return filter(column, CompareOperator.EQUAL, new BinaryPrefixComparator(toBytes(prefix)));
+    }
+
+    // from is inclusive, to is exclusive
+    public HBaseQuery<T> whereBetween(HBaseColumn column, String from, String to) {
+        return where(column, CompareOperator.GREATER_OR_EQUAL, from).where(column, CompareOperator.LESS, to);
+    }
+
+    public HBaseQuery<T> whereBetween(HBaseColumn column, long from, long to) {
+        return where(column, CompareOperator.GREATER_OR_EQUAL, from).where(column, CompareOperator.LESS, to);
+    }
+
+    // any other filter, every filter of the query has to pass
+    public HBaseQuery<T> filter(Filter filter) {
+        filters.add(filter);
+        return this;
+    }
+
+    // scans only, narrows the scan to the rows starting with the prefix
+    public HBaseQuery<T> rowPrefix(byte[] rowPrefix) {
+        this.rowPrefix = rowPrefix.clone();
+        return this;
+    }
+
+    private HBaseQuery<T> filter(HBaseColumn column, CompareOperator operator, ByteArrayComparable comparator) {
+        SingleColumnValueFilter filter = new SingleColumnValueFilter(column.family(), column.qualifier(), operator, comparator);
+        filter.setFilterIfMissing(true);
+        filter.setLatestVersionOnly(true);
+        // a value filter only sees the columns the request fetches
+        predicateColumns.add(column);
+        return filter(filter);
+    }
+
+    public Function<HBaseOutputSet, T> getRowMapper() {
+        if (!recordColumns) {
+            return rowMapper;
+        }
+        return outputSet -> {
+            if (recordedColumns != null || outputSet.getRow() == null) {
+                return rowMapper.apply(outputSet);
+            }
+            Set<HBaseColumn> read = new LinkedHashSet<>();
+            T value = rowMapper.apply(outputSet.recording(read));
+            recordedColumns = read;
+            return value;
+        };
+    }
+
+    // the columns sent with every request, null while the full row is still needed
+    Set<HBaseColumn> projection() {
+        if (recordColumns && recordedColumns == null || !recordColumns && columns.isEmpty()) {
+            return null;
+        }
+        Set<HBaseColumn> projection = new LinkedHashSet<>(columns);
+        if (recordedColumns != null) {
+            projection.addAll(recordedColumns);
+        }
+        projection.addAll(predicateColumns);
+        return projection;
+    }
+
+    // returns a copy, the caller's get is left as it is and can be applied to again
+    public Get apply(Get get) {
+        get = new Get(get);
+        Set<HBaseColumn> projection = projection();
+        if (projection != null) {
+            for (HBaseColumn column : projection) {
+                get.addColumn(column.family(), column.qualifier());
+            }
+        }
+        Filter filter = filter(get.getFilter(), projection);
+        if (filter != null) {
+            get.setFilter(filter);
+        }
+        return get;
+    }
+
+    // returns a copy, like apply(Get)
+    public Scan apply(Scan scan) throws IOException {
+        scan = new Scan(scan);
+        if (rowPrefix != null) {
+            scan.setRowPrefixFilter(rowPrefix);
+        }
+        Set<HBaseColumn> projection = projection();
+        if (projection != null) {
+            for (HBaseColumn column : projection) {
+                scan.addColumn(column.family(), column.qualifier());
+            }
+        }
+        Filter filter = filter(scan.getFilter(), projection);
+        if (filter != null) {
+            scan.setFilter(filter);
+        }
+        return scan;
+    }
+
+    private Filter filter(Filter existing, Set<HBaseColumn> projection) {
+        List<Filter> all = new ArrayList<>(filters.size() + 2);
+        if (existing != null) {
+            all.add(existing);
+        }
+        all.addAll(filters);
+        if (projection != null && projection.isEmpty()) {
+            // the mapper reads the row key only, one cell is enough to return the row
+            all.add(new FirstKeyOnlyFilter());
+        }
+        if (all.isEmpty()) {
+            return null;
+        }
+        return all.size() == 1 ? all.get(0) : new FilterList(FilterList.Operator.MUST_PASS_ALL, all);
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Rows copied out of scan and get results into direct chunks of an {@link HBaseBufferPool}, so
+ * large result sets can be held and replayed any number of times without keeping their cells on the
+ * heap. Rows are stored one after the other in the KeyValue layout; once the pool has no chunk left,
+ * or a row does not fit in one, the rest of the rows go to a spill file instead.
+ * <p>
+ * On replay every row is copied back into a reused heap array that the output set reads from, so an
+ * output set is only valid during its rowMapper call. Closing hands the chunks back to the pool and
+ * deletes the spill file, a replay still open then fails on its next row.
+ */
+public class HBaseResultBuffer implements Closeable {
+
+    private final HBaseBufferPool pool;
+    private final Function<Result, HBaseOutputSet> outputSets;
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private ByteBuffer current;
+    private byte[] record = new byte[1024];
+    private long rows;
+    private long memoryRows;
+    private long offHeapBytes;
+    private Path spillFile;
+    private OutputStream spill;
+    private long spilledBytes;
+    private boolean closed;
+
+    HBaseResultBuffer(HBaseBufferPool pool, Function<Result, HBaseOutputSet> outputSets) {
+        this.pool = pool;
+        this.outputSets = outputSets;
+    }
+
+    // empty results are skipped, only rows that were found are kept
+    void add(Result result) throws IOException {
+        Cell[] cells = result.rawCells();
+        if (cells == null || cells.length == 0) {
+            return;
+        }
+        int length = Bytes.SIZEOF_INT;
+        for (Cell cell : cells) {
+            length += Bytes.SIZEOF_INT + KeyValueUtil.getSerializedSize(cell, false);
+        }
+        if (record.length < Bytes.SIZEOF_INT + length) {
+            record = new byte[Math.max(Bytes.SIZEOF_INT + length, record.length * 2)];
+        }
+        int offset = Bytes.putInt(record, 0, length);
+        offset = Bytes.putInt(record, offset, cells.length);
+        for (Cell cell : cells) {
+            offset = Bytes.putInt(record, offset, KeyValueUtil.getSerializedSize(cell, false));
+            offset = KeyValueUtil.appendToByteArray(cell, record, offset, false);
+        }
+        if (spill == null && store(record, offset)) {
+            memoryRows++;
+        } else {
+            // from the first spilled row on everything is spilled, which keeps the rows in order
+            if (spill == null) {
+                spillFile = Files.createTempFile(pool.getSpillDirectory(), "hbase-results-", ".spill");
+                spill = new BufferedOutputStream(Files.newOutputStream(spillFile), 64 * 1024);
+            }
+            spill.write(record, 0, offset);
+            spilledBytes += offset;
+        }
+        rows++;
+    }
+
+    // called once every row was added, before the first replay
+    void seal() throws IOException {
+        if (spill != null) {
+            spill.close();
+        }
+    }
+
+    public long size() {
+        return rows;
+    }
+
+    public long getOffHeapBytes() {
+        return offHeapBytes;
+    }
+
+    public long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    public <T> Iterator<T> iterator(Function<HBaseOutputSet, T> rowMapper) {
+        return replay(rowMapper);
+    }
+
+    public <T> Stream<T> stream(Function<HBaseOutputSet, T> rowMapper) {
+        Replay<T> replay = replay(rowMapper);
+        return StreamSupport.stream(Spliterators.spliterator(replay, rows, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(replay::close);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (ByteBuffer chunk : chunks) {
+            pool.release(chunk);
+        }
+        chunks.clear();
+        current = null;
+        if (spill != null) {
+            try {
+                spill.close();
+            } finally {
+                Files.deleteIfExists(spillFile);
+            }
+        }
+    }
+
+    private <T> Replay<T> replay(Function<HBaseOutputSet, T> rowMapper) {
+        if (closed) {
+            throw new IllegalStateException("Result buffer is closed");
+        }
+        return new Replay<>(rowMapper);
+    }
+
+    private boolean store(byte[] record, int length) {
+        if (current == null || current.remaining() < length) {
+            if (length > pool.getChunkSize()) {
+                return false;
+            }
+            current = pool.acquire();
+            if (current == null) {
+                return false;
+            }
+            chunks.add(current);
+        }
+        current.put(record, 0, length);
+        offHeapBytes += length;
+        return true;
+    }
+
+    private class Replay<T> implements Iterator<T>, Closeable {
+
+        private final Function<HBaseOutputSet, T> rowMapper;
+        private byte[] row = new byte[1024];
+        private long remaining = rows;
+        private long remainingInMemory = memoryRows;
+        private int nextChunk;
+        private ByteBuffer chunk;
+        private DataInputStream spilled;
+
+        Replay(Function<HBaseOutputSet, T> rowMapper) {
+            this.rowMapper = rowMapper;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (remaining > 0) {
+                return true;
+            }
+            close();
+            return false;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            // the chunks may already be serving another buffer
+            if (closed) {
+                close();
+                throw new IllegalStateException("Result buffer is closed");
+            }
+            try {
+                int length;
+                if (remainingInMemory > 0) {
+                    if (chunk == null || !chunk.hasRemaining()) {
+                        // positions mark how far each chunk was written
+                        chunk = chunks.get(nextChunk++).duplicate();
+                        chunk.flip();
+                    }
+                    length = chunk.getInt();
+                    chunk.get(row(length), 0, length);
+                    remainingInMemory--;
+                } else {
+                    if (spilled == null) {
+                        spilled = new DataInputStream(new BufferedInputStream(Files.newInputStream(spillFile), 64 * 1024));
+                    }
+                    length = spilled.readInt();
+                    spilled.readFully(row(length), 0, length);
+                }
+                remaining--;
+                return rowMapper.apply(outputSets.apply(decode()));
+            } catch (IOException e) {
+                close();
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private byte[] row(int length) {
+            if (row.length < length) {
+                row = new byte[Math.max(length, row.length * 2)];
+            }
+            return row;
+        }
+
+        private Result decode() {
+            Cell[] cells = new Cell[Bytes.toInt(row, 0)];
+            int offset = Bytes.SIZEOF_INT;
+            for (int i = 0; i < cells.length; i++) {
+                int length = Bytes.toInt(row, offset);
+                cells[i] = new KeyValue(row, offset + Bytes.SIZEOF_INT, length);
+                offset += Bytes.SIZEOF_INT + length;
+            }
+            return Result.create(cells);
+        }
+
+        @Override
+        public void close() {
+            remaining = 0;
+            if (spilled != null) {
+                try {
+                    spilled.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    spilled = null;
+                }
+            }
+        }
+    }
+}
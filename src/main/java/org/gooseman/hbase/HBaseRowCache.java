@@ -0,0 +1,387 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Consistency;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * In-process cache of {@link Result}s keyed by table, row and the columns a {@link Get} asks for.
+ * Rows are evicted least recently used first once the entry count or the estimated byte size goes
+ * over its bound, and expire after the time to live of their table. The cache is split into
+ * segments, each with its own lock and an equal share of both bounds.
+ * <p>
+ * Every invalidation moves its segment to a new version. A read-through fill carries the version
+ * taken before the row was read and is dropped if the segment moved on since, so a read racing a
+ * write never brings the old row back. Rows a writer has buffered but not yet flushed are pinned
+ * and not cached at all until the writer flushes.
+ */
+public class HBaseRowCache {
+
+    private static final int SEGMENTS = 16;
+    // rough per-cell overhead of the KeyValue object and its key layout
+    private static final int CELL_OVERHEAD = 64;
+
+    private final long maxEntries;
+    private final long maxBytes;
+    private final long defaultTtlNanos;
+    private final ConcurrentMap<String, Long> tableTtlNanos = new ConcurrentHashMap<>();
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final LongSupplier ticker;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    public HBaseRowCache(long maxEntries, long maxBytes, Duration defaultTtl) {
+        this(maxEntries, maxBytes, defaultTtl, System::nanoTime);
+    }
+
+    HBaseRowCache(long maxEntries, long maxBytes, Duration defaultTtl, LongSupplier ticker) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.defaultTtlNanos = defaultTtl.toNanos();
+        this.ticker = ticker;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(Math.max(1, maxEntries / SEGMENTS), Math.max(1, maxBytes / SEGMENTS));
+        }
+    }
+
+    public HBaseRowCache setTimeToLive(String tableName, Duration ttl) {
+        tableTtlNanos.put(tableName, ttl.toNanos());
+        return this;
+    }
+
+    // gets with filters, time ranges, several versions, per-family limits or relaxed consistency
+    // go straight to HBase, entries are only keyed by the columns asked for
+    static boolean isCacheable(Get get) {
+        return get.getFilter() == null
+                && get.getTimeRange().isAllTime()
+                && get.getColumnFamilyTimeRange().isEmpty()
+                && get.getMaxVersions() == 1
+                && get.getMaxResultsPerColumnFamily() < 0
+                && get.getRowOffsetPerColumnFamily() == 0
+                && !get.isCheckExistenceOnly()
+                && get.getConsistency() == Consistency.STRONG;
+    }
+
+    Result get(String tableName, Get get) {
+        RowKey rowKey = new RowKey(tableName, get.getRow());
+        Result result = segment(rowKey).get(rowKey, columns(get), ticker.getAsLong());
+        if (result == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return result;
+    }
+
+    // taken before the row is read, see put
+    long version(String tableName, byte[] row) {
+        RowKey rowKey = new RowKey(tableName, row);
+        return segment(rowKey).version();
+    }
+
+    void put(String tableName, Get get, Result result) {
+        put(tableName, get, result, version(tableName, get.getRow()));
+    }
+
+    // dropped when the row was invalidated or pinned after version was taken
+    void put(String tableName, Get get, Result result, long version) {
+        RowKey rowKey = new RowKey(tableName, get.getRow());
+        long ttl = tableTtlNanos.getOrDefault(tableName, defaultTtlNanos);
+        segment(rowKey).put(rowKey, columns(get), copy(result), ticker.getAsLong() + ttl, version);
+    }
+
+    public void invalidate(String tableName, byte[] row) {
+        RowKey rowKey = new RowKey(tableName, row);
+        segment(rowKey).invalidate(rowKey);
+    }
+
+    // a write to the row is on its way, it stays uncached until every pin is released
+    void pin(String tableName, byte[] row) {
+        RowKey rowKey = new RowKey(tableName, row);
+        segment(rowKey).pin(rowKey);
+    }
+
+    // the write has been flushed, whatever was read in the meantime is dropped once more
+    void unpin(String tableName, byte[] row) {
+        RowKey rowKey = new RowKey(tableName, row);
+        segment(rowKey).unpin(rowKey);
+    }
+
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public long getExpirationCount() {
+        return expirations.sum();
+    }
+
+    public long getEstimatedSize() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long getEstimatedBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.bytes();
+        }
+        return bytes;
+    }
+
+    public long getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    private Segment segment(RowKey rowKey) {
+        int hash = rowKey.hash ^ (rowKey.hash >>> 16);
+        return segments[hash & (SEGMENTS - 1)];
+    }
+
+    // the requested families and qualifiers, an empty key for whole-row gets
+    private static ByteBuffer columns(Get get) {
+        if (!get.hasFamilies()) {
+            return ByteBuffer.allocate(0);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Map.Entry<byte[], NavigableSet<byte[]>> family : get.getFamilyMap().entrySet()) {
+            writeBlock(out, family.getKey());
+            if (family.getValue() != null) {
+                for (byte[] qualifier : family.getValue()) {
+                    writeBlock(out, qualifier);
+                }
+            }
+            out.write(0xff);
+        }
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    private static void writeBlock(ByteArrayOutputStream out, byte[] bytes) {
+        out.write(Bytes.toBytes(bytes.length), 0, Bytes.SIZEOF_INT);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    // results straight off the wire can share a much larger RPC buffer, keep our own copy
+    private static Result copy(Result result) {
+        Cell[] cells = result.rawCells();
+        if (cells == null) {
+            return result;
+        }
+        Cell[] copies = new Cell[cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            copies[i] = new KeyValue(cells[i]);
+        }
+        return Result.create(copies, result.getExists(), result.isStale());
+    }
+
+    private static long sizeOf(Result result) {
+        long size = CELL_OVERHEAD;
+        Cell[] cells = result.rawCells();
+        if (cells != null) {
+            for (Cell cell : cells) {
+                size += CELL_OVERHEAD + cell.getRowLength() + cell.getFamilyLength() + cell.getQualifierLength() + cell.getValueLength();
+            }
+        }
+        return size;
+    }
+
+    private final class Segment {
+
+        private final long maxEntries;
+        private final long maxBytes;
+        private final LinkedHashMap<RowKey, Map<ByteBuffer, Entry>> rows = new LinkedHashMap<>(16, 0.75f, true);
+        private final Map<RowKey, Integer> pins = new HashMap<>();
+        private long entries;
+        private long bytes;
+        private long version;
+
+        private Segment(long maxEntries, long maxBytes) {
+            this.maxEntries = maxEntries;
+            this.maxBytes = maxBytes;
+        }
+
+        private synchronized Result get(RowKey rowKey, ByteBuffer columns, long now) {
+            Map<ByteBuffer, Entry> variants = rows.get(rowKey);
+            Entry entry = variants == null ? null : variants.get(columns);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt - now <= 0) {
+                remove(rowKey, variants, columns, entry);
+                expirations.increment();
+                return null;
+            }
+            return entry.result;
+        }
+
+        private synchronized long version() {
+            return version;
+        }
+
+        private synchronized void put(RowKey rowKey, ByteBuffer columns, Result result, long expiresAt, long version) {
+            if (version != this.version || pins.containsKey(rowKey)) {
+                return;
+            }
+            Map<ByteBuffer, Entry> variants = rows.computeIfAbsent(rowKey, key -> new HashMap<>(2));
+            Entry entry = new Entry(result, sizeOf(result), expiresAt);
+            Entry previous = variants.put(columns, entry);
+            if (previous != null) {
+                entries--;
+                bytes -= previous.size;
+            }
+            entries++;
+            bytes += entry.size;
+            evict();
+        }
+
+        private synchronized void pin(RowKey rowKey) {
+            pins.merge(rowKey, 1, Integer::sum);
+            invalidate(rowKey);
+        }
+
+        private synchronized void unpin(RowKey rowKey) {
+            pins.computeIfPresent(rowKey, (key, count) -> count == 1 ? null : count - 1);
+            invalidate(rowKey);
+        }
+
+        private synchronized void invalidate(RowKey rowKey) {
+            version++;
+            Map<ByteBuffer, Entry> variants = rows.remove(rowKey);
+            if (variants != null) {
+                for (Entry entry : variants.values()) {
+                    entries--;
+                    bytes -= entry.size;
+                }
+            }
+        }
+
+        private synchronized void clear() {
+            version++;
+            rows.clear();
+            entries = 0;
+            bytes = 0;
+        }
+
+        private synchronized long size() {
+            return entries;
+        }
+
+        private synchronized long bytes() {
+            return bytes;
+        }
+
+        // drops least recently used rows, with all their column variants, until both bounds hold
+        private void evict() {
+            Iterator<Map.Entry<RowKey, Map<ByteBuffer, Entry>>> eldest = rows.entrySet().iterator();
+            while ((entries > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+                for (Entry entry : eldest.next().getValue().values()) {
+                    entries--;
+                    bytes -= entry.size;
+                    evictions.increment();
+                }
+                eldest.remove();
+            }
+        }
+
+        private void remove(RowKey rowKey, Map<ByteBuffer, Entry> variants, ByteBuffer columns, Entry entry) {
+            variants.remove(columns);
+            if (variants.isEmpty()) {
+                rows.remove(rowKey);
+            }
+            entries--;
+            bytes -= entry.size;
+        }
+    }
+
+    private static final class Entry {
+
+        private final Result result;
+        private final long size;
+        private final long expiresAt;
+
+        private Entry(Result result, long size, long expiresAt) {
+            this.result = result;
+            this.size = size;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class RowKey {
+
+        private final String tableName;
+        private final byte[] row;
+        private final int hash;
+
+        private RowKey(String tableName, byte[] row) {
+            this.tableName = tableName;
+            this.row = row;
+            this.hash = 31 * tableName.hashCode() + Bytes.hashCode(row);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RowKey)) {
+                return false;
+            }
+            RowKey other = (RowKey) o;
+            return hash == other.hash && tableName.equals(other.tableName) && Bytes.equals(row, other.row);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellBuilderType;
+import org.apache.hadoop.hbase.ExtendedCellBuilder;
+import org.apache.hadoop.hbase.ExtendedCellBuilderFactory;
+import org.apache.hadoop.hbase.RawCell;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.io.TimeRange;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+
+/**
+ * Spreads the rows of a table over a fixed number of buckets by prefixing every row key with a
+ * one-byte bucket derived from a hash of the key, so monotonically increasing keys no longer land
+ * on a single region. The template adds and strips the prefix, callers only ever see logical keys.
+ * Changing the number of buckets of a table that already holds data makes its rows unreachable.
+ */
+public class HBaseRowKeySalt {
+
+    static final Comparator<Result> LOGICAL_ROW_ORDER = (left, right) -> {
+        byte[] leftRow = left.getRow();
+        byte[] rightRow = right.getRow();
+        return Bytes.compareTo(leftRow, 1, leftRow.length - 1, rightRow, 1, rightRow.length - 1);
+    };
+
+    private final int buckets;
+
+    public HBaseRowKeySalt(int buckets) {
+        if (buckets < 1 || buckets > 256) {
+            throw new IllegalArgumentException("Buckets must be between 1 and 256: " + buckets);
+        }
+        this.buckets = buckets;
+    }
+
+    public int getBuckets() {
+        return buckets;
+    }
+
+    public int bucket(byte[] row) {
+        // murmur3 finalizer over the plain hash, sequential keys differ in their last bytes only
+        int hash = Bytes.hashCode(row);
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return (hash & Integer.MAX_VALUE) % buckets;
+    }
+
+    public byte[] salt(byte[] row) {
+        byte[] salted = new byte[row.length + 1];
+        salted[0] = (byte) bucket(row);
+        System.arraycopy(row, 0, salted, 1, row.length);
+        return salted;
+    }
+
+    public byte[] unsalt(byte[] row) {
+        byte[] logical = new byte[row.length - 1];
+        System.arraycopy(row, 1, logical, 0, logical.length);
+        return logical;
+    }
+
+    // the cells of a put carry their row, so they are copied over to the salted one, tags included
+    Put salt(Put put) throws IOException {
+        byte[] row = salt(put.getRow());
+        Put salted = new Put(row, put.getTimestamp());
+        ExtendedCellBuilder builder = ExtendedCellBuilderFactory.create(CellBuilderType.DEEP_COPY);
+        for (List<Cell> cells : put.getFamilyCellMap().values()) {
+            for (Cell cell : cells) {
+                builder.clear()
+                        .setRow(row)
+                        .setFamily(cell.getFamilyArray(), cell.getFamilyOffset(), cell.getFamilyLength())
+                        .setQualifier(cell.getQualifierArray(), cell.getQualifierOffset(), cell.getQualifierLength())
+                        .setTimestamp(cell.getTimestamp())
+                        .setType(cell.getType())
+                        .setValue(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength());
+                if (cell instanceof RawCell) {
+                    builder.setTags(((RawCell) cell).cloneTags());
+                }
+                salted.add(builder.build());
+            }
+        }
+        salted.setDurability(put.getDurability());
+        put.getAttributesMap().forEach(salted::setAttribute);
+        return salted;
+    }
+
+    Get salt(Get get) throws IOException {
+        Get salted = new Get(salt(get.getRow()));
+        for (Map.Entry<byte[], NavigableSet<byte[]>> family : get.getFamilyMap().entrySet()) {
+            if (family.getValue() == null || family.getValue().isEmpty()) {
+                salted.addFamily(family.getKey());
+            } else {
+                for (byte[] qualifier : family.getValue()) {
+                    salted.addColumn(family.getKey(), qualifier);
+                }
+            }
+        }
+        TimeRange timeRange = get.getTimeRange();
+        salted.setTimeRange(timeRange.getMin(), timeRange.getMax());
+        get.getColumnFamilyTimeRange().forEach((family, range) -> salted.setColumnFamilyTimeRange(family, range.getMin(), range.getMax()));
+        salted.readVersions(get.getMaxVersions());
+        salted.setFilter(get.getFilter());
+        salted.setCacheBlocks(get.getCacheBlocks());
+        salted.setCheckExistenceOnly(get.isCheckExistenceOnly());
+        salted.setMaxResultsPerColumnFamily(get.getMaxResultsPerColumnFamily());
+        salted.setRowOffsetPerColumnFamily(get.getRowOffsetPerColumnFamily());
+        salted.setConsistency(get.getConsistency());
+        salted.setReplicaId(get.getReplicaId());
+        salted.setIsolationLevel(get.getIsolationLevel());
+        salted.setPriority(get.getPriority());
+        get.getAttributesMap().forEach(salted::setAttribute);
+        return salted;
+    }
+
+    // one scan per bucket covering the logical range, results of each come back in logical order
+    List<Scan> bucketScans(Scan scan) throws IOException {
+        if (scan.isReversed()) {
+            throw new IllegalArgumentException("Reversed scans are not supported on salted tables");
+        }
+        byte[] start = scan.getStartRow();
+        byte[] stop = scan.getStopRow();
+        List<Scan> scans = new ArrayList<>(buckets);
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            byte[] prefix = { (byte) bucket };
+            Scan bucketScan = new Scan(scan);
+            bucketScan.withStartRow(Bytes.add(prefix, start), scan.includeStartRow());
+            if (stop.length > 0) {
+                bucketScan.withStopRow(Bytes.add(prefix, stop), scan.includeStopRow());
+            } else {
+                bucketScan.withStopRow(HBaseKeyBuilder.prefixEnd(prefix), false);
+            }
+            scans.add(bucketScan);
+        }
+        return scans;
+    }
+}
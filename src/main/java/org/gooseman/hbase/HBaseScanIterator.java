@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily maps the rows of an open {@link ResultScanner}. The scanner is released once the rows are
+ * exhausted or {@link #close()} is called.
+ */
+public class HBaseScanIterator<T> implements Iterator<T>, Closeable {
+
+    private final ResultScanner scanner;
+    private final Iterator<Result> results;
+    private final Function<Result, T> rowMapper;
+    private final HBaseOperationRecorder recorder;
+    private boolean closed;
+
+    HBaseScanIterator(ResultScanner scanner, Function<Result, T> rowMapper, HBaseOperationRecorder recorder) {
+        this.scanner = scanner;
+        this.results = scanner.iterator();
+        this.rowMapper = rowMapper;
+        this.recorder = recorder;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        // the scanner fetches the next batch of rows from within hasNext
+        long start = recorder.start();
+        boolean hasNext;
+        try {
+            hasNext = results.hasNext();
+        } catch (RuntimeException e) {
+            recorder.failed();
+            close();
+            throw e;
+        } finally {
+            recorder.called(start);
+        }
+        if (hasNext) {
+            return true;
+        }
+        close();
+        return false;
+    }
+
+    @Override
+    public T next() {
+        if (closed) {
+            throw new NoSuchElementException();
+        }
+        Result result = results.next();
+        recorder.read(result);
+        return recorder.map(rowMapper, result);
+    }
+
+    public Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED), false)
+                .onClose(this::close);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        recorder.report();
+        scanner.close();
+    }
+}
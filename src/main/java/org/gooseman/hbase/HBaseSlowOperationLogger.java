@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Logs operations whose client time reaches a threshold and passes every measurement on to the
+ * wrapped metrics. Scans and writers report once per scan or flush, so they usually want a higher
+ * threshold than single gets.
+ */
+public class HBaseSlowOperationLogger implements HBaseTemplateMetrics {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HBaseSlowOperationLogger.class);
+
+    private final HBaseTemplateMetrics delegate;
+    private final long defaultThresholdNanos;
+    private final Map<HBaseOperation, Long> thresholdNanos = new EnumMap<>(HBaseOperation.class);
+
+    public HBaseSlowOperationLogger(Duration threshold) {
+        this(NOOP, threshold);
+    }
+
+    public HBaseSlowOperationLogger(HBaseTemplateMetrics delegate, Duration threshold) {
+        this.delegate = delegate;
+        this.defaultThresholdNanos = threshold.toNanos();
+    }
+
+    // meant to be called while setting up, before the logger is handed to a template
+    public HBaseSlowOperationLogger setThreshold(HBaseOperation operation, Duration threshold) {
+        thresholdNanos.put(operation, threshold.toNanos());
+        return this;
+    }
+
+    @Override
+    public void recordCall(String tableName, HBaseOperation operation, long nanos, long rows, long bytes, boolean failed) {
+        Long threshold = thresholdNanos.get(operation);
+        if (nanos >= (threshold == null ? defaultThresholdNanos : threshold) && LOG.isWarnEnabled()) {
+            LOG.warn("Slow {} on {}: {} ms, {} rows, {} bytes{}", operation, tableName, nanos / 1_000_000, rows, bytes,
+                    failed ? ", failed" : "");
+        }
+        delegate.recordCall(tableName, operation, nanos, rows, bytes, failed);
+    }
+
+    @Override
+    public void recordMapping(String tableName, HBaseOperation operation, long nanos, long rows) {
+        delegate.recordMapping(tableName, operation, nanos, rows);
+    }
+}
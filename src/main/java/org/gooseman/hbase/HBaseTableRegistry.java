@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.Table;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches the {@link TableName} of every table the template touches and runs calls against a
+ * {@link Table}. Tables are lightweight in HBase 2, so every call opens its own and closes it once
+ * the call returns; scanners opened through a table outlive it. Opening one costs tens of
+ * nanoseconds and a few bytes ({@code HBaseTableBenchmark}), a pool of tables, which are not
+ * thread-safe, would not be cheaper to check out.
+ */
+class HBaseTableRegistry implements Closeable {
+
+    interface TableCall<R> {
+        R call(Table table) throws IOException;
+    }
+
+    private final Connection connection;
+    private final ConcurrentMap<String, TableName> tableNames = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    HBaseTableRegistry(Connection connection) {
+        this.connection = connection;
+    }
+
+    TableName tableName(String tableName) {
+        TableName name = tableNames.get(tableName);
+        if (name == null) {
+            name = tableNames.computeIfAbsent(tableName, TableName::valueOf);
+        }
+        return name;
+    }
+
+    <R> R call(String tableName, TableCall<R> call) throws IOException {
+        if (closed) {
+            throw new IOException("Template is closed");
+        }
+        try (Table table = connection.getTable(tableName(tableName))) {
+            return call.call(table);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        tableNames.clear();
+    }
+}
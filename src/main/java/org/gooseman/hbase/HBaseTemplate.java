@@ -10,50 +10,517 @@
 
 package org.gooseman.hbase;
 
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.io.TimeRange;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Pair;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class HBaseTemplate implements Closeable {
 
     private final Connection connection;
+    private final HBaseTableRegistry tables;
+    private int scanCaching = -1;
+    private long scanMaxResultSize = -1;
+    private Boolean scanAsyncPrefetch;
+    private long writeBufferSize = -1;
+    private long writeBufferPeriodicFlushTimeoutMs = -1;
+    private HBaseWriteFailureListener writeFailureListener;
+    private boolean indexedOutputSets;
+    private int scanParallelism = Runtime.getRuntime().availableProcessors();
+    private int parallelScanBufferSize = 1024;
+    private int multiGetChunkSize = 1000;
+    private int multiGetParallelism = Runtime.getRuntime().availableProcessors();
+    private ExecutorService executorService;
+    private boolean ownsExecutorService;
+    private HBaseRowCache rowCache;
+    private HBaseBufferPool bufferPool;
+    private HBaseTemplateMetrics metrics = HBaseTemplateMetrics.NOOP;
+    private final ConcurrentMap<String, HBaseRowKeySalt> rowKeySalts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, HBaseOperationPolicy> operationPolicies = new ConcurrentHashMap<>();
 
     public HBaseTemplate(Connection connection) {
         this.connection = connection;
+        this.tables = new HBaseTableRegistry(connection);
     }
 
     public <T> T get(String tableName, Get get, Function<HBaseOutputSet, T> rowMapper) throws IOException {
-        return rowMapper.apply(new HBaseOutputSet(connection.getTable(TableName.valueOf(tableName)).get(get)));
+        HBaseOperationRecorder recorder = recorder(tableName, HBaseOperation.GET);
+        HBaseRowKeySalt salt = rowKeySalts.get(tableName);
+        try {
+            HBaseRowCache cache = rowCache;
+            boolean cacheable = cache != null && HBaseRowCache.isCacheable(get);
+            Result result = cacheable ? cache.get(tableName, get) : null;
+            if (result == null) {
+                long version = cacheable ? cache.version(tableName, get.getRow()) : 0;
+                Get physicalGet = salt == null ? get : salt.salt(get);
+                result = recorder.call(() -> read(tableName, physicalGet));
+                recorder.read(result);
+                // a hedged read may have been answered by a lagging replica
+                if (cacheable && !result.isStale()) {
+                    cache.put(tableName, get, result, version);
+                }
+            }
+            return recorder.map(resultMapper(rowMapper, salt), result);
+        } finally {
+            recorder.report();
+        }
+    }
+
+    public <T> T get(String tableName, Get get, HBaseQuery<T> query) throws IOException {
+        return get(tableName, query.apply(get), query.getRowMapper());
     }
 
     public <T> Stream<T> get(String tableName, List<Get> gets, Function<HBaseOutputSet, T> rowMapper) throws IOException {
-        Result[] results = connection.getTable(TableName.valueOf(tableName)).get(gets);
-        return Arrays.stream(results).map(result -> rowMapper.apply(new HBaseOutputSet(result)));
+        HBaseOperationRecorder recorder = recorder(tableName, HBaseOperation.GET);
+        HBaseRowKeySalt salt = rowKeySalts.get(tableName);
+        Result[] results;
+        try {
+            results = fetch(tableName, gets, salt, recorder);
+        } finally {
+            recorder.report();
+        }
+        // rows are mapped as the stream is consumed, so the mapper time is reported row by row
+        Function<Result, T> mapper = resultMapper(rowMapper, salt);
+        return Arrays.stream(results).map(result -> {
+            try {
+                return recorder.map(mapper, result);
+            } finally {
+                recorder.report();
+            }
+        });
+    }
+
+    public <T> Stream<T> get(String tableName, List<Get> gets, HBaseQuery<T> query) throws IOException {
+        return get(tableName, apply(gets, query), query.getRowMapper());
+    }
+
+    private Result[] fetch(String tableName, List<Get> gets, HBaseRowKeySalt salt, HBaseOperationRecorder recorder)
+            throws IOException {
+        HBaseRowCache cache = rowCache;
+        if (cache == null) {
+            List<Get> physicalGets = salt(gets, salt);
+            Result[] results = recorder.call(() -> read(tableName, physicalGets));
+            for (Result result : results) {
+                recorder.read(result);
+            }
+            return results;
+        }
+        // only the gets the cache cannot answer go to HBase, in a single call
+        Result[] results = new Result[gets.size()];
+        List<Get> misses = new ArrayList<>();
+        List<Integer> missIndexes = new ArrayList<>();
+        long[] versions = new long[results.length];
+        for (int i = 0; i < results.length; i++) {
+            Get get = gets.get(i);
+            if (HBaseRowCache.isCacheable(get)) {
+                results[i] = cache.get(tableName, get);
+                versions[i] = cache.version(tableName, get.getRow());
+            }
+            if (results[i] == null) {
+                misses.add(get);
+                missIndexes.add(i);
+            }
+        }
+        if (!misses.isEmpty()) {
+            List<Get> physicalMisses = salt(misses, salt);
+            Result[] fetched = recorder.call(() -> read(tableName, physicalMisses));
+            for (int i = 0; i < fetched.length; i++) {
+                recorder.read(fetched[i]);
+                results[missIndexes.get(i)] = fetched[i];
+                if (HBaseRowCache.isCacheable(misses.get(i)) && !fetched[i].isStale()) {
+                    cache.put(tableName, misses.get(i), fetched[i], versions[missIndexes.get(i)]);
+                }
+            }
+        }
+        return results;
+    }
+
+    private Result read(String tableName, Get get) throws IOException {
+        HBaseOperationPolicy policy = operationPolicies.get(tableName);
+        if (policy == null) {
+            return tables.call(tableName, table -> table.get(get));
+        }
+        return policy.execute(() -> tables.call(tableName, table -> table.get(get)),
+                () -> tables.call(tableName, table -> table.get(policy.hedge(get))), executorService());
+    }
+
+    private Result[] read(String tableName, List<Get> gets) throws IOException {
+        HBaseOperationPolicy policy = operationPolicies.get(tableName);
+        if (policy == null) {
+            return tables.call(tableName, table -> table.get(gets));
+        }
+        return policy.execute(() -> tables.call(tableName, table -> table.get(gets)),
+                () -> tables.call(tableName, table -> table.get(policy.hedge(gets))), executorService());
+    }
+
+    // one round of a multiGet chunk under a policy: only the keys without a result yet are sent,
+    // and the round fails while any key is still failing so the policy retries just those
+    private Void batchPending(String tableName, List<Get> gets, Object[] results) throws IOException {
+        List<Integer> pending = new ArrayList<>();
+        synchronized (results) {
+            for (int i = 0; i < results.length; i++) {
+                if (!(results[i] instanceof Result)) {
+                    pending.add(i);
+                }
+            }
+        }
+        if (pending.isEmpty()) {
+            return null;
+        }
+        List<Get> pendingGets = new ArrayList<>(pending.size());
+        for (int index : pending) {
+            pendingGets.add(gets.get(index));
+        }
+        Object[] round = new Object[pendingGets.size()];
+        IOException roundFailure = null;
+        try {
+            batch(tableName, pendingGets, round);
+        } catch (IOException e) {
+            roundFailure = e;
+        }
+        Throwable keyFailure = null;
+        synchronized (results) {
+            // a hedge and its call may both answer, a result once in place is kept
+            for (int i = 0; i < round.length; i++) {
+                int index = pending.get(i);
+                if (!(results[index] instanceof Result) && round[i] != null) {
+                    results[index] = round[i];
+                }
+                if (!(results[index] instanceof Result) && keyFailure == null) {
+                    keyFailure = results[index] instanceof Throwable ? (Throwable) results[index] : null;
+                }
+            }
+            for (Object result : results) {
+                if (!(result instanceof Result)) {
+                    // a key's own failure decides whether the policy retries, the batch wraps it
+                    if (keyFailure instanceof IOException) {
+                        throw (IOException) keyFailure;
+                    }
+                    throw roundFailure != null ? roundFailure : new IOException("No result returned", keyFailure);
+                }
+            }
+        }
+        return null;
+    }
+
+    // keys that succeeded are filled in even when the batch throws
+    private void batch(String tableName, List<Get> gets, Object[] results) throws IOException {
+        tables.call(tableName, table -> {
+            try {
+                table.batch(gets, results);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a batch");
+            }
+            return null;
+        });
+    }
+
+    // identical gets are sent once, all gets in chunks of multiGetChunkSize, up to
+    // multiGetParallelism at a time; a failing key is reported in its result instead of failing
+    // the whole request
+    public <T> Stream<HBaseGetResult<T>> multiGet(String tableName, List<Get> gets, Function<HBaseOutputSet, T> rowMapper,
+                                                  boolean ordered) {
+        Set<ByteBuffer> seen = new HashSet<>();
+        List<Get> uniqueGets = new ArrayList<>(gets.size());
+        for (Get get : gets) {
+            ByteBuffer identity = identity(get);
+            if (identity == null || seen.add(identity)) {
+                uniqueGets.add(get);
+            }
+        }
+        List<HBaseFanOutIterator.Source<HBaseGetResult<T>>> sources = new ArrayList<>();
+        for (int from = 0; from < uniqueGets.size(); from += multiGetChunkSize) {
+            List<Get> chunk = uniqueGets.subList(from, Math.min(from + multiGetChunkSize, uniqueGets.size()));
+            sources.add(emitter -> {
+                for (HBaseGetResult<T> result : getChunk(tableName, chunk, rowMapper)) {
+                    if (!emitter.test(result)) {
+                        return;
+                    }
+                }
+            });
+        }
+        return new HBaseFanOutIterator<>(sources, ordered, Math.max(multiGetChunkSize, 1))
+                .start(executorService(), multiGetParallelism)
+                .stream();
+    }
+
+    public <T> Stream<HBaseGetResult<T>> multiGet(String tableName, List<Get> gets, HBaseQuery<T> query, boolean ordered) {
+        return multiGet(tableName, apply(gets, query), query.getRowMapper(), ordered);
+    }
+
+    private <T> List<HBaseGetResult<T>> getChunk(String tableName, List<Get> chunk, Function<HBaseOutputSet, T> rowMapper)
+            throws IOException {
+        HBaseOperationRecorder recorder = recorder(tableName, HBaseOperation.MULTI_GET);
+        HBaseRowKeySalt salt = rowKeySalts.get(tableName);
+        Object[] results = new Object[chunk.size()];
+        IOException chunkFailure = null;
+        long start = recorder.start();
+        HBaseOperationPolicy policy = operationPolicies.get(tableName);
+        try {
+            List<Get> physicalGets = salt(chunk, salt);
+            if (policy == null) {
+                batch(tableName, physicalGets, results);
+            } else {
+                policy.execute(() -> batchPending(tableName, physicalGets, results),
+                        () -> batchPending(tableName, policy.hedge(physicalGets), results), executorService());
+            }
+        } catch (IOException e) {
+            // keys that succeeded are still filled in, the failed ones hold their own exception
+            chunkFailure = e;
+            recorder.failed();
+        } finally {
+            recorder.called(start);
+        }
+        Function<Result, T> mapper = resultMapper(rowMapper, salt);
+        List<HBaseGetResult<T>> mapped = new ArrayList<>(chunk.size());
+        for (int i = 0; i < results.length; i++) {
+            byte[] row = chunk.get(i).getRow();
+            if (results[i] instanceof Result) {
+                recorder.read((Result) results[i]);
+                try {
+                    mapped.add(HBaseGetResult.success(row, recorder.map(mapper, (Result) results[i])));
+                } catch (RuntimeException e) {
+                    mapped.add(HBaseGetResult.failure(row, e));
+                }
+            } else if (results[i] instanceof Throwable) {
+                mapped.add(HBaseGetResult.failure(row, (Throwable) results[i]));
+            } else {
+                mapped.add(HBaseGetResult.failure(row, chunkFailure != null ? chunkFailure : new IOException("No result returned")));
+            }
+        }
+        recorder.report();
+        return mapped;
+    }
+
+    public <T> HBaseScanIterator<T> scan(String tableName, Scan scan, Function<HBaseOutputSet, T> rowMapper) throws IOException {
+        HBaseRowKeySalt salt = rowKeySalts.get(tableName);
+        return scan(tableName, scan, salt, resultMapper(rowMapper, salt));
+    }
+
+    private <T> HBaseScanIterator<T> scan(String tableName, Scan scan, HBaseRowKeySalt salt, Function<Result, T> mapper)
+            throws IOException {
+        HBaseOperationRecorder recorder = recorder(tableName, HBaseOperation.SCAN);
+        ResultScanner scanner;
+        try {
+            scanner = recorder.call(() -> salt == null
+                    ? tables.call(tableName, table -> table.getScanner(applyScanDefaults(scan)))
+                    : saltedScanner(tableName, applyScanDefaults(scan), salt));
+        } catch (IOException | RuntimeException e) {
+            recorder.report();
+            throw e;
+        }
+        return new HBaseScanIterator<>(scanner, mapper, recorder);
+    }
+
+    public <T> HBaseScanIterator<T> scan(String tableName, Scan scan, HBaseQuery<T> query) throws IOException {
+        return scan(tableName, query.apply(scan), query.getRowMapper());
+    }
+
+    // copies the scanned rows off the heap into chunks of the buffer pool, see HBaseResultBuffer
+    public HBaseResultBuffer buffer(String tableName, Scan scan) throws IOException {
+        HBaseRowKeySalt salt = rowKeySalts.get(tableName);
+        HBaseResultBuffer buffer = new HBaseResultBuffer(bufferPool(), result -> outputSet(result, salt));
+        try (HBaseScanIterator<Result> results = scan(tableName, scan, salt, Function.identity())) {
+            while (results.hasNext()) {
+                buffer.add(results.next());
+            }
+            buffer.seal();
+        } catch (IOException | RuntimeException e) {
+            buffer.close();
+            throw e;
+        }
+        return buffer;
     }
 
-    public <T> Iterator<T> scan(String tableName, Scan scan, Function<HBaseOutputSet, T> rowMapper) throws IOException {
-        try(ResultScanner results = connection.getTable(TableName.valueOf(tableName)).getScanner(scan)) {
-            return new Iterator<T>() {
-                @Override
-                public boolean hasNext() {
-                    return results.iterator().hasNext();
+    // rows are fetched multiGetChunkSize gets at a time, so only one chunk of results is on the
+    // heap at once; rows that were not found are left out
+    public HBaseResultBuffer buffer(String tableName, List<Get> gets) throws IOException {
+        HBaseRowKeySalt salt = rowKeySalts.get(tableName);
+        HBaseResultBuffer buffer = new HBaseResultBuffer(bufferPool(), result -> outputSet(result, salt));
+        HBaseOperationRecorder recorder = recorder(tableName, HBaseOperation.GET);
+        try {
+            int chunkSize = Math.max(multiGetChunkSize, 1);
+            for (int from = 0; from < gets.size(); from += chunkSize) {
+                for (Result result : fetch(tableName, gets.subList(from, Math.min(from + chunkSize, gets.size())), salt, recorder)) {
+                    buffer.add(result);
                 }
+            }
+            buffer.seal();
+        } catch (IOException | RuntimeException e) {
+            buffer.close();
+            throw e;
+        } finally {
+            recorder.report();
+        }
+        return buffer;
+    }
+
+    // the buckets are opened at once on the executor and prefetch their next batches on their own,
+    // unless the caller turned prefetching off, while the consuming thread merges them back into
+    // logical key order, so a small executor cannot stall the merge
+    private ResultScanner saltedScanner(String tableName, Scan scan, HBaseRowKeySalt salt) throws IOException {
+        List<Scan> bucketScans = salt.bucketScans(scan);
+        for (Scan bucketScan : bucketScans) {
+            if (bucketScan.isAsyncPrefetch() == null) {
+                bucketScan.setAsyncPrefetch(true);
+            }
+        }
+        return HBaseMergedScanner.open(bucketScans, bucketScan -> tables.call(tableName, table -> table.getScanner(bucketScan)),
+                HBaseRowKeySalt.LOGICAL_ROW_ORDER, scan.getLimit(), executorService());
+    }
+
+    public <T> Stream<T> stream(String tableName, Scan scan, Function<HBaseOutputSet, T> rowMapper) throws IOException {
+        return scan(tableName, scan, rowMapper).stream();
+    }
+
+    public <T> Stream<T> stream(String tableName, Scan scan, HBaseQuery<T> query) throws IOException {
+        return scan(tableName, scan, query).stream();
+    }
+
+    public <T> Stream<T> parallelScan(String tableName, Scan scan, Function<HBaseOutputSet, T> rowMapper) throws IOException {
+        return parallelScan(tableName, scan, rowMapper, true);
+    }
 
-                @Override
-                public T next() {
-                    return rowMapper.apply(new HBaseOutputSet(results.iterator().next()));
+    // splits the scan by region and runs up to scanParallelism region scans at once, rows keep
+    // their key order when ordered is set and come out as soon as they are mapped otherwise; a
+    // limit counts the rows of the whole scan, the first ones in key order when ordered
+    public <T> Stream<T> parallelScan(String tableName, Scan scan, Function<HBaseOutputSet, T> rowMapper, boolean ordered) throws IOException {
+        HBaseRowKeySalt salt = rowKeySalts.get(tableName);
+        if (salt != null && ordered) {
+            // regions of a salted table hold interleaved logical ranges, only a merge restores the
+            // order; its buckets are read concurrently, see saltedScanner
+            return stream(tableName, scan, rowMapper);
+        }
+        List<Scan> scans = regionScans(tableName, scan, salt);
+        List<HBaseFanOutIterator.Source<T>> sources = HBaseFanOutIterator.scanSources(scans,
+                regionScan -> tables.call(tableName, table -> table.getScanner(regionScan)), resultMapper(rowMapper, salt),
+                () -> recorder(tableName, HBaseOperation.PARALLEL_SCAN));
+        return new HBaseFanOutIterator<>(sources, ordered, parallelScanBufferSize)
+                .limit(scan.getLimit())
+                .start(executorService(), scanParallelism)
+                .stream();
+    }
+
+    public <T> Stream<T> parallelScan(String tableName, Scan scan, HBaseQuery<T> query, boolean ordered) throws IOException {
+        return parallelScan(tableName, query.apply(scan), query.getRowMapper(), ordered);
+    }
+
+    // one scan per region, and per bucket of a salted table
+    private List<Scan> regionScans(String tableName, Scan scan, HBaseRowKeySalt salt) throws IOException {
+        List<Scan> scans = new ArrayList<>();
+        try (RegionLocator regionLocator = connection.getRegionLocator(tables.tableName(tableName))) {
+            Pair<byte[][], byte[][]> keys = regionLocator.getStartEndKeys();
+            List<Scan> bucketScans = salt == null
+                    ? Collections.singletonList(applyScanDefaults(scan))
+                    : salt.bucketScans(applyScanDefaults(scan));
+            for (Scan bucketScan : bucketScans) {
+                scans.addAll(HBaseFanOutIterator.splitByRegions(bucketScan, keys.getFirst(), keys.getSecond()));
+            }
+        }
+        return scans;
+    }
+
+    // every region is aggregated on its own worker, up to scanParallelism at once, and the
+    // partial results are merged as they complete; the first failure stops the other regions. A
+    // scan with a limit aggregates its first rows in key order instead, on the calling thread
+    public <K> HBaseAggregates<K> aggregate(String tableName, Scan scan, HBaseAggregation<K> aggregation) throws IOException {
+        if (scan.getLimit() > 0) {
+            return aggregateFirst(tableName, aggregation.apply(scan), aggregation);
+        }
+        HBaseRowKeySalt salt = rowKeySalts.get(tableName);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        List<HBaseFanOutIterator.Source<Map<K, HBaseAggregate>>> sources = new ArrayList<>();
+        for (Scan regionScan : regionScans(tableName, aggregation.apply(scan), salt)) {
+            sources.add(emitter -> {
+                Map<K, HBaseAggregate> partial = new HashMap<>();
+                HBaseOperationRecorder recorder = recorder(tableName, HBaseOperation.PARALLEL_SCAN);
+                try (HBaseScanIterator<Void> rows = new HBaseScanIterator<>(
+                        recorder.call(() -> tables.call(tableName, table -> table.getScanner(regionScan))), result -> {
+                            aggregation.accumulate(partial, outputSet(result, salt));
+                            return null;
+                        }, recorder)) {
+                    while (!cancelled.get() && rows.hasNext()) {
+                        rows.next();
+                    }
+                } catch (Exception e) {
+                    cancelled.set(true);
+                    throw e;
+                }
+                if (!cancelled.get()) {
+                    emitter.test(partial);
                 }
-            };
+            });
+        }
+        Map<K, HBaseAggregate> groups = new HashMap<>();
+        HBaseAggregate total = aggregation.newAggregate();
+        try (HBaseFanOutIterator<Map<K, HBaseAggregate>> partials = new HBaseFanOutIterator<>(sources, false, Math.max(sources.size(), 1))
+                .start(executorService(), scanParallelism)) {
+            while (partials.hasNext()) {
+                for (Map.Entry<K, HBaseAggregate> group : partials.next().entrySet()) {
+                    HBaseAggregate merged = groups.get(group.getKey());
+                    if (merged == null) {
+                        groups.put(group.getKey(), group.getValue());
+                    } else {
+                        merged.merge(group.getValue());
+                    }
+                    total.merge(group.getValue());
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            cancelled.set(true);
+        }
+        return new HBaseAggregates<>(groups, total);
+    }
+
+    private <K> HBaseAggregates<K> aggregateFirst(String tableName, Scan scan, HBaseAggregation<K> aggregation) throws IOException {
+        Map<K, HBaseAggregate> groups = new HashMap<>();
+        try (Stream<HBaseOutputSet> rows = parallelScan(tableName, scan, Function.identity(), true)) {
+            rows.forEach(outputSet -> aggregation.accumulate(groups, outputSet));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
+        HBaseAggregate total = aggregation.newAggregate();
+        for (HBaseAggregate group : groups.values()) {
+            total.merge(group);
+        }
+        return new HBaseAggregates<>(groups, total);
+    }
+
+    // reads, maps and writes concurrently, see HBasePipeline
+    public <T> HBasePipeline<T> pipeline(String tableName, Scan scan, Function<HBaseOutputSet, T> rowMapper) {
+        return new HBasePipeline<>(this, tableName, scan, rowMapper);
     }
 
     public <T> void save(String tableName, T entity, Function<T, HBaseInputSet> putMapper) throws IOException {
@@ -61,11 +528,385 @@ public class HBaseTemplate implements Closeable {
     }
 
     public <T> void save(String tableName, List<T> entities, Function<T, HBaseInputSet> putMapper) throws IOException {
-        List<Put> puts =  entities.stream().map(putMapper).map(HBaseInputSet::getPut).collect(Collectors.toList());
-        connection.getTable(TableName.valueOf(tableName)).put(puts);
+        HBaseOperationRecorder recorder = recorder(tableName, HBaseOperation.SAVE);
+        HBaseRowKeySalt salt = rowKeySalts.get(tableName);
+        try {
+            List<Put> puts = new ArrayList<>(entities.size());
+            for (T entity : entities) {
+                Put put = recorder.map(putMapper, entity).getPut();
+                if (salt != null) {
+                    put = salt.salt(put);
+                }
+                recorder.wrote(put);
+                puts.add(put);
+            }
+            // pinned while the puts are on their way and released whatever the outcome, a put that
+            // fails part way may still have written some of the rows
+            HBaseRowCache cache = rowCache;
+            pin(cache, tableName, puts, salt);
+            try {
+                recorder.call(() -> {
+                    tables.call(tableName, table -> {
+                        table.put(puts);
+                        return null;
+                    });
+                    return null;
+                });
+            } finally {
+                unpin(cache, tableName, puts, salt);
+            }
+        } finally {
+            recorder.report();
+        }
+    }
+
+    public <T> void save(String tableName, Iterator<T> entities, Function<T, HBaseInputSet> putMapper) throws IOException {
+        try (HBaseWriter<T> writer = writer(tableName, putMapper)) {
+            writer.writeAll(entities);
+        }
+    }
+
+    public <T> void save(String tableName, Stream<T> entities, Function<T, HBaseInputSet> putMapper) throws IOException {
+        save(tableName, entities.iterator(), putMapper);
+    }
+
+    public <T> HBaseWriter<T> writer(String tableName, Function<T, HBaseInputSet> putMapper) throws IOException {
+        BufferedMutatorParams params = new BufferedMutatorParams(tables.tableName(tableName));
+        if (writeBufferSize > 0) {
+            params.writeBufferSize(writeBufferSize);
+        }
+        if (writeBufferPeriodicFlushTimeoutMs > 0) {
+            params.setWriteBufferPeriodicFlushTimeoutMs(writeBufferPeriodicFlushTimeoutMs);
+        }
+        if (writeFailureListener != null) {
+            HBaseWriteFailureListener listener = writeFailureListener;
+            params.listener((e, mutator) -> {
+                for (int i = 0; i < e.getNumExceptions(); i++) {
+                    listener.onFailure(tableName, e.getRow(i), e.getCause(i));
+                }
+            });
+        }
+        HBaseRowCache cache = rowCache;
+        HBaseRowKeySalt salt = rowKeySalts.get(tableName);
+        if (salt == null) {
+            return new HBaseWriter<>(connection.getBufferedMutator(params), putMapper,
+                    cache, tableName, row -> row, recorder(tableName, HBaseOperation.WRITE));
+        }
+        return new HBaseWriter<>(connection.getBufferedMutator(params),
+                putMapper.andThen(inputSet -> {
+                    try {
+                        return new HBaseInputSet(salt.salt(inputSet.getPut()));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }),
+                cache, tableName, salt::unsalt, recorder(tableName, HBaseOperation.WRITE));
+    }
+
+    // writes sorted HFiles under directory instead of puts, call load() on the returned loader to
+    // hand them to the table, see HBaseBulkLoader
+    public <T> HBaseBulkLoader<T> bulkLoader(String tableName, Function<T, HBaseInputSet> putMapper,
+                                             Path directory) throws IOException {
+        TableName name = tables.tableName(tableName);
+        byte[][] startKeys;
+        try (RegionLocator regionLocator = connection.getRegionLocator(name)) {
+            startKeys = regionLocator.getStartEndKeys().getFirst();
+        }
+        return new HBaseBulkLoader<>(connection, name, tables.call(tableName, Table::getDescriptor), startKeys,
+                rowKeySalts.get(tableName), putMapper, directory, rowCache, recorder(tableName, HBaseOperation.BULK_LOAD));
+    }
+
+    public int getScanCaching() {
+        return scanCaching;
+    }
+
+    public void setScanCaching(int scanCaching) {
+        this.scanCaching = scanCaching;
+    }
+
+    public long getScanMaxResultSize() {
+        return scanMaxResultSize;
+    }
+
+    public void setScanMaxResultSize(long scanMaxResultSize) {
+        this.scanMaxResultSize = scanMaxResultSize;
+    }
+
+    public Boolean getScanAsyncPrefetch() {
+        return scanAsyncPrefetch;
+    }
+
+    public void setScanAsyncPrefetch(Boolean scanAsyncPrefetch) {
+        this.scanAsyncPrefetch = scanAsyncPrefetch;
+    }
+
+    public long getWriteBufferSize() {
+        return writeBufferSize;
+    }
+
+    public void setWriteBufferSize(long writeBufferSize) {
+        this.writeBufferSize = writeBufferSize;
+    }
+
+    public long getWriteBufferPeriodicFlushTimeoutMs() {
+        return writeBufferPeriodicFlushTimeoutMs;
+    }
+
+    public void setWriteBufferPeriodicFlushTimeoutMs(long writeBufferPeriodicFlushTimeoutMs) {
+        this.writeBufferPeriodicFlushTimeoutMs = writeBufferPeriodicFlushTimeoutMs;
+    }
+
+    public HBaseWriteFailureListener getWriteFailureListener() {
+        return writeFailureListener;
+    }
+
+    public void setWriteFailureListener(HBaseWriteFailureListener writeFailureListener) {
+        this.writeFailureListener = writeFailureListener;
+    }
+
+    public boolean isIndexedOutputSets() {
+        return indexedOutputSets;
+    }
+
+    public void setIndexedOutputSets(boolean indexedOutputSets) {
+        this.indexedOutputSets = indexedOutputSets;
+    }
+
+    public int getScanParallelism() {
+        return scanParallelism;
+    }
+
+    public void setScanParallelism(int scanParallelism) {
+        this.scanParallelism = scanParallelism;
+    }
+
+    public int getParallelScanBufferSize() {
+        return parallelScanBufferSize;
+    }
+
+    public void setParallelScanBufferSize(int parallelScanBufferSize) {
+        this.parallelScanBufferSize = parallelScanBufferSize;
+    }
+
+    public int getMultiGetChunkSize() {
+        return multiGetChunkSize;
+    }
+
+    public void setMultiGetChunkSize(int multiGetChunkSize) {
+        this.multiGetChunkSize = multiGetChunkSize;
+    }
+
+    public int getMultiGetParallelism() {
+        return multiGetParallelism;
+    }
+
+    public void setMultiGetParallelism(int multiGetParallelism) {
+        this.multiGetParallelism = multiGetParallelism;
+    }
+
+    public HBaseRowCache getRowCache() {
+        return rowCache;
+    }
+
+    // rows saved through this template are evicted from the cache, writes made elsewhere are only
+    // picked up once the cached row expires
+    public void setRowCache(HBaseRowCache rowCache) {
+        this.rowCache = rowCache;
+    }
+
+    public synchronized HBaseBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    // shared by every result buffer of the template, a default pool is created on first use
+    public synchronized void setBufferPool(HBaseBufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    public HBaseTemplateMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(HBaseTemplateMetrics metrics) {
+        this.metrics = metrics == null ? HBaseTemplateMetrics.NOOP : metrics;
+    }
+
+    public HBaseRowKeySalt getRowKeySalt(String tableName) {
+        return rowKeySalts.get(tableName);
+    }
+
+    // salting is a property of the stored keys, it has to be set before the table is first written
+    // and kept for as long as the table lives
+    public void setRowKeySalt(String tableName, HBaseRowKeySalt salt) {
+        if (salt == null) {
+            rowKeySalts.remove(tableName);
+        } else {
+            rowKeySalts.put(tableName, salt);
+        }
+    }
+
+    public HBaseOperationPolicy getOperationPolicy(String tableName) {
+        return operationPolicies.get(tableName);
+    }
+
+    // applies to get, get(List) and multiGet; scans and writes keep the HBase client's own
+    // timeouts and retries
+    public void setOperationPolicy(String tableName, HBaseOperationPolicy policy) {
+        if (policy == null) {
+            operationPolicies.remove(tableName);
+        } else {
+            operationPolicies.put(tableName, policy);
+        }
+    }
+
+    private HBaseOperationRecorder recorder(String tableName, HBaseOperation operation) {
+        return new HBaseOperationRecorder(metrics, tableName, operation);
+    }
+
+    private static void pin(HBaseRowCache cache, String tableName, List<Put> puts, HBaseRowKeySalt salt) {
+        if (cache != null) {
+            for (Put put : puts) {
+                cache.pin(tableName, salt == null ? put.getRow() : salt.unsalt(put.getRow()));
+            }
+        }
+    }
+
+    private static void unpin(HBaseRowCache cache, String tableName, List<Put> puts, HBaseRowKeySalt salt) {
+        if (cache != null) {
+            for (Put put : puts) {
+                cache.unpin(tableName, salt == null ? put.getRow() : salt.unsalt(put.getRow()));
+            }
+        }
+    }
+
+    // everything that shapes what a get returns, null for gets that are never taken as identical:
+    // attributes may carry anything for the server, and a filter that cannot be serialized
+    private static ByteBuffer identity(Get get) {
+        if (!get.getAttributesMap().isEmpty()) {
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            Bytes.writeByteArray(out, get.getRow());
+            out.writeInt(get.getFamilyMap().size());
+            for (Map.Entry<byte[], NavigableSet<byte[]>> family : get.getFamilyMap().entrySet()) {
+                Bytes.writeByteArray(out, family.getKey());
+                out.writeInt(family.getValue() == null ? -1 : family.getValue().size());
+                if (family.getValue() != null) {
+                    for (byte[] qualifier : family.getValue()) {
+                        Bytes.writeByteArray(out, qualifier);
+                    }
+                }
+            }
+            Filter filter = get.getFilter();
+            out.writeUTF(filter == null ? "" : filter.getClass().getName());
+            if (filter != null) {
+                Bytes.writeByteArray(out, filter.toByteArray());
+            }
+            out.writeLong(get.getTimeRange().getMin());
+            out.writeLong(get.getTimeRange().getMax());
+            out.writeInt(get.getColumnFamilyTimeRange().size());
+            for (Map.Entry<byte[], TimeRange> family : get.getColumnFamilyTimeRange().entrySet()) {
+                Bytes.writeByteArray(out, family.getKey());
+                out.writeLong(family.getValue().getMin());
+                out.writeLong(family.getValue().getMax());
+            }
+            out.writeInt(get.getMaxVersions());
+            out.writeInt(get.getMaxResultsPerColumnFamily());
+            out.writeInt(get.getRowOffsetPerColumnFamily());
+            out.writeBoolean(get.isCheckExistenceOnly());
+            out.writeInt(get.getConsistency().ordinal());
+            out.writeInt(get.getReplicaId());
+            out.writeInt(get.getIsolationLevel().ordinal());
+        } catch (IOException e) {
+            return null;
+        }
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    private static List<Get> apply(List<Get> gets, HBaseQuery<?> query) {
+        List<Get> applied = new ArrayList<>(gets.size());
+        for (Get get : gets) {
+            applied.add(query.apply(get));
+        }
+        return applied;
+    }
+
+    private static List<Get> salt(List<Get> gets, HBaseRowKeySalt salt) throws IOException {
+        if (salt == null) {
+            return gets;
+        }
+        List<Get> salted = new ArrayList<>(gets.size());
+        for (Get get : gets) {
+            salted.add(salt.salt(get));
+        }
+        return salted;
+    }
+
+    public synchronized ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    // an executor set here is left running when the template is closed
+    public synchronized void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+        this.ownsExecutorService = false;
+    }
+
+    synchronized HBaseBufferPool bufferPool() {
+        if (bufferPool == null) {
+            bufferPool = new HBaseBufferPool();
+        }
+        return bufferPool;
+    }
+
+    synchronized ExecutorService executorService() {
+        if (executorService == null) {
+            AtomicInteger threads = new AtomicInteger();
+            executorService = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "hbase-template-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            ownsExecutorService = true;
+        }
+        return executorService;
+    }
+
+    private <T> Function<Result, T> resultMapper(Function<HBaseOutputSet, T> rowMapper, HBaseRowKeySalt salt) {
+        return result -> rowMapper.apply(outputSet(result, salt));
+    }
+
+    HBaseOutputSet outputSet(Result result, HBaseRowKeySalt salt) {
+        HBaseOutputSet outputSet = indexedOutputSets ? HBaseOutputSet.indexed(result) : new HBaseOutputSet(result);
+        return salt == null ? outputSet : outputSet.withRowPrefix(1);
+    }
+
+    // template-wide defaults only fill in what the caller left unset, on a copy of the scan
+    Scan applyScanDefaults(Scan scan) throws IOException {
+        Scan copy = new Scan(scan);
+        if (scanCaching > 0 && copy.getCaching() <= 0) {
+            copy.setCaching(scanCaching);
+        }
+        if (scanMaxResultSize > 0 && copy.getMaxResultSize() <= 0) {
+            copy.setMaxResultSize(scanMaxResultSize);
+        }
+        if (scanAsyncPrefetch != null && copy.isAsyncPrefetch() == null) {
+            copy.setAsyncPrefetch(scanAsyncPrefetch);
+        }
+        return copy;
     }
 
     public void close() throws IOException {
-        connection.close();
+        synchronized (this) {
+            if (ownsExecutorService) {
+                executorService.shutdownNow();
+            }
+        }
+        try {
+            tables.close();
+        } finally {
+            connection.close();
+        }
     }
 }
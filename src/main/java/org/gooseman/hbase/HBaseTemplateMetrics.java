@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+/**
+ * Instrumentation hook of {@link HBaseTemplate}. Time spent in the HBase client and time spent in
+ * the row and put mappers are reported separately, all durations are in nanoseconds. Calls are made
+ * on the thread doing the work, so implementations have to be thread safe and cheap.
+ */
+public interface HBaseTemplateMetrics {
+
+    HBaseTemplateMetrics NOOP = new HBaseTemplateMetrics() {
+    };
+
+    // one operation against the HBase client finished; for scans and writers this covers the whole
+    // scan or everything buffered since the last flush
+    default void recordCall(String tableName, HBaseOperation operation, long nanos, long rows, long bytes, boolean failed) {
+    }
+
+    // rows of an operation went through the rowMapper or putMapper
+    default void recordMapping(String tableName, HBaseOperation operation, long nanos, long rows) {
+    }
+}
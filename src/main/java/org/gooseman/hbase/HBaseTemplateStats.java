@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * In-process {@link HBaseTemplateMetrics} keeping counters and latency histograms per table and
+ * operation. When given a JMX domain every table/operation pair shows up as an MXBean named
+ * {@code <domain>:type=HBaseTemplate,table=<table>,operation=<operation>}, which also makes the
+ * numbers available to anything bridging JMX, Micrometer's JMX registry included. When another
+ * instance already registered that name, an {@code instance=<n>} key is added to keep both.
+ */
+public class HBaseTemplateStats implements HBaseTemplateMetrics, Closeable {
+
+    private final ConcurrentMap<String, AtomicReferenceArray<HBaseOperationStats>> stats = new ConcurrentHashMap<>();
+    private final String jmxDomain;
+    private final List<ObjectName> registered = new ArrayList<>();
+
+    public HBaseTemplateStats() {
+        this(null);
+    }
+
+    public HBaseTemplateStats(String jmxDomain) {
+        this.jmxDomain = jmxDomain;
+    }
+
+    @Override
+    public void recordCall(String tableName, HBaseOperation operation, long nanos, long rows, long bytes, boolean failed) {
+        stats(tableName, operation).recordCall(nanos, rows, bytes, failed);
+    }
+
+    @Override
+    public void recordMapping(String tableName, HBaseOperation operation, long nanos, long rows) {
+        stats(tableName, operation).recordMapping(nanos, rows);
+    }
+
+    // null until the operation has been recorded at least once
+    public HBaseOperationStats getStats(String tableName, HBaseOperation operation) {
+        AtomicReferenceArray<HBaseOperationStats> byOperation = stats.get(tableName);
+        return byOperation == null ? null : byOperation.get(operation.ordinal());
+    }
+
+    public List<HBaseOperationStats> getAllStats() {
+        List<HBaseOperationStats> all = new ArrayList<>();
+        for (AtomicReferenceArray<HBaseOperationStats> byOperation : stats.values()) {
+            for (int i = 0; i < byOperation.length(); i++) {
+                HBaseOperationStats operationStats = byOperation.get(i);
+                if (operationStats != null) {
+                    all.add(operationStats);
+                }
+            }
+        }
+        return all;
+    }
+
+    private HBaseOperationStats stats(String tableName, HBaseOperation operation) {
+        AtomicReferenceArray<HBaseOperationStats> byOperation = stats.get(tableName);
+        if (byOperation == null) {
+            byOperation = stats.computeIfAbsent(tableName, name -> new AtomicReferenceArray<>(HBaseOperation.values().length));
+        }
+        HBaseOperationStats operationStats = byOperation.get(operation.ordinal());
+        if (operationStats == null) {
+            operationStats = create(byOperation, tableName, operation);
+        }
+        return operationStats;
+    }
+
+    private synchronized HBaseOperationStats create(AtomicReferenceArray<HBaseOperationStats> byOperation, String tableName,
+                                                    HBaseOperation operation) {
+        HBaseOperationStats operationStats = byOperation.get(operation.ordinal());
+        if (operationStats == null) {
+            operationStats = new HBaseOperationStats(tableName, operation);
+            register(operationStats);
+            byOperation.set(operation.ordinal(), operationStats);
+        }
+        return operationStats;
+    }
+
+    private void register(HBaseOperationStats operationStats) {
+        if (jmxDomain == null) {
+            return;
+        }
+        try {
+            String baseName = jmxDomain + ":type=HBaseTemplate,table="
+                    + ObjectName.quote(operationStats.getTableName()) + ",operation=" + operationStats.getOperation();
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (int instance = 1; ; instance++) {
+                ObjectName name = new ObjectName(instance == 1 ? baseName : baseName + ",instance=" + instance);
+                try {
+                    server.registerMBean(operationStats, name);
+                    registered.add(name);
+                    return;
+                } catch (InstanceAlreadyExistsException e) {
+                    // taken by another stats instance, which keeps it
+                }
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register " + operationStats.getOperation() + " stats of "
+                    + operationStats.getTableName(), e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                // already gone
+            }
+        }
+        registered.clear();
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import org.apache.hadoop.hbase.client.BufferedMutator;
+import org.apache.hadoop.hbase.client.Put;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Write-behind writer backed by a {@link BufferedMutator}. Puts are buffered client side and sent
+ * once the write buffer fills up, the periodic flush fires, or {@link #flush()} is called.
+ * <p>
+ * With a row cache, written rows stay pinned in it until {@link #flush()} or {@link #close()} has
+ * sent them, so a read in between cannot cache the old row. The writer flushes by itself once
+ * {@value #MAX_UNFLUSHED_ROWS} rows are pinned.
+ * <p>
+ * Metrics are reported on every flush and close, and every time a write buffer's worth of puts
+ * was written in between, so writers left to the automatic flushes report as they go.
+ */
+public class HBaseWriter<T> implements Closeable {
+
+    static final int MAX_UNFLUSHED_ROWS = 10_000;
+
+    private final BufferedMutator mutator;
+    private final Function<T, HBaseInputSet> putMapper;
+    private final HBaseRowCache cache;
+    private final String tableName;
+    private final UnaryOperator<byte[]> cacheRow;
+    private final HBaseOperationRecorder recorder;
+    private final List<byte[]> unflushed = new ArrayList<>();
+    private long unreportedBytes;
+
+    // cacheRow maps the row of a put to its row in the cache, which may be null
+    HBaseWriter(BufferedMutator mutator, Function<T, HBaseInputSet> putMapper, HBaseRowCache cache, String tableName,
+                UnaryOperator<byte[]> cacheRow, HBaseOperationRecorder recorder) {
+        this.mutator = mutator;
+        this.putMapper = putMapper;
+        this.cache = cache;
+        this.tableName = tableName;
+        this.cacheRow = cacheRow;
+        this.recorder = recorder;
+    }
+
+    // not thread safe, unlike the BufferedMutator underneath
+    public HBaseWriter<T> write(T entity) throws IOException {
+        Put put = recorder.map(putMapper, entity).getPut();
+        if (cache != null) {
+            // pinned before the put can reach HBase, and kept if mutate fails since it may be buffered
+            byte[] row = cacheRow.apply(put.getRow());
+            cache.pin(tableName, row);
+            unflushed.add(row);
+        }
+        recorder.call(() -> {
+            mutator.mutate(put);
+            return null;
+        });
+        recorder.wrote(put);
+        unreportedBytes += put.heapSize();
+        if (unflushed.size() >= MAX_UNFLUSHED_ROWS) {
+            flush();
+        } else if (unreportedBytes >= mutator.getWriteBufferSize()) {
+            report();
+        }
+        return this;
+    }
+
+    public HBaseWriter<T> writeAll(Iterator<T> entities) throws IOException {
+        while (entities.hasNext()) {
+            write(entities.next());
+        }
+        return this;
+    }
+
+    public void flush() throws IOException {
+        try {
+            recorder.call(() -> {
+                mutator.flush();
+                return null;
+            });
+        } finally {
+            unpin();
+            report();
+        }
+    }
+
+    public long getWriteBufferSize() {
+        return mutator.getWriteBufferSize();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            recorder.call(() -> {
+                mutator.close();
+                return null;
+            });
+        } finally {
+            unpin();
+            report();
+        }
+    }
+
+    private void report() {
+        unreportedBytes = 0;
+        recorder.report();
+    }
+
+    // also after a failed flush, the rows that did get through must not stay cached stale
+    private void unpin() {
+        for (byte[] row : unflushed) {
+            cache.unpin(tableName, row);
+        }
+        unflushed.clear();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2020 Gooseman Brothers (gooseman.brothers@gmail.com)
+ *  All rights reserved.
+ *
+ *  THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED
+ *  WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A PARTICULAR PURPOSE,
+ *  MERCHANTABILITY OR NON-INFRINGEMENT.
+ */
+
+package org.gooseman.hbase;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Output set for wide rows. The cells of the result are hashed by family and qualifier in a single
+ * pass into an open-addressing table, after which every lookup is constant time and values are
+ * read in place from the cell's backing array.
+ */
+class IndexedHBaseOutputSet extends HBaseOutputSet {
+
+    private final Cell[] cells;
+    private final int[] slots;
+    private final int mask;
+
+    IndexedHBaseOutputSet(Result result) {
+        super(result);
+        Cell[] rawCells = result.rawCells();
+        this.cells = rawCells == null ? new Cell[0] : rawCells;
+        int capacity = Integer.highestOneBit(Math.max(cells.length, 1) * 2 - 1) << 1;
+        this.slots = new int[capacity];
+        this.mask = capacity - 1;
+        for (int i = 0; i < cells.length; i++) {
+            index(i);
+        }
+    }
+
+    private void index(int cellIndex) {
+        Cell cell = cells[cellIndex];
+        int slot = hash(cell) & mask;
+        while (slots[slot] != 0) {
+            // cells are sorted with the latest version first, keep that one
+            if (sameColumn(cells[slots[slot] - 1], cell)) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = cellIndex + 1;
+    }
+
+    @Override
+    boolean locate(HBaseColumn column) {
+        byte[] family = column.family();
+        byte[] qualifier = column.qualifier();
+        for (int slot = column.hashCode() & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            Cell cell = cells[slots[slot] - 1];
+            if (Bytes.equals(cell.getQualifierArray(), cell.getQualifierOffset(), cell.getQualifierLength(), qualifier, 0, qualifier.length)
+                    && Bytes.equals(cell.getFamilyArray(), cell.getFamilyOffset(), cell.getFamilyLength(), family, 0, family.length)) {
+                return found(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength());
+            }
+        }
+        return found(null, 0, 0);
+    }
+
+    private static int hash(Cell cell) {
+        return HBaseColumn.hash(cell.getFamilyArray(), cell.getFamilyOffset(), cell.getFamilyLength(),
+                cell.getQualifierArray(), cell.getQualifierOffset(), cell.getQualifierLength());
+    }
+
+    private static boolean sameColumn(Cell left, Cell right) {
+        return Bytes.equals(left.getQualifierArray(), left.getQualifierOffset(), left.getQualifierLength(),
+                right.getQualifierArray(), right.getQualifierOffset(), right.getQualifierLength())
+                && Bytes.equals(left.getFamilyArray(), left.getFamilyOffset(), left.getFamilyLength(),
+                right.getFamilyArray(), right.getFamilyOffset(), right.getFamilyLength());
+    }
+}
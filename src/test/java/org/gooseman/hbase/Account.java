@@ -0,0 +1,46 @@
+package org.gooseman.hbase;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@HBaseEntity(family = "d")
+public class Account {
+
+    public enum Status { OPEN, CLOSED }
+
+    @HBaseRowKey
+    private String id;
+    private int version = -1;
+    private Long ownerId;
+    private double interestRate;
+    private boolean active;
+    private BigDecimal balance;
+    private LocalDate openedOn;
+    private LocalDateTime updatedAt;
+    private Status status;
+    private byte[] signature;
+    @HBaseQualifier(value = "ext", family = "x")
+    private String externalReference;
+    @HBaseQualifier(codec = UuidCodec.class)
+    private UUID token;
+    private transient String cachedDisplayName;
+
+    public static class UuidCodec implements HBaseCodec<UUID> {
+
+        @Override
+        public byte[] encode(UUID value) {
+            return ByteBuffer.allocate(16).putLong(value.getMostSignificantBits()).putLong(value.getLeastSignificantBits()).array();
+        }
+
+        @Override
+        public UUID decode(ByteBuffer value) {
+            return new UUID(value.getLong(), value.getLong());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.gooseman.hbase;
+
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.apache.hadoop.hbase.util.Bytes.toBytes;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+public class AsyncHBaseTemplateTests {
+
+    private final static String FAMILY = "d";
+    private final static byte[] BIN_FAMILY = toBytes(FAMILY);
+
+    private AsyncConnection mockConnection;
+    private AsyncTable<AdvancedScanResultConsumer> mockTable;
+    private AdvancedScanResultConsumer.ScanController mockController;
+    private AdvancedScanResultConsumer.ScanResumer mockResumer;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        mockTable = mock(AsyncTable.class);
+        when(mockTable.get(any(Get.class))).thenReturn(CompletableFuture.completedFuture(row("rowKey1", 1)));
+        when(mockTable.getAll(anyList())).thenReturn(CompletableFuture.completedFuture(Arrays.asList(row("rowKey1", 1), row("rowKey2", 2))));
+        when(mockTable.putAll(anyList())).thenReturn(CompletableFuture.completedFuture(null));
+
+        mockResumer = mock(AdvancedScanResultConsumer.ScanResumer.class);
+        mockController = mock(AdvancedScanResultConsumer.ScanController.class);
+        when(mockController.suspend()).thenReturn(mockResumer);
+
+        mockConnection = mock(AsyncConnection.class);
+        when(mockConnection.getTable(any(TableName.class))).thenReturn(mockTable);
+    }
+
+    @Test
+    public void get_should_map_the_result() throws Exception {
+        AsyncHBaseTemplate template = new AsyncHBaseTemplate(mockConnection);
+
+        Assert.assertEquals(1, (int) template.get("mockHbaseTable", new Get(toBytes("rowKey1")), this::value).get());
+        Assert.assertEquals(Arrays.asList(1, 2), template.get("mockHbaseTable",
+                Arrays.asList(new Get(toBytes("rowKey1")), new Get(toBytes("rowKey2"))), this::value).get());
+        // async tables are shared, only one is created per table name
+        verify(mockConnection, times(1)).getTable(TableName.valueOf("mockHbaseTable"));
+    }
+
+    @Test
+    public void save_should_put_all_entities() throws Exception {
+        AsyncHBaseTemplate template = new AsyncHBaseTemplate(mockConnection);
+        template.save("mockHbaseTable", Arrays.asList(1, 2, 3),
+                (Integer value) -> new HBaseInputSet(new Put(toBytes("rowKey" + value))).addInteger(FAMILY, "value", value)).get();
+
+        verify(mockTable, times(1)).putAll(argThat(puts -> puts.size() == 3));
+    }
+
+    @Test
+    public void scan_should_suspend_until_the_batch_is_consumed() throws Exception {
+        List<Integer> consumed = new ArrayList<>();
+        CompletableFuture<Void> slowConsumer = new CompletableFuture<>();
+        doAnswer(invocation -> {
+            AdvancedScanResultConsumer consumer = invocation.getArgument(1);
+            consumer.onNext(new Result[] { row("rowKey1", 1), row("rowKey2", 2) }, mockController);
+            return null;
+        }).when(mockTable).scan(any(Scan.class), any(AdvancedScanResultConsumer.class));
+
+        AsyncHBaseTemplate template = new AsyncHBaseTemplate(mockConnection);
+        CompletableFuture<Void> scan = template.scan("mockHbaseTable", new Scan(), this::value, batch -> {
+            consumed.addAll(batch);
+            return slowConsumer;
+        });
+
+        Assert.assertEquals(Arrays.asList(1, 2), consumed);
+        verify(mockController, times(1)).suspend();
+        verify(mockResumer, never()).resume();
+
+        slowConsumer.complete(null);
+        verify(mockResumer, times(1)).resume();
+        Assert.assertFalse(scan.isDone());
+    }
+
+    @Test
+    public void scan_should_terminate_when_the_consumer_fails() throws Exception {
+        doAnswer(invocation -> {
+            AdvancedScanResultConsumer consumer = invocation.getArgument(1);
+            consumer.onNext(new Result[] { row("rowKey1", 1) }, mockController);
+            consumer.onNext(new Result[] { row("rowKey2", 2) }, mockController);
+            consumer.onComplete();
+            return null;
+        }).when(mockTable).scan(any(Scan.class), any(AdvancedScanResultConsumer.class));
+
+        AsyncHBaseTemplate template = new AsyncHBaseTemplate(mockConnection);
+        CompletableFuture<Void> failing = new CompletableFuture<>();
+        failing.completeExceptionally(new IllegalStateException("sink unavailable"));
+        CompletableFuture<Void> scan = template.scan("mockHbaseTable", new Scan(), this::value, batch -> failing);
+
+        verify(mockController, atLeastOnce()).terminate();
+        try {
+            scan.get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    private Integer value(HBaseOutputSet outputSet) {
+        return outputSet.getInteger(FAMILY, "value");
+    }
+
+    private static Result row(String rowKey, int value) {
+        Put put = new Put(toBytes(rowKey)).addColumn(BIN_FAMILY, toBytes("value"), toBytes(value));
+        return Result.create(Collections.singletonList(put.getFamilyCellMap().get(BIN_FAMILY).get(0)));
+    }
+}
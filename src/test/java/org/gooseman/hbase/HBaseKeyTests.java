@@ -0,0 +1,121 @@
+package org.gooseman.hbase;
+
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class HBaseKeyTests {
+
+    private final static String FAMILY = "d";
+
+    @Test
+    public void encoded_numbers_should_sort_like_the_numbers() {
+        Random random = new Random(42);
+        List<Long> longs = new ArrayList<>(Arrays.asList(Long.MIN_VALUE, -1L, 0L, 1L, Long.MAX_VALUE));
+        List<Double> doubles = new ArrayList<>(Arrays.asList(Double.NEGATIVE_INFINITY, -1.5, -0.0, 0.0, Double.MIN_VALUE, 2.5));
+        for (int i = 0; i < 200; i++) {
+            longs.add(random.nextLong());
+            doubles.add(random.nextGaussian() * 1e6);
+        }
+
+        List<byte[]> encodedLongs = longs.stream().map(value -> new HBaseKeyBuilder().addLong(value).build())
+                .sorted(Bytes.BYTES_COMPARATOR).collect(Collectors.toList());
+        Collections.sort(longs);
+        Assert.assertEquals(longs, encodedLongs.stream().map(key -> HBaseKeyReader.of(key).readLong()).collect(Collectors.toList()));
+
+        List<byte[]> encodedDoubles = doubles.stream().map(value -> new HBaseKeyBuilder().addDouble(value).build())
+                .sorted(Bytes.BYTES_COMPARATOR).collect(Collectors.toList());
+        Collections.sort(doubles);
+        Assert.assertEquals(doubles, encodedDoubles.stream().map(key -> HBaseKeyReader.of(key).readDouble()).collect(Collectors.toList()));
+
+        // descending components sort the other way round
+        List<byte[]> descending = longs.stream().map(value -> new HBaseKeyBuilder().descending().addLong(value).build())
+                .sorted(Bytes.BYTES_COMPARATOR).collect(Collectors.toList());
+        Collections.reverse(longs);
+        Assert.assertEquals(longs, descending.stream().map(key -> HBaseKeyReader.of(key).readLong()).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void composite_keys_should_round_trip_through_the_output_set() throws IOException {
+        byte[] row = new HBaseKeyBuilder()
+                .addString("tenant")
+                .addNull()
+                .addInt(-7)
+                .addBigDecimal(new BigDecimal("-12.50"))
+                .addLocalDate(LocalDate.of(1969, 7, 20))
+                .descending()
+                .addLocalDateTime(LocalDateTime.of(2020, 1, 28, 6, 30, 15))
+                .addBytes(new byte[] { 0, 1, 2 })
+                .addShort((short) 3)
+                .addFloat(-0.5f)
+                .build();
+
+        try (HBaseTemplate hBaseTemplate = new HBaseTemplate(new InMemoryConnection())) {
+            hBaseTemplate.save("keys", row, key -> new HBaseInputSet(new Put(key))
+                    .addOrdered(FAMILY, "amount", new HBaseKeyBuilder().addLong(-3L)));
+            hBaseTemplate.get("keys", new Get(row), outputSet -> {
+                HBaseKeyReader key = outputSet.getRowKey();
+                Assert.assertEquals("tenant", key.readString());
+                Assert.assertTrue(key.isNull());
+                Assert.assertNull(key.readString());
+                Assert.assertEquals(-7, key.readInt());
+                Assert.assertEquals(0, new BigDecimal("-12.5").compareTo(key.readBigDecimal()));
+                Assert.assertEquals(LocalDate.of(1969, 7, 20), key.readLocalDate());
+                Assert.assertEquals(LocalDateTime.of(2020, 1, 28, 6, 30, 15), key.readLocalDateTime());
+                Assert.assertArrayEquals(new byte[] { 0, 1, 2 }, key.readBytes());
+                Assert.assertEquals(3, key.readShort());
+                Assert.assertEquals(-0.5f, key.readFloat(), 0.0);
+                Assert.assertFalse(key.hasRemaining());
+
+                Assert.assertEquals(-3L, outputSet.getOrdered(FAMILY, "amount").readLong());
+                return null;
+            });
+        }
+    }
+
+    @Test
+    public void key_ranges_should_become_tight_scans() throws IOException {
+        try (HBaseTemplate hBaseTemplate = new HBaseTemplate(new InMemoryConnection())) {
+            List<byte[]> rows = new ArrayList<>();
+            for (String tenant : new String[] { "a", "ab", "b" }) {
+                for (long time = -3; time <= 3; time++) {
+                    rows.add(new HBaseKeyBuilder().addString(tenant).addLong(time).addInt(0).build());
+                }
+            }
+            hBaseTemplate.save("events", rows, (byte[] row) -> new HBaseInputSet(new Put(row)).addString(FAMILY, "v", "x"));
+
+            HBaseKeyBuilder from = new HBaseKeyBuilder().addString("a").addLong(-2);
+            HBaseKeyBuilder to = new HBaseKeyBuilder().addString("a").addLong(1);
+            Assert.assertEquals(Arrays.asList(-2L, -1L, 0L, 1L), times(hBaseTemplate, HBaseKeyBuilder.scan(from, true, to, true)));
+            Assert.assertEquals(Arrays.asList(-1L, 0L), times(hBaseTemplate, HBaseKeyBuilder.scan(from, false, to, false)));
+
+            // "a" must not pick up the rows of "ab"
+            Assert.assertEquals(7, times(hBaseTemplate, new HBaseKeyBuilder().addString("a").prefixScan()).size());
+        }
+    }
+
+    private static List<Long> times(HBaseTemplate hBaseTemplate, Scan scan) throws IOException {
+        try (Stream<Long> times = hBaseTemplate.stream("events", scan, outputSet -> {
+            HBaseKeyReader key = outputSet.getRowKey();
+            Assert.assertEquals("a", key.readString());
+            return key.readLong();
+        })) {
+            return times.collect(Collectors.toList());
+        }
+    }
+}
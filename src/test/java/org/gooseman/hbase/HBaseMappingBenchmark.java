@@ -0,0 +1,295 @@
+package org.gooseman.hbase;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.hadoop.hbase.util.Bytes.toBytes;
+
+/**
+ * Cost of every typed add on {@link HBaseInputSet} and every typed get on {@link HBaseOutputSet},
+ * including creating the set itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HBaseMappingBenchmark {
+
+    private final static String FAMILY = "d";
+    private final static byte[] BIN_FAMILY = toBytes(FAMILY);
+    private final static byte[] ROW = toBytes("benchmarkRowKey");
+    private final static String STRING = "Lorem ipsum dolor sit amet";
+    private final static Double DOUBLE = Double.MAX_VALUE;
+    private final static Integer INTEGER = Integer.MAX_VALUE;
+    private final static Long LONG = Long.MAX_VALUE;
+    private final static Float FLOAT = Float.MAX_VALUE;
+    private final static Boolean BOOLEAN = Boolean.TRUE;
+    private final static Short SHORT = Short.MAX_VALUE;
+    private final static BigDecimal BIG_DECIMAL = BigDecimal.TEN;
+    private final static LocalDate LOCAL_DATE = LocalDate.of(2020, 1, 28);
+    private final static LocalDateTime LOCAL_DATE_TIME = LocalDateTime.of(2020, 1, 28, 6, 30, 15);
+
+    private static final HBaseColumn VERSION = HBaseColumn.of(FAMILY, "version");
+    private static final HBaseColumn OWNER_ID = HBaseColumn.of(FAMILY, "ownerId");
+    private static final HBaseColumn INTEREST_RATE = HBaseColumn.of(FAMILY, "interestRate");
+    private static final HBaseColumn ACTIVE = HBaseColumn.of(FAMILY, "active");
+    private static final HBaseColumn BALANCE = HBaseColumn.of(FAMILY, "balance");
+    private static final HBaseColumn OPENED_ON = HBaseColumn.of(FAMILY, "openedOn");
+    private static final HBaseColumn UPDATED_AT = HBaseColumn.of(FAMILY, "updatedAt");
+    private static final HBaseColumn STATUS = HBaseColumn.of(FAMILY, "status");
+    private static final HBaseColumn SIGNATURE = HBaseColumn.of(FAMILY, "signature");
+    private static final HBaseColumn EXTERNAL_REFERENCE = HBaseColumn.of("x", "ext");
+    private static final HBaseColumn TOKEN = HBaseColumn.of(FAMILY, "token");
+    private static final Account.UuidCodec UUID_CODEC = new Account.UuidCodec();
+
+    private Result result;
+    private Account account;
+    private Result accountResult;
+
+    @Setup
+    public void setup() {
+        Put put = new Put(ROW);
+        put.addColumn(BIN_FAMILY, toBytes("string"), toBytes(STRING));
+        put.addColumn(BIN_FAMILY, toBytes("double"), toBytes(DOUBLE));
+        put.addColumn(BIN_FAMILY, toBytes("integer"), toBytes(INTEGER));
+        put.addColumn(BIN_FAMILY, toBytes("long"), toBytes(LONG));
+        put.addColumn(BIN_FAMILY, toBytes("float"), toBytes(FLOAT));
+        put.addColumn(BIN_FAMILY, toBytes("boolean"), toBytes(BOOLEAN));
+        put.addColumn(BIN_FAMILY, toBytes("short"), toBytes(SHORT));
+        put.addColumn(BIN_FAMILY, toBytes("bigDecimal"), toBytes(BIG_DECIMAL));
+        put.addColumn(BIN_FAMILY, toBytes("localDate"), toBytes(LOCAL_DATE.toEpochDay()));
+        put.addColumn(BIN_FAMILY, toBytes("localDateTime"), toBytes(LOCAL_DATE_TIME.toInstant(ZoneOffset.UTC).toEpochMilli()));
+        List<Cell> rowCells = new ArrayList<>();
+        put.getFamilyCellMap().values().forEach(rowCells::addAll);
+        rowCells.sort(CellComparator.getInstance());
+        result = Result.create(rowCells);
+
+        account = new Account();
+        account.setId("benchmarkRowKey");
+        account.setVersion(INTEGER);
+        account.setOwnerId(LONG);
+        account.setBalance(BIG_DECIMAL);
+        account.setUpdatedAt(LOCAL_DATE_TIME);
+        List<Cell> accountCells = new ArrayList<>();
+        AccountHBaseMapper.toInputSet(account).getPut().getFamilyCellMap().values().forEach(accountCells::addAll);
+        accountCells.sort(CellComparator.getInstance());
+        accountResult = Result.create(accountCells);
+    }
+
+    // generated mapper against the hand-written equivalent for the same columns
+    @Benchmark
+    public Account generatedRowMapper() {
+        return AccountHBaseMapper.toEntity(new HBaseOutputSet(accountResult));
+    }
+
+    @Benchmark
+    public Account handWrittenRowMapper() {
+        HBaseOutputSet outputSet = new HBaseOutputSet(accountResult);
+        Account mapped = new Account();
+        mapped.setId(Bytes.toString(outputSet.getRow()));
+        mapped.setVersion(outputSet.getInt(VERSION, -1));
+        mapped.setOwnerId(outputSet.getLong(OWNER_ID));
+        mapped.setInterestRate(outputSet.getDouble(INTEREST_RATE, 0.0));
+        mapped.setActive(outputSet.getBoolean(ACTIVE, false));
+        mapped.setBalance(outputSet.getBigDecimal(BALANCE));
+        mapped.setOpenedOn(outputSet.getLocalDate(OPENED_ON));
+        mapped.setUpdatedAt(outputSet.getLocalDateTime(UPDATED_AT));
+        String status = outputSet.getString(STATUS);
+        mapped.setStatus(status == null ? null : Account.Status.valueOf(status));
+        mapped.setSignature(outputSet.getBytes(SIGNATURE));
+        mapped.setExternalReference(outputSet.getString(EXTERNAL_REFERENCE));
+        ByteBuffer token = outputSet.getValueBuffer(TOKEN);
+        mapped.setToken(token == null ? null : UUID_CODEC.decode(token));
+        return mapped;
+    }
+
+    @Benchmark
+    public HBaseInputSet generatedPutMapper() {
+        return AccountHBaseMapper.toInputSet(account);
+    }
+
+    @Benchmark
+    public HBaseInputSet handWrittenPutMapper() {
+        HBaseInputSet inputSet = new HBaseInputSet(new Put(toBytes(account.getId())))
+                .addInteger(VERSION, account.getVersion())
+                .addLong(OWNER_ID, account.getOwnerId())
+                .addDouble(INTEREST_RATE, account.getInterestRate())
+                .addBoolean(ACTIVE, account.isActive())
+                .addBigDecimal(BALANCE, account.getBalance())
+                .addLocalDateTime(UPDATED_AT, account.getUpdatedAt());
+        if (account.getOpenedOn() != null) {
+            inputSet.addLocalDate(OPENED_ON, account.getOpenedOn());
+        }
+        return inputSet;
+    }
+
+    // the same wide put through plain and buffered input sets, compare with -prof gc
+    @Benchmark
+    public Put plainInputSet() {
+        return wideInputSet(new HBaseInputSet(new Put(ROW))).getPut();
+    }
+
+    @Benchmark
+    public Put bufferedInputSet() {
+        return wideInputSet(HBaseInputSet.buffered(new Put(ROW))).getPut();
+    }
+
+    private static HBaseInputSet wideInputSet(HBaseInputSet inputSet) {
+        return inputSet
+                .addString(VERSION, STRING)
+                .addInt(OWNER_ID, INTEGER)
+                .addLong(INTEREST_RATE, LONG)
+                .addDouble(ACTIVE, DOUBLE)
+                .addFloat(BALANCE, FLOAT)
+                .addBoolean(OPENED_ON, BOOLEAN)
+                .addShort(UPDATED_AT, SHORT)
+                .addLocalDate(STATUS, LOCAL_DATE)
+                .addLocalDateTime(SIGNATURE, LOCAL_DATE_TIME)
+                .addString(TOKEN, STRING);
+    }
+
+    @Benchmark
+    public HBaseInputSet addString() {
+        return new HBaseInputSet(new Put(ROW)).addString(FAMILY, "string", STRING);
+    }
+
+    @Benchmark
+    public HBaseInputSet addDouble() {
+        return new HBaseInputSet(new Put(ROW)).addDouble(FAMILY, "double", DOUBLE);
+    }
+
+    @Benchmark
+    public HBaseInputSet addInteger() {
+        return new HBaseInputSet(new Put(ROW)).addInteger(FAMILY, "integer", INTEGER);
+    }
+
+    @Benchmark
+    public HBaseInputSet addLong() {
+        return new HBaseInputSet(new Put(ROW)).addLong(FAMILY, "long", LONG);
+    }
+
+    @Benchmark
+    public HBaseInputSet addFloat() {
+        return new HBaseInputSet(new Put(ROW)).addFloat(FAMILY, "float", FLOAT);
+    }
+
+    @Benchmark
+    public HBaseInputSet addBoolean() {
+        return new HBaseInputSet(new Put(ROW)).addBoolean(FAMILY, "boolean", BOOLEAN);
+    }
+
+    @Benchmark
+    public HBaseInputSet addShort() {
+        return new HBaseInputSet(new Put(ROW)).addShort(FAMILY, "short", SHORT);
+    }
+
+    @Benchmark
+    public HBaseInputSet addBigDecimal() {
+        return new HBaseInputSet(new Put(ROW)).addBigDecimal(FAMILY, "bigDecimal", BIG_DECIMAL);
+    }
+
+    @Benchmark
+    public HBaseInputSet addLocalDate() {
+        return new HBaseInputSet(new Put(ROW)).addLocalDate(FAMILY, "localDate", LOCAL_DATE);
+    }
+
+    @Benchmark
+    public HBaseInputSet addLocalDateTime() {
+        return new HBaseInputSet(new Put(ROW)).addLocalDateTime(FAMILY, "localDateTime", LOCAL_DATE_TIME);
+    }
+
+    @Benchmark
+    public String getString() {
+        return new HBaseOutputSet(result).getString(FAMILY, "string");
+    }
+
+    @Benchmark
+    public Double getDouble() {
+        return new HBaseOutputSet(result).getDouble(FAMILY, "double");
+    }
+
+    @Benchmark
+    public Integer getInteger() {
+        return new HBaseOutputSet(result).getInteger(FAMILY, "integer");
+    }
+
+    @Benchmark
+    public Long getLong() {
+        return new HBaseOutputSet(result).getLong(FAMILY, "long");
+    }
+
+    @Benchmark
+    public Float getFloat() {
+        return new HBaseOutputSet(result).getFloat(FAMILY, "float");
+    }
+
+    @Benchmark
+    public Boolean getBoolean() {
+        return new HBaseOutputSet(result).getBoolean(FAMILY, "boolean");
+    }
+
+    @Benchmark
+    public Short getShort() {
+        return new HBaseOutputSet(result).getShort(FAMILY, "short");
+    }
+
+    @Benchmark
+    public BigDecimal getBigDecimal() {
+        return new HBaseOutputSet(result).getBigDecimal(FAMILY, "bigDecimal");
+    }
+
+    @Benchmark
+    public LocalDate getLocalDate() {
+        return new HBaseOutputSet(result).getLocalDate(FAMILY, "localDate");
+    }
+
+    @Benchmark
+    public LocalDateTime getLocalDateTime() {
+        return new HBaseOutputSet(result).getLocalDateTime(FAMILY, "localDateTime");
+    }
+
+    @Benchmark
+    public int getIntPrimitive() {
+        return new HBaseOutputSet(result).getInt(FAMILY, "integer", 0);
+    }
+
+    @Benchmark
+    public long getLongPrimitive() {
+        return new HBaseOutputSet(result).getLong(FAMILY, "long", 0L);
+    }
+
+    @Benchmark
+    public double getDoublePrimitive() {
+        return new HBaseOutputSet(result).getDouble(FAMILY, "double", 0.0);
+    }
+
+    @Benchmark
+    public float getFloatPrimitive() {
+        return new HBaseOutputSet(result).getFloat(FAMILY, "float", 0.0f);
+    }
+
+    @Benchmark
+    public short getShortPrimitive() {
+        return new HBaseOutputSet(result).getShort(FAMILY, "short", (short) 0);
+    }
+
+    @Benchmark
+    public boolean getBooleanPrimitive() {
+        return new HBaseOutputSet(result).getBoolean(FAMILY, "boolean", false);
+    }
+}
@@ -0,0 +1,239 @@
+package org.gooseman.hbase;
+
+import org.apache.hadoop.hbase.DoNotRetryIOException;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Consistency;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.RetriesExhaustedWithDetailsException;
+import org.apache.hadoop.hbase.client.Row;
+import org.apache.hadoop.hbase.exceptions.TimeoutIOException;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+import static org.apache.hadoop.hbase.util.Bytes.toBytes;
+
+public class HBaseOperationPolicyTests {
+
+    private final static String FAMILY = "d";
+    private final static HBaseColumn VALUE = HBaseColumn.of(FAMILY, "value");
+
+    @Test
+    public void retriable_failures_should_be_retried_until_the_read_succeeds() throws IOException {
+        SlowTable table = new SlowTable(TableName.valueOf("accounts"));
+        try (HBaseTemplate hBaseTemplate = template(table)) {
+            hBaseTemplate.setOperationPolicy("accounts", new HBaseOperationPolicy()
+                    .retries(3, Duration.ofMillis(1), Duration.ofMillis(5)));
+
+            table.failures.set(2);
+            Assert.assertEquals("one", hBaseTemplate.get("accounts", new Get(toBytes("row-1")), this::value));
+            Assert.assertEquals(3, table.calls.get());
+
+            table.calls.set(0);
+            table.failures.set(3);
+            try {
+                hBaseTemplate.get("accounts", new Get(toBytes("row-1")), this::value);
+                Assert.fail();
+            } catch (IOException e) {
+                Assert.assertEquals(3, table.calls.get());
+            }
+
+            table.calls.set(0);
+            table.failures.set(1);
+            table.failure = new DoNotRetryIOException("no such column");
+            try {
+                hBaseTemplate.get("accounts", new Get(toBytes("row-1")), this::value);
+                Assert.fail();
+            } catch (DoNotRetryIOException e) {
+                Assert.assertEquals(1, table.calls.get());
+            }
+        }
+    }
+
+    @Test
+    public void reads_should_fail_once_the_deadline_passes() throws IOException {
+        SlowTable table = new SlowTable(TableName.valueOf("accounts"));
+        table.primaryDelayMs = 5000;
+        try (HBaseTemplate hBaseTemplate = template(table)) {
+            hBaseTemplate.setOperationPolicy("accounts", new HBaseOperationPolicy()
+                    .timeout(Duration.ofMillis(100))
+                    .retries(5, Duration.ofMillis(1), Duration.ofMillis(5)));
+            long start = System.nanoTime();
+            try {
+                hBaseTemplate.get("accounts", new Get(toBytes("row-1")), this::value);
+                Assert.fail();
+            } catch (TimeoutIOException e) {
+                Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+            }
+        }
+    }
+
+    @Test
+    public void hedged_reads_should_take_the_first_response() throws IOException {
+        SlowTable table = new SlowTable(TableName.valueOf("accounts"));
+        table.primaryDelayMs = 5000;
+        try (HBaseTemplate hBaseTemplate = template(table)) {
+            hBaseTemplate.setOperationPolicy("accounts", new HBaseOperationPolicy()
+                    .timeout(Duration.ofSeconds(2))
+                    .hedgeAfter(Duration.ofMillis(20)));
+            long start = System.nanoTime();
+            Assert.assertEquals("one", hBaseTemplate.get("accounts", new Get(toBytes("row-1")), this::value));
+            List<String> values = hBaseTemplate.get("accounts",
+                    Arrays.asList(new Get(toBytes("row-1")), new Get(toBytes("row-2"))), this::value).collect(Collectors.toList());
+            Assert.assertEquals(Arrays.asList("one", "two"), values);
+            List<HBaseGetResult<String>> results = hBaseTemplate.multiGet("accounts",
+                    Arrays.asList(new Get(toBytes("row-1")), new Get(toBytes("row-2"))), this::value, true).collect(Collectors.toList());
+            Assert.assertEquals("two", results.get(1).getValue());
+            Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+            Assert.assertEquals(3, table.calls.get());
+            Assert.assertTrue(table.timelineCalls.get() >= 3);
+        }
+    }
+
+    @Test
+    public void percentile_hedging_should_wait_for_enough_samples() throws IOException {
+        HBaseOperationPolicy policy = new HBaseOperationPolicy().hedgeAtPercentile(99, Duration.ofMillis(1));
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(1), policy.getHedgeDelayNanos());
+        for (int i = 0; i < HBaseOperationPolicy.MIN_LATENCY_SAMPLES; i++) {
+            // the hedges fail, so every read runs to the end and its whole latency counts
+            policy.execute(() -> {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(6));
+                return null;
+            }, () -> {
+                throw new IOException("replica unavailable");
+            }, ForkJoinPool.commonPool());
+        }
+        Assert.assertTrue(policy.getHedgeDelayNanos() >= TimeUnit.MILLISECONDS.toNanos(5));
+    }
+
+    @Test
+    public void multi_gets_should_retry_only_the_failing_keys() throws IOException {
+        SlowTable table = new SlowTable(TableName.valueOf("accounts"));
+        try (HBaseTemplate hBaseTemplate = template(table)) {
+            hBaseTemplate.setOperationPolicy("accounts", new HBaseOperationPolicy()
+                    .retries(3, Duration.ofMillis(1), Duration.ofMillis(5)));
+            table.failingRow = "row-2";
+            List<HBaseGetResult<String>> results = hBaseTemplate.multiGet("accounts",
+                    Arrays.asList(new Get(toBytes("row-1")), new Get(toBytes("row-2"))), this::value, true).collect(Collectors.toList());
+
+            Assert.assertEquals("one", results.get(0).getValue());
+            Assert.assertTrue(results.get(1).getError() instanceof IOException);
+            Assert.assertEquals(1, table.batchedRows.get("row-1").get());
+            Assert.assertEquals(3, table.batchedRows.get("row-2").get());
+        }
+    }
+
+    @Test
+    public void policies_should_not_need_a_second_worker_of_a_bounded_executor() throws IOException {
+        SlowTable table = new SlowTable(TableName.valueOf("accounts"));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (HBaseTemplate hBaseTemplate = template(table)) {
+            hBaseTemplate.setExecutorService(executor);
+            hBaseTemplate.setMultiGetParallelism(1);
+            hBaseTemplate.setOperationPolicy("accounts", new HBaseOperationPolicy()
+                    .timeout(Duration.ofSeconds(1))
+                    .hedgeAfter(Duration.ofSeconds(10)));
+            List<HBaseGetResult<String>> results = hBaseTemplate.multiGet("accounts",
+                    Arrays.asList(new Get(toBytes("row-1")), new Get(toBytes("row-2"))), this::value, true).collect(Collectors.toList());
+            Assert.assertEquals("two", results.get(1).getValue());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private HBaseTemplate template(SlowTable table) throws IOException {
+        table.put(new HBaseInputSet(new Put(toBytes("row-1"))).addString(VALUE, "one").getPut());
+        table.put(new HBaseInputSet(new Put(toBytes("row-2"))).addString(VALUE, "two").getPut());
+        return new HBaseTemplate(new InMemoryConnection(tableName -> table));
+    }
+
+    private String value(HBaseOutputSet outputSet) {
+        return outputSet.getString(VALUE);
+    }
+
+    // delays strongly consistent reads and fails the next few of them, timeline reads stand in for
+    // a healthy replica and answer at once
+    private static class SlowTable extends InMemoryTable {
+
+        private final AtomicInteger calls = new AtomicInteger();
+        private final AtomicInteger timelineCalls = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private volatile IOException failure = new IOException("region server unavailable");
+        private volatile long primaryDelayMs;
+        private volatile String failingRow;
+        private final Map<String, AtomicInteger> batchedRows = new ConcurrentHashMap<>();
+
+        SlowTable(TableName tableName) {
+            super(tableName);
+        }
+
+        @Override
+        public Result get(Get get) throws IOException {
+            return get(get.getConsistency(), () -> super.get(get));
+        }
+
+        @Override
+        public Result[] get(List<Get> gets) throws IOException {
+            return get(gets.get(0).getConsistency(), () -> super.get(gets));
+        }
+
+        @Override
+        public void batch(List<? extends Row> actions, Object[] results) throws IOException {
+            get(((Get) actions.get(0)).getConsistency(), () -> {
+                super.batch(actions, results);
+                return null;
+            });
+            // like the HBase client, a batch with failed keys fills in the others and throws
+            List<Throwable> failures = new ArrayList<>();
+            List<Row> failedRows = new ArrayList<>();
+            for (int i = 0; i < actions.size(); i++) {
+                String row = Bytes.toString(actions.get(i).getRow());
+                batchedRows.computeIfAbsent(row, key -> new AtomicInteger()).incrementAndGet();
+                if (row.equals(failingRow)) {
+                    results[i] = new IOException("region moved");
+                    failures.add((Throwable) results[i]);
+                    failedRows.add(actions.get(i));
+                }
+            }
+            if (!failures.isEmpty()) {
+                throw new RetriesExhaustedWithDetailsException(failures, failedRows, Collections.nCopies(failures.size(), "server"));
+            }
+        }
+
+        private <R> R get(Consistency consistency, HBaseOperationRecorder.ClientCall<R> read) throws IOException {
+            if (consistency == Consistency.TIMELINE) {
+                timelineCalls.incrementAndGet();
+                return read.call();
+            }
+            calls.incrementAndGet();
+            if (failures.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                throw failure;
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(primaryDelayMs);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            return read.call();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.gooseman.hbase;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.hadoop.hbase.util.Bytes.toBytes;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HBaseOutputSetBenchmark {
+
+    private final static String FAMILY = "d";
+
+    @Param({"10", "100", "1000"})
+    private int columns;
+
+    private Result result;
+    private HBaseColumn[] descriptors;
+
+    @Setup
+    public void setup() {
+        byte[] row = toBytes("benchmarkRowKey");
+        descriptors = new HBaseColumn[columns];
+        Cell[] cells = new Cell[columns];
+        for (int i = 0; i < columns; i++) {
+            // zero padded so the cells are already in column order
+            descriptors[i] = HBaseColumn.of(FAMILY, String.format("column%05d", i));
+            cells[i] = new KeyValue(row, descriptors[i].getFamily(), descriptors[i].getQualifier(), 1L, toBytes((long) i));
+        }
+        result = Result.create(cells);
+    }
+
+    @Benchmark
+    public void plain(Blackhole blackhole) {
+        HBaseOutputSet outputSet = new HBaseOutputSet(result);
+        for (HBaseColumn descriptor : descriptors) {
+            blackhole.consume(outputSet.getLong(descriptor));
+        }
+    }
+
+    @Benchmark
+    public void indexed(Blackhole blackhole) {
+        HBaseOutputSet outputSet = HBaseOutputSet.indexed(result);
+        for (HBaseColumn descriptor : descriptors) {
+            blackhole.consume(outputSet.getLong(descriptor));
+        }
+    }
+}
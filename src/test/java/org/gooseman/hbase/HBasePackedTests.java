@@ -0,0 +1,206 @@
+package org.gooseman.hbase;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.apache.hadoop.hbase.util.Bytes.toBytes;
+
+public class HBasePackedTests {
+
+    private final static String FAMILY = "d";
+    private final static HBaseColumn PACKED = HBaseColumn.of(FAMILY, "p");
+
+    @Test
+    public void packed_fields_should_round_trip_through_a_single_cell() {
+        HBasePackedWriter writer = new HBasePackedWriter(2)
+                .putInt(1, Integer.MIN_VALUE)
+                .putInt(2, (Integer) null)
+                .putLong(3, Long.MAX_VALUE)
+                .putDouble(4, Double.MIN_NORMAL)
+                .putFloat(5, Float.MAX_VALUE)
+                .putShort(6, Short.MIN_VALUE)
+                .putBoolean(7, true)
+                .putString(8, "Lorem ipsum \u00e9")
+                .putBigDecimal(9, new BigDecimal("-1234.5678"))
+                .putLocalDate(10, LocalDate.of(1969, 7, 20))
+                .putLocalDateTime(11, LocalDateTime.of(2020, 1, 28, 6, 30, 15))
+                .putBytes(12, new byte[] { 1, 2, 3 })
+                .putLong(300, -1L);
+
+        HBaseOutputSet outputSet = new HBaseOutputSet(toResult(new HBaseInputSet(new Put(toBytes("row"))).addPacked(PACKED, writer)));
+        HBasePackedReader reader = outputSet.getPacked(PACKED);
+
+        Assert.assertEquals(2, reader.getSchemaVersion());
+        Assert.assertEquals(Integer.MIN_VALUE, reader.getInt(1, 0));
+        Assert.assertFalse(reader.has(2));
+        Assert.assertNull(reader.getInteger(2));
+        Assert.assertEquals(7, reader.getInt(2, 7));
+        Assert.assertEquals(Long.MAX_VALUE, reader.getLong(3, 0L));
+        Assert.assertEquals(Double.MIN_NORMAL, reader.getDouble(4), 0.0);
+        Assert.assertEquals(Float.MAX_VALUE, reader.getFloat(5, 0f), 0.0);
+        Assert.assertEquals(Short.MIN_VALUE, reader.getShort(6, (short) 0));
+        Assert.assertTrue(reader.getBoolean(7, false));
+        Assert.assertEquals("Lorem ipsum \u00e9", reader.getString(8));
+        Assert.assertEquals(new BigDecimal("-1234.5678"), reader.getBigDecimal(9));
+        Assert.assertEquals(LocalDate.of(1969, 7, 20), reader.getLocalDate(10));
+        Assert.assertEquals(LocalDateTime.of(2020, 1, 28, 6, 30, 15), reader.getLocalDateTime(11));
+        Assert.assertArrayEquals(new byte[] { 1, 2, 3 }, reader.getBytes(12));
+        Assert.assertEquals(-1L, reader.getLong(300, 0L));
+        Assert.assertNull(outputSet.getPacked(FAMILY, "missing"));
+
+        try {
+            reader.getString(1);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // field 1 is a varint
+        }
+    }
+
+    @Test
+    public void readers_should_skip_fields_of_newer_schema_versions() {
+        byte[] newer = new HBasePackedWriter(2)
+                .putString(1, "name")
+                .putBigDecimal(2, BigDecimal.ONE)
+                .putDouble(3, 1.5)
+                .putFloat(4, 2.5f)
+                .putLong(5, 42L)
+                .toByteArray();
+
+        // a reader written against version 1 only knows fields 1 and 5
+        HBasePackedReader reader = HBasePackedReader.of(newer);
+        Assert.assertEquals(2, reader.getSchemaVersion());
+        Assert.assertEquals("name", reader.getString(1));
+        Assert.assertEquals(42L, reader.getLong(5, 0L));
+        Assert.assertNull(reader.getLong(6));
+    }
+
+    @Test
+    public void field_numbers_outside_the_writer_range_should_be_rejected() {
+        // format, schema version, then a varint field 0 and a varint field 2^24
+        byte[][] malformed = {
+                { HBasePackedWriter.FORMAT, 0, 0, 1 },
+                { HBasePackedWriter.FORMAT, 0, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x40, 1 }
+        };
+        for (byte[] value : malformed) {
+            try {
+                HBasePackedReader.of(value).has(1);
+                Assert.fail();
+            } catch (IllegalArgumentException e) {
+                Assert.assertEquals("Packed value is malformed", e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void lengths_outside_the_value_should_be_rejected() {
+        // format, schema version, then a string field 1 of length -1 and one running past the end
+        byte[][] malformed = {
+                { HBasePackedWriter.FORMAT, 0, 0x0A, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+                        (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x01, 'a' },
+                { HBasePackedWriter.FORMAT, 0, 0x0A, 5, 'a' }
+        };
+        for (byte[] value : malformed) {
+            try {
+                HBasePackedReader.of(value).getString(1);
+                Assert.fail();
+            } catch (IllegalArgumentException e) {
+                Assert.assertEquals("Packed value is malformed", e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void small_numbers_should_take_a_byte_whatever_their_sign() {
+        // a format byte and the schema version, then a byte of tag and a byte of value per field
+        Assert.assertEquals(2 + 2 * 2, new HBasePackedWriter(0).putInt(1, -1).putInt(2, 1).size());
+        Assert.assertEquals(2 + 2 * 2, new HBasePackedWriter(0).putLong(1, -64L).putLong(2, 63L).size());
+        Assert.assertEquals(2 + 11, new HBasePackedWriter(0).putLong(1, Long.MIN_VALUE).size());
+    }
+
+    @Test
+    public void packing_a_pojo_should_take_a_fraction_of_one_cell_per_field() {
+        Pojo pojo = new Pojo();
+        pojo.setFloatPrimitive(1.5f);
+        pojo.setIntPrimitive(42);
+        pojo.setIntWrapper(-7);
+        pojo.setLongPrimitive(1_000_000L);
+        pojo.setLongWrapper(3L);
+        pojo.setDoublePrimitive(2.25);
+        pojo.setString("Lorem ipsum");
+        pojo.setBooleanPrimitive(true);
+        pojo.setShortPrimitive((short) 12);
+        pojo.setBigDecimal(BigDecimal.TEN);
+        pojo.setLocalDate(LocalDate.of(2020, 1, 28));
+        pojo.setLocalDateTime(LocalDateTime.of(2020, 1, 28, 6, 30, 15));
+
+        Put cellPerField = new HBaseInputSet(new Put(toBytes("mockRowKey")))
+                .addFloat(FAMILY, "floatPrimitive", pojo.getFloatPrimitive())
+                .addInteger(FAMILY, "intPrimitive", pojo.getIntPrimitive())
+                .addInteger(FAMILY, "intWrapper", pojo.getIntWrapper())
+                .addLong(FAMILY, "longPrimitive", pojo.getLongPrimitive())
+                .addLong(FAMILY, "longWrapper", pojo.getLongWrapper())
+                .addDouble(FAMILY, "doublePrimitive", pojo.getDoublePrimitive())
+                .addString(FAMILY, "string", pojo.getString())
+                .addBoolean(FAMILY, "boolPrimitive", pojo.getBooleanPrimitive())
+                .addShort(FAMILY, "shortPrimitive", pojo.getShortPrimitive())
+                .addBigDecimal(FAMILY, "bigDecimal", pojo.getBigDecimal())
+                .addLocalDate(FAMILY, "localDate", pojo.getLocalDate())
+                .addLocalDateTime(FAMILY, "localDateTime", pojo.getLocalDateTime())
+                .getPut();
+        Put packed = new HBaseInputSet(new Put(toBytes("mockRowKey")))
+                .addPacked(PACKED, new HBasePackedWriter(1)
+                        .putFloat(1, pojo.getFloatPrimitive())
+                        .putInt(2, pojo.getIntPrimitive())
+                        .putInt(3, pojo.getIntWrapper())
+                        .putLong(4, pojo.getLongPrimitive())
+                        .putLong(5, pojo.getLongWrapper())
+                        .putDouble(6, pojo.getDoublePrimitive())
+                        .putString(7, pojo.getString())
+                        .putBoolean(8, pojo.getBooleanPrimitive())
+                        .putShort(9, pojo.getShortPrimitive())
+                        .putBigDecimal(10, pojo.getBigDecimal())
+                        .putLocalDate(11, pojo.getLocalDate())
+                        .putLocalDateTime(12, pojo.getLocalDateTime()))
+                .getPut();
+
+        long cellPerFieldSize = serializedSize(cellPerField);
+        long packedSize = serializedSize(packed);
+        Assert.assertTrue(packedSize + " vs " + cellPerFieldSize, packedSize * 5 < cellPerFieldSize);
+
+        HBasePackedReader reader = new HBaseOutputSet(toResult(packed)).getPacked(PACKED);
+        Assert.assertEquals(pojo.getLocalDateTime(), reader.getLocalDateTime(12));
+        Assert.assertEquals(pojo.getString(), reader.getString(7));
+    }
+
+    private static long serializedSize(Put put) {
+        long size = 0;
+        for (List<Cell> cells : put.getFamilyCellMap().values()) {
+            for (Cell cell : cells) {
+                size += KeyValueUtil.length(cell);
+            }
+        }
+        return size;
+    }
+
+    private static Result toResult(HBaseInputSet inputSet) {
+        return toResult(inputSet.getPut());
+    }
+
+    private static Result toResult(Put put) {
+        List<Cell> cells = new ArrayList<>();
+        put.getFamilyCellMap().values().forEach(cells::addAll);
+        cells.sort(CellComparator.getInstance());
+        return Result.create(cells);
+    }
+}
@@ -0,0 +1,109 @@
+package org.gooseman.hbase;
+
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.filter.PrefixFilter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.hadoop.hbase.util.Bytes.toBytes;
+
+public class HBaseRowCacheTests {
+
+    private final static String FAMILY = "d";
+    private final static byte[] BIN_FAMILY = toBytes(FAMILY);
+
+    private final AtomicLong ticker = new AtomicLong();
+
+    @Test
+    public void cached_rows_should_be_keyed_by_the_requested_columns() {
+        HBaseRowCache cache = new HBaseRowCache(1000, 1024 * 1024, Duration.ofMinutes(1), ticker::get);
+        Get wholeRow = new Get(toBytes("rowKey"));
+        Get singleColumn = new Get(toBytes("rowKey")).addColumn(BIN_FAMILY, toBytes("value"));
+
+        cache.put("table", wholeRow, row("rowKey", 1));
+        Assert.assertNotNull(cache.get("table", wholeRow));
+        Assert.assertNull(cache.get("table", singleColumn));
+        Assert.assertNull(cache.get("otherTable", wholeRow));
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(2, cache.getMissCount());
+
+        cache.put("table", singleColumn, row("rowKey", 1));
+        cache.invalidate("table", toBytes("rowKey"));
+        Assert.assertNull(cache.get("table", wholeRow));
+        Assert.assertNull(cache.get("table", singleColumn));
+        Assert.assertEquals(0, cache.getEstimatedSize());
+    }
+
+    @Test
+    public void rows_should_expire_after_the_table_time_to_live() {
+        HBaseRowCache cache = new HBaseRowCache(1000, 1024 * 1024, Duration.ofMinutes(1), ticker::get)
+                .setTimeToLive("shortLived", Duration.ofSeconds(1));
+        Get get = new Get(toBytes("rowKey"));
+        cache.put("shortLived", get, row("rowKey", 1));
+        cache.put("longLived", get, row("rowKey", 1));
+
+        ticker.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        Assert.assertNull(cache.get("shortLived", get));
+        Assert.assertNotNull(cache.get("longLived", get));
+        Assert.assertEquals(1, cache.getExpirationCount());
+    }
+
+    @Test
+    public void least_recently_used_rows_should_be_evicted_over_the_bounds() {
+        // 16 segments of 2 entries each
+        HBaseRowCache cache = new HBaseRowCache(32, 1024 * 1024, Duration.ofMinutes(1), ticker::get);
+        for (int i = 0; i < 1000; i++) {
+            Get get = new Get(toBytes("rowKey" + i));
+            cache.put("table", get, row("rowKey" + i, i));
+        }
+        Assert.assertTrue(cache.getEstimatedSize() <= 32);
+        Assert.assertEquals(1000 - cache.getEstimatedSize(), cache.getEvictionCount());
+
+        HBaseRowCache byteBound = new HBaseRowCache(1000, 16 * 1024, Duration.ofMinutes(1), ticker::get);
+        for (int i = 0; i < 1000; i++) {
+            byteBound.put("table", new Get(toBytes("rowKey" + i)), row("rowKey" + i, i));
+        }
+        Assert.assertTrue(byteBound.getEstimatedBytes() <= 16 * 1024);
+        Assert.assertTrue(byteBound.getEvictionCount() > 0);
+    }
+
+    @Test
+    public void filtered_gets_should_not_be_cacheable() {
+        Assert.assertTrue(HBaseRowCache.isCacheable(new Get(toBytes("rowKey"))));
+        Assert.assertFalse(HBaseRowCache.isCacheable(new Get(toBytes("rowKey")).setFilter(new PrefixFilter(toBytes("row")))));
+        Assert.assertFalse(HBaseRowCache.isCacheable(new Get(toBytes("rowKey")).setMaxResultsPerColumnFamily(1)));
+        Assert.assertFalse(HBaseRowCache.isCacheable(new Get(toBytes("rowKey")).setRowOffsetPerColumnFamily(1)));
+        Assert.assertFalse(HBaseRowCache.isCacheable(new Get(toBytes("rowKey")).setColumnFamilyTimeRange(BIN_FAMILY, 0, 10)));
+    }
+
+    @Test
+    public void fills_started_before_an_invalidation_should_be_dropped() {
+        HBaseRowCache cache = new HBaseRowCache(1000, 1024 * 1024, Duration.ofMinutes(1), ticker::get);
+        Get get = new Get(toBytes("rowKey"));
+
+        long version = cache.version("table", get.getRow());
+        cache.invalidate("table", get.getRow());
+        cache.put("table", get, row("rowKey", 1), version);
+        Assert.assertNull(cache.get("table", get));
+
+        cache.pin("table", get.getRow());
+        cache.put("table", get, row("rowKey", 1));
+        Assert.assertNull(cache.get("table", get));
+
+        cache.unpin("table", get.getRow());
+        cache.put("table", get, row("rowKey", 2));
+        Assert.assertNotNull(cache.get("table", get));
+    }
+
+    private static Result row(String rowKey, int value) {
+        Put put = new Put(toBytes(rowKey)).addColumn(BIN_FAMILY, toBytes("value"), toBytes(value));
+        return Result.create(Collections.singletonList(put.getFamilyCellMap().get(BIN_FAMILY).get(0)));
+    }
+}
@@ -0,0 +1,60 @@
+package org.gooseman.hbase;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.ConnectionFactory;
+import org.apache.hadoop.hbase.client.Table;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the {@link Table} every template call opens, against a real client connection. Opening a
+ * table does not reach the cluster, so the connection points at a quorum that is never contacted.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HBaseTableBenchmark {
+
+    private final static String TABLE = "benchmark";
+
+    private Connection connection;
+    private HBaseTableRegistry tables;
+    private TableName tableName;
+
+    @Setup
+    public void setup() throws IOException {
+        Configuration configuration = HBaseConfiguration.create();
+        configuration.set("hbase.zookeeper.quorum", "127.0.0.1");
+        configuration.setInt("hbase.zookeeper.property.clientPort", 1);
+        configuration.setInt("zookeeper.recovery.retry", 0);
+        connection = ConnectionFactory.createConnection(configuration);
+        tables = new HBaseTableRegistry(connection);
+        tableName = TableName.valueOf(TABLE);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        tables.close();
+        connection.close();
+    }
+
+    @Benchmark
+    public TableName openTable() throws IOException {
+        try (Table table = connection.getTable(tableName)) {
+            return table.getName();
+        }
+    }
+
+    @Benchmark
+    public TableName registryCall() throws IOException {
+        return tables.call(TABLE, Table::getName);
+    }
+}
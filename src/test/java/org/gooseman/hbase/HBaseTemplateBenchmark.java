@@ -0,0 +1,168 @@
+package org.gooseman.hbase;
+
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Scan;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.hadoop.hbase.util.Bytes.toBytes;
+
+/**
+ * Per-call overhead of the template against an in-memory table, so the numbers are dominated by
+ * mapping and template bookkeeping rather than network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HBaseTemplateBenchmark {
+
+    private final static String FAMILY = "d";
+    private final static String TABLE = "benchmark";
+    private final static int ROWS = 1000;
+    private final static int BATCH = 100;
+
+    private HBaseTemplate hBaseTemplate;
+    private Get get;
+    private List<Get> gets;
+    private Pojo pojo;
+    private List<Pojo> pojos;
+
+    @Setup
+    public void setup() throws IOException {
+        hBaseTemplate = new HBaseTemplate(new InMemoryConnection());
+        pojo = samplePojo();
+        pojos = new ArrayList<>();
+        for (int i = 0; i < BATCH; i++) {
+            pojos.add(samplePojo());
+        }
+        gets = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            hBaseTemplate.save(TABLE, i, this::numberedPutMapper);
+            if (i < BATCH) {
+                gets.add(new Get(rowKey(i)));
+            }
+        }
+        get = new Get(rowKey(ROWS / 2));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        hBaseTemplate.close();
+    }
+
+    @Benchmark
+    public Pojo singleGet() throws IOException {
+        return hBaseTemplate.get(TABLE, get, this::rowMapper);
+    }
+
+    @Benchmark
+    public void multiGet(Blackhole blackhole) throws IOException {
+        hBaseTemplate.get(TABLE, gets, this::rowMapper).forEach(blackhole::consume);
+    }
+
+    @Benchmark
+    public void scanIteration(Blackhole blackhole) throws IOException {
+        try (HBaseScanIterator<Pojo> rows = hBaseTemplate.scan(TABLE, new Scan(), this::rowMapper)) {
+            while (rows.hasNext()) {
+                blackhole.consume(rows.next());
+            }
+        }
+    }
+
+    @Benchmark
+    public void singleSave() throws IOException {
+        hBaseTemplate.save(TABLE, pojo, this::putMapper);
+    }
+
+    @Benchmark
+    public void batchSave() throws IOException {
+        hBaseTemplate.save(TABLE, pojos, this::putMapper);
+    }
+
+    private static byte[] rowKey(int i) {
+        return toBytes(String.format("row%06d", i));
+    }
+
+    private static Pojo samplePojo() {
+        Pojo pojo = new Pojo();
+        pojo.setFloatPrimitive(Float.MIN_VALUE);
+        pojo.setFloatWrapper(Float.MAX_VALUE);
+        pojo.setIntPrimitive(Integer.MIN_VALUE);
+        pojo.setIntWrapper(Integer.MAX_VALUE);
+        pojo.setLongPrimitive(Long.MIN_VALUE);
+        pojo.setLongWrapper(Long.MAX_VALUE);
+        pojo.setDoublePrimitive(Double.MIN_NORMAL);
+        pojo.setDoubleWrapper(Double.MAX_VALUE);
+        pojo.setString("Lorem ipsum dolor sit amet, consectetur adipiscing elit.");
+        pojo.setBooleanPrimitive(true);
+        pojo.setBooleanWrapper(false);
+        pojo.setShortPrimitive(Short.MIN_VALUE);
+        pojo.setShortWrapper(Short.MAX_VALUE);
+        pojo.setBigDecimal(BigDecimal.TEN);
+        pojo.setLocalDate(LocalDate.of(2020, 1, 28));
+        pojo.setLocalDateTime(LocalDateTime.of(2020, 1, 28, 6, 30, 15));
+        return pojo;
+    }
+
+    private HBaseInputSet numberedPutMapper(Integer i) {
+        return toInputSet(rowKey(i), pojo);
+    }
+
+    private HBaseInputSet putMapper(Pojo pojo) {
+        return toInputSet(rowKey(ROWS / 2), pojo);
+    }
+
+    private HBaseInputSet toInputSet(byte[] rowKey, Pojo pojo) {
+        return new HBaseInputSet(new Put(rowKey))
+                .addFloat(FAMILY, "floatPrimitive", pojo.getFloatPrimitive())
+                .addFloat(FAMILY, "floatWrapper", pojo.getFloatWrapper())
+                .addInteger(FAMILY, "intPrimitive", pojo.getIntPrimitive())
+                .addInteger(FAMILY, "intWrapper", pojo.getIntWrapper())
+                .addLong(FAMILY, "longPrimitive", pojo.getLongPrimitive())
+                .addLong(FAMILY, "longWrapper", pojo.getLongWrapper())
+                .addDouble(FAMILY, "doublePrimitive", pojo.getDoublePrimitive())
+                .addDouble(FAMILY, "doubleWrapper", pojo.getDoubleWrapper())
+                .addString(FAMILY, "string", pojo.getString())
+                .addBoolean(FAMILY, "boolPrimitive", pojo.getBooleanPrimitive())
+                .addBoolean(FAMILY, "boolWrapper", pojo.getBooleanWrapper())
+                .addShort(FAMILY, "shortPrimitive", pojo.getShortPrimitive())
+                .addShort(FAMILY, "shortWrapper", pojo.getShortWrapper())
+                .addBigDecimal(FAMILY, "bigDecimal", pojo.getBigDecimal())
+                .addLocalDate(FAMILY, "localDate", pojo.getLocalDate())
+                .addLocalDateTime(FAMILY, "localDateTime", pojo.getLocalDateTime());
+    }
+
+    private Pojo rowMapper(HBaseOutputSet outputSet) {
+        Pojo pojo = new Pojo();
+        pojo.setFloatPrimitive(outputSet.getFloat(FAMILY, "floatPrimitive"));
+        pojo.setFloatWrapper(outputSet.getFloat(FAMILY, "floatWrapper"));
+        pojo.setIntPrimitive(outputSet.getInteger(FAMILY, "intPrimitive"));
+        pojo.setIntWrapper(outputSet.getInteger(FAMILY, "intWrapper"));
+        pojo.setLongPrimitive(outputSet.getLong(FAMILY, "longPrimitive"));
+        pojo.setLongWrapper(outputSet.getLong(FAMILY, "longWrapper"));
+        pojo.setDoublePrimitive(outputSet.getDouble(FAMILY, "doublePrimitive"));
+        pojo.setDoubleWrapper(outputSet.getDouble(FAMILY, "doubleWrapper"));
+        pojo.setString(outputSet.getString(FAMILY, "string"));
+        pojo.setBooleanPrimitive(outputSet.getBoolean(FAMILY, "boolPrimitive"));
+        pojo.setBooleanWrapper(outputSet.getBoolean(FAMILY, "boolWrapper"));
+        pojo.setShortPrimitive(outputSet.getShort(FAMILY, "shortPrimitive"));
+        pojo.setShortWrapper(outputSet.getShort(FAMILY, "shortWrapper"));
+        pojo.setBigDecimal(outputSet.getBigDecimal(FAMILY, "bigDecimal"));
+        pojo.setLocalDate(outputSet.getLocalDate(FAMILY, "localDate"));
+        pojo.setLocalDateTime(outputSet.getLocalDateTime(FAMILY, "localDateTime", ZoneOffset.UTC));
+        return pojo;
+    }
+}
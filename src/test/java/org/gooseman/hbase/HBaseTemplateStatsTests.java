@@ -0,0 +1,60 @@
+package org.gooseman.hbase;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+public class HBaseTemplateStatsTests {
+
+    @Test
+    public void histogram_quantiles_should_stay_within_a_bucket_of_the_recorded_values() {
+        HBaseHistogram histogram = new HBaseHistogram();
+        for (long value = 1; value <= 10_000; value++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(value));
+        }
+        Assert.assertEquals(10_000, histogram.getCount());
+        Assert.assertEquals(TimeUnit.MICROSECONDS.toNanos(10_000), histogram.getMax());
+        assertWithinBucket(TimeUnit.MICROSECONDS.toNanos(5_000), histogram.getValueAtQuantile(0.5));
+        assertWithinBucket(TimeUnit.MICROSECONDS.toNanos(9_900), histogram.getValueAtQuantile(0.99));
+        Assert.assertEquals(histogram.getMax(), histogram.getValueAtQuantile(1.0));
+
+        for (long value : new long[] { 0, 1, 7, 8, 9, 1000, Long.MAX_VALUE }) {
+            Assert.assertTrue(HBaseHistogram.upperBound(HBaseHistogram.index(value)) >= value);
+        }
+    }
+
+    @Test
+    public void stats_should_be_exposed_over_jmx() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("hbasetemplate.test:type=HBaseTemplate,table=" + ObjectName.quote("hot") + ",operation=GET");
+        try (HBaseTemplateStats stats = new HBaseTemplateStats("hbasetemplate.test")) {
+            HBaseTemplateMetrics metrics = new HBaseSlowOperationLogger(stats, Duration.ofMillis(10));
+            metrics.recordCall("hot", HBaseOperation.GET, TimeUnit.MILLISECONDS.toNanos(2), 1, 100, false);
+            metrics.recordCall("hot", HBaseOperation.GET, TimeUnit.MILLISECONDS.toNanos(20), 0, 0, true);
+            metrics.recordMapping("hot", HBaseOperation.GET, TimeUnit.MICROSECONDS.toNanos(30), 1);
+
+            Assert.assertEquals(2L, server.getAttribute(name, "Calls"));
+            Assert.assertEquals(1L, server.getAttribute(name, "Failures"));
+            Assert.assertEquals(100L, server.getAttribute(name, "Bytes"));
+            Assert.assertEquals(30.0, (double) server.getAttribute(name, "MeanMapperMicrosPerRow"), 0.0);
+            Assert.assertTrue((double) server.getAttribute(name, "MaxMillis") >= 20.0);
+
+            // a second instance in the same domain keeps the first one registered
+            try (HBaseTemplateStats other = new HBaseTemplateStats("hbasetemplate.test")) {
+                other.recordCall("hot", HBaseOperation.GET, 1, 1, 1, false);
+                Assert.assertEquals(2L, server.getAttribute(name, "Calls"));
+                Assert.assertEquals(1L, server.getAttribute(new ObjectName(name + ",instance=2"), "Calls"));
+            }
+        }
+        Assert.assertFalse(server.isRegistered(name));
+    }
+
+    private static void assertWithinBucket(long expected, long actual) {
+        Assert.assertTrue(actual + " not within 12.5% of " + expected, Math.abs(actual - expected) <= expected / 8);
+    }
+}
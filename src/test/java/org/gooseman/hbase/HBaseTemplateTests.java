@@ -1,20 +1,67 @@
 package org.gooseman.hbase;
 
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.ArrayBackedTag;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellBuilderType;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.CompareOperator;
+import org.apache.hadoop.hbase.ExtendedCellBuilderFactory;
+import org.apache.hadoop.hbase.RawCell;
+import org.apache.hadoop.hbase.Tag;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.io.hfile.HFile;
+import org.apache.hadoop.hbase.io.hfile.HFileScanner;
+import org.apache.hadoop.hbase.regionserver.HStoreFile;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Pair;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 import static org.apache.hadoop.hbase.util.Bytes.toBytes;
 import static org.mockito.ArgumentMatchers.any;
@@ -26,10 +73,15 @@ public class HBaseTemplateTests {
     private final static String FAMILY = "d";
     private final static byte[] BIN_FAMILY = toBytes(FAMILY);
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private Pojo samplePojo;
 
     private Connection mockConnection;
     private Table mockTable;
+    private ResultScanner mockResultScanner;
+    private BufferedMutator mockMutator;
 
     @Before
     public void setup() throws IOException {
@@ -51,31 +103,32 @@ public class HBaseTemplateTests {
         samplePojo.setLocalDate(LocalDate.MAX);
         samplePojo.setLocalDateTime(LocalDateTime.of(2020, 1, 28, 6, 30, 15));
 
-        Result mockResult = mock(Result.class);
-        when(mockResult.getValue(BIN_FAMILY, toBytes("floatPrimitive"))).thenReturn(toBytes(samplePojo.getFloatPrimitive()));
-        when(mockResult.getValue(BIN_FAMILY, toBytes("floatWrapper"))).thenReturn(toBytes(samplePojo.getFloatWrapper()));
-        when(mockResult.getValue(BIN_FAMILY, toBytes("intPrimitive"))).thenReturn(toBytes(samplePojo.getIntPrimitive()));
-        when(mockResult.getValue(BIN_FAMILY, toBytes("intWrapper"))).thenReturn(toBytes(samplePojo.getIntWrapper()));
-        when(mockResult.getValue(BIN_FAMILY, toBytes("intWrapper"))).thenReturn(toBytes(samplePojo.getIntWrapper()));
-        when(mockResult.getValue(BIN_FAMILY, toBytes("longPrimitive"))).thenReturn(toBytes(samplePojo.getLongPrimitive()));
-        when(mockResult.getValue(BIN_FAMILY, toBytes("longWrapper"))).thenReturn(toBytes(samplePojo.getLongWrapper()));
-        when(mockResult.getValue(BIN_FAMILY, toBytes("doublePrimitive"))).thenReturn(toBytes(samplePojo.getDoublePrimitive()));
-        when(mockResult.getValue(BIN_FAMILY, toBytes("doubleWrapper"))).thenReturn(toBytes(samplePojo.getDoubleWrapper()));
-        when(mockResult.getValue(BIN_FAMILY, toBytes("string"))).thenReturn(toBytes(samplePojo.getString()));
-        when(mockResult.getValue(BIN_FAMILY, toBytes("boolPrimitive"))).thenReturn(toBytes(samplePojo.getBooleanPrimitive()));
-        when(mockResult.getValue(BIN_FAMILY, toBytes("boolWrapper"))).thenReturn(toBytes(samplePojo.getBooleanWrapper()));
-        when(mockResult.getValue(BIN_FAMILY, toBytes("shortPrimitive"))).thenReturn(toBytes(samplePojo.getShortPrimitive()));
-        when(mockResult.getValue(BIN_FAMILY, toBytes("shortWrapper"))).thenReturn(toBytes(samplePojo.getShortWrapper()));
-        when(mockResult.getValue(BIN_FAMILY, toBytes("bigDecimal"))).thenReturn(toBytes(samplePojo.getBigDecimal()));
-        when(mockResult.getValue(BIN_FAMILY, toBytes("localDate"))).thenReturn(toBytes(samplePojo.getLocalDate().toEpochDay()));
+        // the result holds real cells so lookups go through the same code path as against HBase
+        Put storedRow = new Put(toBytes("mockRowKey"));
+        storedRow.addColumn(BIN_FAMILY, toBytes("floatPrimitive"), toBytes(samplePojo.getFloatPrimitive()));
+        storedRow.addColumn(BIN_FAMILY, toBytes("floatWrapper"), toBytes(samplePojo.getFloatWrapper()));
+        storedRow.addColumn(BIN_FAMILY, toBytes("intPrimitive"), toBytes(samplePojo.getIntPrimitive()));
+        storedRow.addColumn(BIN_FAMILY, toBytes("intWrapper"), toBytes(samplePojo.getIntWrapper()));
+        storedRow.addColumn(BIN_FAMILY, toBytes("longPrimitive"), toBytes(samplePojo.getLongPrimitive()));
+        storedRow.addColumn(BIN_FAMILY, toBytes("longWrapper"), toBytes(samplePojo.getLongWrapper()));
+        storedRow.addColumn(BIN_FAMILY, toBytes("doublePrimitive"), toBytes(samplePojo.getDoublePrimitive()));
+        storedRow.addColumn(BIN_FAMILY, toBytes("doubleWrapper"), toBytes(samplePojo.getDoubleWrapper()));
+        storedRow.addColumn(BIN_FAMILY, toBytes("string"), toBytes(samplePojo.getString()));
+        storedRow.addColumn(BIN_FAMILY, toBytes("boolPrimitive"), toBytes(samplePojo.getBooleanPrimitive()));
+        storedRow.addColumn(BIN_FAMILY, toBytes("boolWrapper"), toBytes(samplePojo.getBooleanWrapper()));
+        storedRow.addColumn(BIN_FAMILY, toBytes("shortPrimitive"), toBytes(samplePojo.getShortPrimitive()));
+        storedRow.addColumn(BIN_FAMILY, toBytes("shortWrapper"), toBytes(samplePojo.getShortWrapper()));
+        storedRow.addColumn(BIN_FAMILY, toBytes("bigDecimal"), toBytes(samplePojo.getBigDecimal()));
+        storedRow.addColumn(BIN_FAMILY, toBytes("localDate"), toBytes(samplePojo.getLocalDate().toEpochDay()));
         // let's assume the local date time saved in HBase was saved using UTC timezone
-        when(mockResult.getValue(BIN_FAMILY, toBytes("localDateTime"))).thenReturn(toBytes(samplePojo.getLocalDateTime().toInstant(ZoneOffset.UTC).toEpochMilli()));
+        storedRow.addColumn(BIN_FAMILY, toBytes("localDateTime"), toBytes(samplePojo.getLocalDateTime().toInstant(ZoneOffset.UTC).toEpochMilli()));
+        Result mockResult = toResult(storedRow);
 
         Iterator<Result> mockResultIterator = mock(Iterator.class);
         when(mockResultIterator.hasNext()).thenReturn(true).thenReturn(false);
         when(mockResultIterator.next()).thenReturn(mockResult);
 
-        ResultScanner mockResultScanner = mock(ResultScanner.class);
+        mockResultScanner = mock(ResultScanner.class);
         when(mockResultScanner.iterator()).thenReturn(mockResultIterator);
 
         mockTable = mock(Table.class);
@@ -84,8 +137,11 @@ public class HBaseTemplateTests {
         when(mockTable.getScanner(any(Scan.class))).thenReturn(mockResultScanner);
         doNothing().when(mockTable).put(anyList());
 
+        mockMutator = mock(BufferedMutator.class);
+
         mockConnection = mock(Connection.class);
         when(mockConnection.getTable(any(TableName.class))).thenReturn(mockTable);
+        when(mockConnection.getBufferedMutator(any(BufferedMutatorParams.class))).thenReturn(mockMutator);
     }
 
     @Test
@@ -161,6 +217,55 @@ public class HBaseTemplateTests {
         Assert.assertEquals(samplePojo.getLocalDateTime(), pojos.get(0).getLocalDateTime());
     }
 
+    @Test
+    public void scan_should_close_the_scanner_when_exhausted() throws IOException {
+        HBaseTemplate hBaseTemplate = new HBaseTemplate(mockConnection);
+        Iterator<Pojo> iterator = hBaseTemplate.scan("mockHbaseTable", new Scan(), this::rowMapper);
+
+        // the scanner must still be open while rows are being consumed
+        verify(mockResultScanner, never()).close();
+        while (iterator.hasNext()) {
+            iterator.next();
+        }
+        verify(mockResultScanner, times(1)).iterator();
+        verify(mockResultScanner, times(1)).close();
+        // the table is only needed to open the scanner
+        verify(mockTable, times(1)).close();
+    }
+
+    @Test
+    public void stream_should_close_the_scanner_when_closed() throws IOException {
+        HBaseTemplate hBaseTemplate = new HBaseTemplate(mockConnection);
+        try (Stream<Pojo> pojos = hBaseTemplate.stream("mockHbaseTable", new Scan(), this::rowMapper)) {
+            Assert.assertEquals(samplePojo.getString(), pojos.findFirst().get().getString());
+            verify(mockResultScanner, never()).close();
+        }
+        verify(mockResultScanner, times(1)).close();
+    }
+
+    @Test
+    public void scan_should_apply_template_defaults_to_unset_scan_settings() throws IOException {
+        HBaseTemplate hBaseTemplate = new HBaseTemplate(mockConnection);
+        hBaseTemplate.setScanCaching(500);
+        hBaseTemplate.setScanMaxResultSize(2 * 1024 * 1024);
+        hBaseTemplate.setScanAsyncPrefetch(true);
+
+        Scan defaultScan = new Scan();
+        hBaseTemplate.scan("mockHbaseTable", defaultScan, this::rowMapper).close();
+        Scan customScan = new Scan().setCaching(10);
+        hBaseTemplate.scan("mockHbaseTable", customScan, this::rowMapper).close();
+
+        ArgumentCaptor<Scan> scans = ArgumentCaptor.forClass(Scan.class);
+        verify(mockTable, times(2)).getScanner(scans.capture());
+        Assert.assertEquals(500, scans.getAllValues().get(0).getCaching());
+        Assert.assertEquals(2 * 1024 * 1024, scans.getAllValues().get(0).getMaxResultSize());
+        Assert.assertEquals(Boolean.TRUE, scans.getAllValues().get(0).isAsyncPrefetch());
+        Assert.assertEquals(10, scans.getAllValues().get(1).getCaching());
+        // the defaults go on a copy, the caller's scan is left as it was
+        Assert.assertEquals(-1, defaultScan.getCaching());
+        Assert.assertNull(defaultScan.isAsyncPrefetch());
+    }
+
     @Test
     public void save_entity() throws IOException {
         HBaseTemplate hBaseTemplate = new HBaseTemplate(mockConnection);
@@ -179,6 +284,1019 @@ public class HBaseTemplateTests {
         verify(mockTable, times(1)).put(anyList());
     }
 
+    @Test
+    public void save_stream_of_entities_through_buffered_mutator() throws IOException {
+        HBaseTemplate hBaseTemplate = new HBaseTemplate(mockConnection);
+        hBaseTemplate.save("mockHbaseTable", Stream.of(samplePojo, samplePojo, samplePojo), this::putMapper);
+
+        verify(mockMutator, times(3)).mutate(any(Mutation.class));
+        verify(mockMutator, times(1)).close();
+        verify(mockTable, never()).put(anyList());
+    }
+
+    @Test
+    public void writers_should_report_every_write_buffer_without_a_flush() throws IOException {
+        HBaseTemplateStats stats = new HBaseTemplateStats();
+        HBaseTemplate hBaseTemplate = new HBaseTemplate(mockConnection);
+        hBaseTemplate.setMetrics(stats);
+        when(mockMutator.getWriteBufferSize()).thenReturn(1L);
+
+        HBaseWriter<Pojo> writer = hBaseTemplate.writer("mockHbaseTable", this::putMapper);
+        writer.write(samplePojo).write(samplePojo);
+        HBaseOperationStats writes = stats.getStats("mockHbaseTable", HBaseOperation.WRITE);
+        Assert.assertEquals(2, writes.getCalls());
+        Assert.assertEquals(2, writes.getRows());
+        writer.close();
+        Assert.assertEquals(3, writes.getCalls());
+    }
+
+    @Test
+    public void writer_should_apply_template_write_settings() throws IOException {
+        List<Row> failedRows = new ArrayList<>();
+        HBaseTemplate hBaseTemplate = new HBaseTemplate(mockConnection);
+        hBaseTemplate.setWriteBufferSize(8 * 1024 * 1024);
+        hBaseTemplate.setWriteBufferPeriodicFlushTimeoutMs(1000);
+        hBaseTemplate.setWriteFailureListener((tableName, row, cause) -> failedRows.add(row));
+
+        try (HBaseWriter<Pojo> writer = hBaseTemplate.writer("mockHbaseTable", this::putMapper)) {
+            writer.write(samplePojo).flush();
+        }
+        verify(mockMutator, times(1)).flush();
+
+        ArgumentCaptor<BufferedMutatorParams> params = ArgumentCaptor.forClass(BufferedMutatorParams.class);
+        verify(mockConnection).getBufferedMutator(params.capture());
+        Assert.assertEquals(TableName.valueOf("mockHbaseTable"), params.getValue().getTableName());
+        Assert.assertEquals(8 * 1024 * 1024, params.getValue().getWriteBufferSize());
+        Assert.assertEquals(1000, params.getValue().getWriteBufferPeriodicFlushTimeoutMs());
+
+        Put failed = new Put(toBytes("failedRowKey"));
+        params.getValue().getListener().onException(new RetriesExhaustedWithDetailsException(
+                Collections.singletonList(new IOException("region offline")),
+                Collections.singletonList(failed),
+                Collections.singletonList("localhost:16020")), mockMutator);
+        Assert.assertEquals(Collections.singletonList(failed), failedRows);
+    }
+
+    @Test
+    public void tables_should_be_closed_after_every_call() throws Exception {
+        int threads = 8;
+        int getsPerThread = 1000;
+        HBaseTemplate hBaseTemplate = new HBaseTemplate(mockConnection);
+        Get get = new Get(toBytes("mockRowKey"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < getsPerThread; j++) {
+                        hBaseTemplate.get("mockHbaseTable", get, outputSet -> outputSet);
+                        hBaseTemplate.get("otherHbaseTable", get, outputSet -> outputSet);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // no table outlives its call, however many threads come and go
+        verify(mockConnection, times(threads * getsPerThread)).getTable(TableName.valueOf("mockHbaseTable"));
+        verify(mockConnection, times(threads * getsPerThread)).getTable(TableName.valueOf("otherHbaseTable"));
+        verify(mockTable, times(threads * getsPerThread * 2)).close();
+
+        hBaseTemplate.close();
+        verify(mockConnection, times(1)).close();
+        try {
+            hBaseTemplate.get("mockHbaseTable", get, outputSet -> outputSet);
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertEquals("Template is closed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void column_descriptors_should_round_trip_through_input_and_output_sets() {
+        HBaseColumn intColumn = HBaseColumn.of(FAMILY, "intWrapper");
+        HBaseColumn stringColumn = HBaseColumn.of(FAMILY, "string");
+        HBaseColumn localDateTimeColumn = HBaseColumn.of(FAMILY, "localDateTime");
+
+        Put put = new HBaseInputSet(new Put(toBytes("mockRowKey")))
+                .addInteger(intColumn, samplePojo.getIntWrapper())
+                .addString(stringColumn, samplePojo.getString())
+                .addLocalDateTime(localDateTimeColumn, samplePojo.getLocalDateTime())
+                .getPut();
+        HBaseOutputSet outputSet = new HBaseOutputSet(toResult(put));
+
+        Assert.assertEquals(samplePojo.getIntWrapper(), outputSet.getInteger(intColumn));
+        Assert.assertEquals(samplePojo.getString(), outputSet.getString(stringColumn));
+        Assert.assertEquals(samplePojo.getLocalDateTime(), outputSet.getLocalDateTime(localDateTimeColumn));
+        // the String overloads resolve to the same encoded column
+        Assert.assertEquals(samplePojo.getIntWrapper(), outputSet.getInteger(FAMILY, "intWrapper"));
+    }
+
+    @Test
+    public void buffered_input_sets_should_encode_the_same_cells_as_plain_ones() {
+        String text = "caf\u00e9 \ud83d\ude00 \ud800 \u4e2d";
+        Function<HBaseInputSet, HBaseInputSet> mapper = inputSet -> inputSet
+                .addString(FAMILY, "string", text)
+                .addInt(FAMILY, "int", samplePojo.getIntPrimitive())
+                .addLong(FAMILY, "long", samplePojo.getLongPrimitive())
+                .addDouble(FAMILY, "double", samplePojo.getDoublePrimitive())
+                .addFloat(FAMILY, "float", samplePojo.getFloatPrimitive())
+                .addShort(FAMILY, "short", samplePojo.getShortPrimitive())
+                .addBoolean(FAMILY, "boolean", true)
+                .addInteger(FAMILY, "integer", samplePojo.getIntWrapper())
+                .addBigDecimal("x", "bigDecimal", samplePojo.getBigDecimal())
+                // outgrows the initial buffer halfway through the row
+                .addBytes(FAMILY, "bytes", new byte[600])
+                .addLocalDateTime(FAMILY, "localDateTime", samplePojo.getLocalDateTime());
+
+        Put plain = mapper.apply(new HBaseInputSet(new Put(toBytes("mockRowKey")))).getPut();
+        Put buffered = mapper.apply(HBaseInputSet.buffered(new Put(toBytes("mockRowKey")))).getPut();
+        // the second one reuses the pooled buffer, the cells of the first must not change
+        Put reused = mapper.apply(HBaseInputSet.buffered(new Put(toBytes("mockRowKey")))).getPut();
+
+        Cell[] expected = toResult(plain).rawCells();
+        for (Put put : Arrays.asList(buffered, reused)) {
+            Cell[] actual = toResult(put).rawCells();
+            Assert.assertEquals(expected.length, actual.length);
+            for (int i = 0; i < expected.length; i++) {
+                Assert.assertEquals(0, CellComparator.getInstance().compare(expected[i], actual[i]));
+                Assert.assertTrue(CellUtil.matchingValue(expected[i], actual[i]));
+            }
+        }
+        // the unpaired surrogate is written as '?', like String.getBytes does
+        Assert.assertEquals("caf\u00e9 \ud83d\ude00 ? \u4e2d", new HBaseOutputSet(toResult(buffered)).getString(FAMILY, "string"));
+    }
+
+    @Test
+    public void string_columns_should_be_encoded_once() {
+        HBaseColumn column = HBaseColumn.cached(FAMILY, "cachedColumn");
+
+        Assert.assertSame(column, HBaseColumn.cached(FAMILY, "cachedColumn"));
+        Assert.assertEquals(HBaseColumn.of(FAMILY, "cachedColumn"), column);
+        Assert.assertArrayEquals(toBytes("cachedColumn"), column.getQualifier());
+    }
+
+    @Test
+    public void indexed_output_set_should_return_the_latest_values_in_place() {
+        HBaseColumn longColumn = HBaseColumn.of(FAMILY, "longWrapper");
+        Put put = new HBaseInputSet(new Put(toBytes("mockRowKey")))
+                .addFloat(FAMILY, "floatWrapper", samplePojo.getFloatWrapper())
+                .addDouble(FAMILY, "doubleWrapper", samplePojo.getDoubleWrapper())
+                .addString(FAMILY, "string", samplePojo.getString())
+                .addBoolean(FAMILY, "boolWrapper", samplePojo.getBooleanWrapper())
+                .addBigDecimal(FAMILY, "bigDecimal", samplePojo.getBigDecimal())
+                .addLocalDate(FAMILY, "localDate", samplePojo.getLocalDate())
+                .getPut();
+        put.addColumn(BIN_FAMILY, toBytes("longWrapper"), 2L, toBytes(samplePojo.getLongWrapper()));
+        put.addColumn(BIN_FAMILY, toBytes("longWrapper"), 1L, toBytes(0L));
+
+        HBaseOutputSet outputSet = HBaseOutputSet.indexed(toResult(put));
+
+        Assert.assertEquals(samplePojo.getFloatWrapper(), outputSet.getFloat(FAMILY, "floatWrapper"));
+        Assert.assertEquals(samplePojo.getDoubleWrapper(), outputSet.getDouble(FAMILY, "doubleWrapper"));
+        Assert.assertEquals(samplePojo.getString(), outputSet.getString(FAMILY, "string"));
+        Assert.assertEquals(samplePojo.getBooleanWrapper(), outputSet.getBoolean(FAMILY, "boolWrapper"));
+        Assert.assertEquals(samplePojo.getBigDecimal(), outputSet.getBigDecimal(FAMILY, "bigDecimal"));
+        Assert.assertEquals(samplePojo.getLocalDate(), outputSet.getLocalDate(FAMILY, "localDate"));
+        Assert.assertEquals(samplePojo.getLongWrapper(), outputSet.getLong(longColumn));
+        Assert.assertNull(outputSet.getString(FAMILY, "missing"));
+        Assert.assertNull(outputSet.getValueBuffer(FAMILY, "missing"));
+
+        ByteBuffer value = outputSet.getValueBuffer(longColumn);
+        Assert.assertEquals(Bytes.SIZEOF_LONG, value.remaining());
+        Assert.assertEquals(samplePojo.getLongWrapper().longValue(), value.getLong(value.position()));
+    }
+
+    @Test
+    public void get_should_use_indexed_output_sets_when_enabled() throws IOException {
+        HBaseTemplate hBaseTemplate = new HBaseTemplate(mockConnection);
+        hBaseTemplate.setIndexedOutputSets(true);
+
+        Assert.assertTrue(hBaseTemplate.get("mockHbaseTable", new Get(toBytes("mockRowKey")), outputSet -> outputSet)
+                instanceof IndexedHBaseOutputSet);
+    }
+
+    @Test
+    public void primitive_getters_should_fall_back_to_defaults_for_missing_cells() {
+        Put put = new HBaseInputSet(new Put(toBytes("mockRowKey")))
+                .addInteger(FAMILY, "intPrimitive", samplePojo.getIntPrimitive())
+                .addLong(FAMILY, "longPrimitive", samplePojo.getLongPrimitive())
+                .addDouble(FAMILY, "doublePrimitive", samplePojo.getDoublePrimitive())
+                .addFloat(FAMILY, "floatPrimitive", samplePojo.getFloatPrimitive())
+                .addShort(FAMILY, "shortPrimitive", samplePojo.getShortPrimitive())
+                .addBoolean(FAMILY, "boolPrimitive", samplePojo.getBooleanPrimitive())
+                .getPut();
+
+        for (HBaseOutputSet outputSet : Arrays.asList(new HBaseOutputSet(toResult(put)), HBaseOutputSet.indexed(toResult(put)))) {
+            Assert.assertTrue(outputSet.has(FAMILY, "intPrimitive"));
+            Assert.assertEquals(samplePojo.getIntPrimitive(), outputSet.getInt(FAMILY, "intPrimitive", 7));
+            Assert.assertEquals(samplePojo.getLongPrimitive(), outputSet.getLong(FAMILY, "longPrimitive", 7L));
+            Assert.assertEquals(samplePojo.getDoublePrimitive(), outputSet.getDouble(FAMILY, "doublePrimitive", 7.0), 0.0);
+            Assert.assertEquals(samplePojo.getFloatPrimitive(), outputSet.getFloat(FAMILY, "floatPrimitive", 7.0f), 0.0);
+            Assert.assertEquals(samplePojo.getShortPrimitive(), outputSet.getShort(FAMILY, "shortPrimitive", (short) 7));
+            Assert.assertEquals(samplePojo.getBooleanPrimitive(), outputSet.getBoolean(FAMILY, "boolPrimitive", false));
+
+            Assert.assertFalse(outputSet.has(FAMILY, "missing"));
+            Assert.assertEquals(7, outputSet.getInt(FAMILY, "missing", 7));
+            Assert.assertEquals(7L, outputSet.getLong(FAMILY, "missing", 7L));
+            Assert.assertEquals(7.0, outputSet.getDouble(FAMILY, "missing", 7.0), 0.0);
+            Assert.assertEquals(7.0f, outputSet.getFloat(FAMILY, "missing", 7.0f), 0.0);
+            Assert.assertEquals((short) 7, outputSet.getShort(FAMILY, "missing", (short) 7));
+            Assert.assertTrue(outputSet.getBoolean(FAMILY, "missing", true));
+
+            // wrapper getters report a missing cell as null instead of failing
+            Assert.assertNull(outputSet.getInteger(FAMILY, "missing"));
+            Assert.assertNull(outputSet.getLong(FAMILY, "missing"));
+            Assert.assertNull(outputSet.getLocalDateTime(FAMILY, "missing"));
+        }
+    }
+
+    @Test
+    public void parallel_scan_should_split_the_scan_by_region() throws IOException {
+        mockRegions("", "b", "d", "f", "");
+        mockRegionRows("a1", "a2", "b1", "c1", "d1", "e1", "f1");
+        HBaseTemplate hBaseTemplate = new HBaseTemplate(mockConnection);
+        hBaseTemplate.setScanParallelism(2);
+
+        Scan scan = new Scan().withStartRow(toBytes("a2")).withStopRow(toBytes("e"));
+        List<String> ordered;
+        try (Stream<String> rows = hBaseTemplate.parallelScan("mockHbaseTable", scan, outputSet -> outputSet.getString(FAMILY, "row"))) {
+            ordered = rows.collect(Collectors.toList());
+        }
+        Assert.assertEquals(Arrays.asList("a2", "b1", "c1", "d1"), ordered);
+
+        List<String> unordered;
+        try (Stream<String> rows = hBaseTemplate.parallelScan("mockHbaseTable", scan, outputSet -> outputSet.getString(FAMILY, "row"), false)) {
+            unordered = rows.sorted().collect(Collectors.toList());
+        }
+        Assert.assertEquals(ordered, unordered);
+
+        // three regions overlap [a2, e), the one starting at f is never scanned
+        ArgumentCaptor<Scan> regionScans = ArgumentCaptor.forClass(Scan.class);
+        verify(mockTable, times(6)).getScanner(regionScans.capture());
+        Assert.assertEquals("a2", Bytes.toString(regionScans.getAllValues().stream()
+                .map(Scan::getStartRow).min(Bytes.BYTES_COMPARATOR).get()));
+        Assert.assertTrue(regionScans.getAllValues().stream().noneMatch(regionScan -> Bytes.toString(regionScan.getStartRow()).equals("f")));
+    }
+
+    @Test
+    public void parallel_scan_should_propagate_region_failures() throws IOException {
+        mockRegions("", "b", "");
+        when(mockTable.getScanner(any(Scan.class))).thenThrow(new IOException("region offline"));
+        HBaseTemplate hBaseTemplate = new HBaseTemplate(mockConnection);
+
+        try (Stream<Pojo> rows = hBaseTemplate.parallelScan("mockHbaseTable", new Scan(), this::rowMapper)) {
+            rows.count();
+            Assert.fail();
+        } catch (UncheckedIOException e) {
+            Assert.assertEquals("region offline", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void region_split_should_honour_an_inclusive_stop_row() throws IOException {
+        byte[][] startKeys = { toBytes(""), toBytes("b"), toBytes("c") };
+        byte[][] endKeys = { toBytes("b"), toBytes("c"), toBytes("") };
+
+        Assert.assertEquals(1, HBaseFanOutIterator.splitByRegions(
+                new Scan().withStopRow(toBytes("b"), false), startKeys, endKeys).size());
+        List<Scan> scans = HBaseFanOutIterator.splitByRegions(new Scan().withStopRow(toBytes("b"), true), startKeys, endKeys);
+        Assert.assertEquals(2, scans.size());
+        Assert.assertArrayEquals(toBytes("b"), scans.get(1).getStartRow());
+        Assert.assertTrue(scans.get(1).includeStopRow());
+    }
+
+    @Test
+    public void multi_get_should_chunk_deduplicate_and_report_failures_per_key() throws Exception {
+        doAnswer(invocation -> {
+            List<Get> chunk = invocation.getArgument(0);
+            Object[] results = invocation.getArgument(1);
+            boolean failed = false;
+            for (int i = 0; i < chunk.size(); i++) {
+                byte[] row = chunk.get(i).getRow();
+                if (Bytes.toString(row).equals("key3")) {
+                    results[i] = new IOException("region offline");
+                    failed = true;
+                } else {
+                    results[i] = toResult(new Put(row).addColumn(BIN_FAMILY, toBytes("row"), row));
+                }
+            }
+            if (failed) {
+                throw new IOException("chunk partially failed");
+            }
+            return null;
+        }).when(mockTable).batch(anyList(), any(Object[].class));
+
+        List<Get> gets = new ArrayList<>();
+        for (String rowKey : Arrays.asList("key1", "key2", "key1", "key3", "key4", "key5", "key2")) {
+            gets.add(new Get(toBytes(rowKey)));
+        }
+        // same row, other columns: not a duplicate
+        gets.add(new Get(toBytes("key4")).addColumn(BIN_FAMILY, toBytes("row")));
+        gets.add(new Get(toBytes("key4")).addColumn(BIN_FAMILY, toBytes("row")));
+        HBaseTemplate hBaseTemplate = new HBaseTemplate(mockConnection);
+        hBaseTemplate.setMultiGetChunkSize(2);
+        hBaseTemplate.setMultiGetParallelism(2);
+
+        List<HBaseGetResult<String>> results;
+        try (Stream<HBaseGetResult<String>> stream = hBaseTemplate.multiGet("mockHbaseTable", gets,
+                outputSet -> outputSet.getString(FAMILY, "row"), true)) {
+            results = stream.collect(Collectors.toList());
+        }
+
+        // six distinct gets in first-seen order, fetched in three chunks
+        Assert.assertEquals(Arrays.asList("key1", "key2", "key3", "key4", "key5", "key4"),
+                results.stream().map(result -> Bytes.toString(result.getRow())).collect(Collectors.toList()));
+        verify(mockTable, times(3)).batch(anyList(), any(Object[].class));
+        Assert.assertEquals("key4", results.get(3).getValue());
+        Assert.assertFalse(results.get(2).isSuccess());
+        Assert.assertEquals("region offline", results.get(2).getError().getMessage());
+        Assert.assertEquals(5, results.stream().filter(HBaseGetResult::isSuccess).count());
+    }
+
+    @Test
+    public void row_cache_should_serve_repeated_gets_until_the_row_is_saved() throws IOException {
+        HBaseRowCache rowCache = new HBaseRowCache(1000, 1024 * 1024, Duration.ofMinutes(1));
+        HBaseTemplate hBaseTemplate = new HBaseTemplate(mockConnection);
+        hBaseTemplate.setRowCache(rowCache);
+        Get get = new Get(toBytes("mockRowKey"));
+
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(samplePojo.getString(), hBaseTemplate.get("mockHbaseTable", get, this::rowMapper).getString());
+        }
+        verify(mockTable, times(1)).get(any(Get.class));
+        Assert.assertEquals(2, rowCache.getHitCount());
+
+        // multi-get only fetches what is not cached yet
+        hBaseTemplate.get("mockHbaseTable", Arrays.asList(get, new Get(toBytes("otherRowKey"))), this::rowMapper).count();
+        verify(mockTable, times(1)).get(argThat((List<Get> gets) -> gets.size() == 1));
+
+        hBaseTemplate.save("mockHbaseTable", samplePojo, this::putMapper);
+        hBaseTemplate.get("mockHbaseTable", get, this::rowMapper);
+        verify(mockTable, times(2)).get(any(Get.class));
+    }
+
+    @Test
+    public void row_cache_should_drop_rows_of_a_partially_failed_save() throws IOException {
+        InMemoryConnection connection = new InMemoryConnection(name -> new InMemoryTable(name) {
+            @Override
+            public void put(List<Put> puts) throws IOException {
+                // the first put is applied, the rest fail like an exhausted batch
+                put(puts.get(0));
+                throw new RetriesExhaustedWithDetailsException(Collections.singletonList(new IOException("region offline")),
+                        Collections.<Row>singletonList(puts.get(1)), Collections.singletonList("localhost:16020"));
+            }
+        });
+        try (HBaseTemplate hBaseTemplate = new HBaseTemplate(connection)) {
+            hBaseTemplate.setRowCache(new HBaseRowCache(1000, 1024 * 1024, Duration.ofMinutes(1)));
+            connection.getTable(TableName.valueOf("accounts")).put(new Put(toBytes("a")).addColumn(BIN_FAMILY, toBytes("v"), toBytes("old")));
+            Function<HBaseOutputSet, String> rowMapper = outputSet -> outputSet.getString(FAMILY, "v");
+            Assert.assertEquals("old", hBaseTemplate.get("accounts", new Get(toBytes("a")), rowMapper));
+
+            try {
+                hBaseTemplate.save("accounts", Arrays.asList("a", "b"),
+                        (String row) -> new HBaseInputSet(new Put(toBytes(row))).addString(FAMILY, "v", "new"));
+                Assert.fail();
+            } catch (RetriesExhaustedWithDetailsException e) {
+                // row a was written all the same
+            }
+            Assert.assertEquals("new", hBaseTemplate.get("accounts", new Get(toBytes("a")), rowMapper));
+        }
+    }
+
+    @Test
+    public void row_cache_should_not_cache_rows_a_writer_has_not_flushed() throws IOException {
+        HBaseRowCache rowCache = new HBaseRowCache(1000, 1024 * 1024, Duration.ofMinutes(1));
+        HBaseTemplate hBaseTemplate = new HBaseTemplate(mockConnection);
+        hBaseTemplate.setRowCache(rowCache);
+        Get get = new Get(toBytes("mockRowKey"));
+
+        try (HBaseWriter<Pojo> writer = hBaseTemplate.writer("mockHbaseTable", this::putMapper)) {
+            writer.write(samplePojo);
+            // still buffered, so HBase may answer with the old row
+            hBaseTemplate.get("mockHbaseTable", get, this::rowMapper);
+            hBaseTemplate.get("mockHbaseTable", get, this::rowMapper);
+            verify(mockTable, times(2)).get(any(Get.class));
+
+            writer.flush();
+        }
+        hBaseTemplate.get("mockHbaseTable", get, this::rowMapper);
+        hBaseTemplate.get("mockHbaseTable", get, this::rowMapper);
+        verify(mockTable, times(3)).get(any(Get.class));
+        Assert.assertEquals(1, rowCache.getHitCount());
+    }
+
+    @Test
+    public void metrics_should_be_recorded_per_table_and_operation() throws IOException {
+        HBaseTemplateStats stats = new HBaseTemplateStats();
+        HBaseTemplate hBaseTemplate = new HBaseTemplate(mockConnection);
+        hBaseTemplate.setMetrics(stats);
+
+        hBaseTemplate.get("mockHbaseTable", new Get(toBytes("mockRowKey")), this::rowMapper);
+        hBaseTemplate.get("mockHbaseTable", new Get(toBytes("mockRowKey")), this::rowMapper);
+        try (HBaseScanIterator<Pojo> rows = hBaseTemplate.scan("mockHbaseTable", new Scan(), this::rowMapper)) {
+            rows.forEachRemaining(pojo -> { });
+        }
+        hBaseTemplate.save("mockHbaseTable", Arrays.asList(samplePojo, samplePojo), this::putMapper);
+
+        HBaseOperationStats gets = stats.getStats("mockHbaseTable", HBaseOperation.GET);
+        Assert.assertEquals(2, gets.getCalls());
+        Assert.assertEquals(2, gets.getRows());
+        Assert.assertEquals(2, gets.getMappedRows());
+        Assert.assertTrue(gets.getBytes() > samplePojo.getString().length() * 2);
+
+        // a scan is reported once, with all of its rows
+        HBaseOperationStats scans = stats.getStats("mockHbaseTable", HBaseOperation.SCAN);
+        Assert.assertEquals(1, scans.getCalls());
+        Assert.assertEquals(1, scans.getRows());
+
+        HBaseOperationStats saves = stats.getStats("mockHbaseTable", HBaseOperation.SAVE);
+        Assert.assertEquals(1, saves.getCalls());
+        Assert.assertEquals(2, saves.getRows());
+        Assert.assertEquals(2, saves.getMappedRows());
+        Assert.assertEquals(0, saves.getFailures());
+
+        doThrow(new IOException("region offline")).when(mockTable).put(anyList());
+        try {
+            hBaseTemplate.save("mockHbaseTable", samplePojo, this::putMapper);
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertEquals(1, saves.getFailures());
+        }
+        Assert.assertNull(stats.getStats("otherTable", HBaseOperation.GET));
+    }
+
+    @Test
+    public void generated_mappers_should_round_trip_annotated_entities() throws IOException {
+        Account account = new Account();
+        account.setId("account-1");
+        account.setVersion(3);
+        account.setOwnerId(42L);
+        account.setInterestRate(0.25);
+        account.setActive(true);
+        account.setBalance(new BigDecimal("1024.50"));
+        account.setOpenedOn(LocalDate.of(2020, 1, 28));
+        account.setUpdatedAt(LocalDateTime.of(2020, 1, 28, 6, 30, 15));
+        account.setStatus(Account.Status.OPEN);
+        account.setSignature(toBytes("signed"));
+        account.setExternalReference("ext-1");
+        account.setToken(UUID.randomUUID());
+        account.setCachedDisplayName("not stored");
+
+        try (HBaseTemplate hBaseTemplate = new HBaseTemplate(new InMemoryConnection())) {
+            hBaseTemplate.save("accounts", account, AccountHBaseMapper.PUT_MAPPER);
+            Account loaded = hBaseTemplate.get("accounts", new Get(toBytes("account-1")), AccountHBaseMapper.ROW_MAPPER);
+
+            account.setCachedDisplayName(null);
+            Assert.assertEquals(account, loaded);
+            Assert.assertNull(hBaseTemplate.get("accounts", new Get(toBytes("missing")), AccountHBaseMapper.ROW_MAPPER));
+
+            // unset columns are not written, and primitives keep their constructor defaults when read back
+            hBaseTemplate.save("accounts", new Account() {{ setId("account-2"); }}, AccountHBaseMapper.PUT_MAPPER);
+            Account sparse = hBaseTemplate.get("accounts", new Get(toBytes("account-2")), AccountHBaseMapper.ROW_MAPPER);
+            Assert.assertEquals(-1, sparse.getVersion());
+            Assert.assertNull(sparse.getOwnerId());
+            Assert.assertNull(sparse.getToken());
+        }
+        Assert.assertEquals("x", AccountHBaseMapper.EXTERNAL_REFERENCE.getFamilyName());
+        Assert.assertEquals("ext", AccountHBaseMapper.EXTERNAL_REFERENCE.getQualifierName());
+    }
+
+    @Test
+    public void salted_tables_should_spread_rows_and_read_back_in_logical_order() throws IOException {
+        InMemoryConnection connection = new InMemoryConnection();
+        try (HBaseTemplate hBaseTemplate = new HBaseTemplate(connection)) {
+            hBaseTemplate.setRowKeySalt("events", new HBaseRowKeySalt(4));
+            List<String> keys = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                keys.add(String.format("event-%03d", i));
+            }
+            Function<String, HBaseInputSet> putMapper = key -> new HBaseInputSet(new Put(toBytes(key)))
+                    .addString(FAMILY, "key", key);
+            hBaseTemplate.save("events", keys.subList(0, 50), putMapper);
+            try (HBaseWriter<String> writer = hBaseTemplate.writer("events", putMapper)) {
+                writer.writeAll(keys.subList(50, 100).iterator());
+            }
+
+            Set<Byte> buckets = new TreeSet<>();
+            try (ResultScanner physicalRows = connection.getTable(TableName.valueOf("events")).getScanner(new Scan())) {
+                for (Result result : physicalRows) {
+                    buckets.add(result.getRow()[0]);
+                }
+            }
+            Assert.assertEquals(4, buckets.size());
+
+            Function<HBaseOutputSet, String> rowMapper = outputSet -> Bytes.toString(outputSet.getRow());
+            Assert.assertEquals("event-042", hBaseTemplate.get("events", new Get(toBytes("event-042")), rowMapper));
+            Assert.assertEquals(keys.subList(10, 20), hBaseTemplate.stream("events",
+                    new Scan().withStartRow(toBytes("event-010")).withStopRow(toBytes("event-020")), rowMapper)
+                    .collect(Collectors.toList()));
+            Assert.assertEquals(keys.subList(0, 5), hBaseTemplate.stream("events", new Scan().setLimit(5), rowMapper)
+                    .collect(Collectors.toList()));
+            Assert.assertEquals(Arrays.asList("event-077", "event-003"), hBaseTemplate.multiGet("events",
+                    Arrays.asList(new Get(toBytes("event-077")), new Get(toBytes("event-003"))), rowMapper, true)
+                    .map(HBaseGetResult::getValue)
+                    .collect(Collectors.toList()));
+
+            // buckets are merged on the consuming thread, a single worker and tiny buffers cannot stall it
+            ExecutorService executor = Executors.newFixedThreadPool(1);
+            try {
+                hBaseTemplate.setExecutorService(executor);
+                hBaseTemplate.setParallelScanBufferSize(1);
+                Assert.assertEquals(keys, hBaseTemplate.stream("events", new Scan(), rowMapper).collect(Collectors.toList()));
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void salted_scans_should_read_their_buckets_concurrently() throws Exception {
+        CountDownLatch opening = new CountDownLatch(4);
+        AtomicBoolean overlapped = new AtomicBoolean(true);
+        List<Boolean> prefetches = Collections.synchronizedList(new ArrayList<>());
+        InMemoryConnection connection = new InMemoryConnection(name -> new InMemoryTable(name) {
+            @Override
+            public ResultScanner getScanner(Scan scan) throws IOException {
+                prefetches.add(scan.isAsyncPrefetch());
+                // every bucket waits for the others, opened one after the other this would time out
+                opening.countDown();
+                try {
+                    if (!opening.await(5, TimeUnit.SECONDS)) {
+                        overlapped.set(false);
+                    }
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                return super.getScanner(scan);
+            }
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try (HBaseTemplate hBaseTemplate = new HBaseTemplate(connection)) {
+            hBaseTemplate.setExecutorService(executor);
+            hBaseTemplate.setRowKeySalt("events", new HBaseRowKeySalt(4));
+            List<String> keys = Arrays.asList("event-1", "event-2", "event-3", "event-4", "event-5");
+            hBaseTemplate.save("events", keys, (String key) -> new HBaseInputSet(new Put(toBytes(key))).addString(FAMILY, "key", key));
+
+            Assert.assertEquals(keys, hBaseTemplate.stream("events", new Scan(), outputSet -> outputSet.getString(FAMILY, "key"))
+                    .collect(Collectors.toList()));
+            Assert.assertTrue(overlapped.get());
+            Assert.assertEquals(Collections.nCopies(4, Boolean.TRUE), prefetches);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void salted_puts_should_keep_cell_tags() throws IOException {
+        Put put = new Put(toBytes("event-001")).add(ExtendedCellBuilderFactory.create(CellBuilderType.DEEP_COPY)
+                .setRow(toBytes("event-001"))
+                .setFamily(BIN_FAMILY)
+                .setQualifier(toBytes("key"))
+                .setTimestamp(42)
+                .setType(Cell.Type.Put)
+                .setValue(toBytes("value"))
+                .setTags(Collections.singletonList(new ArrayBackedTag((byte) 1, "visibility")))
+                .build());
+        HBaseRowKeySalt salt = new HBaseRowKeySalt(4);
+        Cell salted = salt.salt(put).get(BIN_FAMILY, toBytes("key")).get(0);
+        Assert.assertArrayEquals(salt.salt(toBytes("event-001")), CellUtil.cloneRow(salted));
+        Assert.assertEquals(42, salted.getTimestamp());
+        Assert.assertEquals("value", Bytes.toString(CellUtil.cloneValue(salted)));
+        Assert.assertEquals("visibility", Tag.getValueAsString(((RawCell) salted).getTag((byte) 1).get()));
+    }
+
+    @Test
+    public void queries_should_fetch_only_the_columns_the_mapper_reads() throws IOException {
+        HBaseTemplate hBaseTemplate = new HBaseTemplate(mockConnection);
+        HBaseColumn string = HBaseColumn.of(FAMILY, "string");
+        HBaseColumn intWrapper = HBaseColumn.of(FAMILY, "intWrapper");
+        HBaseQuery<String> declared = HBaseQuery.of(outputSet -> outputSet.getString(string))
+                .column(string)
+                .where(intWrapper, CompareOperator.GREATER, 0);
+
+        Assert.assertEquals(samplePojo.getString(), hBaseTemplate.get("mockHbaseTable", new Get(toBytes("mockRowKey")), declared));
+        ArgumentCaptor<Get> declaredGet = ArgumentCaptor.forClass(Get.class);
+        verify(mockTable).get(declaredGet.capture());
+        Assert.assertEquals(Arrays.asList(intWrapper, string), columns(declaredGet.getValue().getFamilyMap()));
+        Assert.assertTrue(declaredGet.getValue().getFilter() instanceof SingleColumnValueFilter);
+        // the caller's get stays as it was, so applying again does not nest the filters
+        Get reused = new Get(toBytes("mockRowKey"));
+        declared.apply(reused);
+        Assert.assertFalse(reused.hasFamilies());
+        Assert.assertNull(reused.getFilter());
+        Assert.assertTrue(declared.apply(reused).getFilter() instanceof SingleColumnValueFilter);
+
+        HBaseQuery<Integer> recorded = HBaseQuery.of(outputSet -> outputSet.getInteger(intWrapper) + outputSet.getInt(FAMILY, "intPrimitive", 0))
+                .recordColumns();
+        Scan first = new Scan();
+        hBaseTemplate.stream("mockHbaseTable", first, recorded).count();
+        Assert.assertFalse(first.hasFamilies());
+        Scan next = recorded.apply(new Scan());
+        Assert.assertEquals(Arrays.asList(HBaseColumn.of(FAMILY, "intPrimitive"), intWrapper), columns(next.getFamilyMap()));
+        Assert.assertNull(next.getFilter());
+    }
+
+    @Test
+    public void pipeline_should_map_and_save_rows_concurrently() throws IOException {
+        InMemoryConnection connection = new InMemoryConnection();
+        try (HBaseTemplate hBaseTemplate = new HBaseTemplate(connection)) {
+            List<Integer> numbers = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                numbers.add(i);
+            }
+            hBaseTemplate.save("source", numbers, (Integer number) -> new HBaseInputSet(new Put(toBytes(String.format("%04d", number))))
+                    .addInt(FAMILY, "number", number));
+
+            long written = hBaseTemplate.pipeline("source", new Scan(), outputSet -> {
+                        int number = outputSet.getInt(FAMILY, "number", -1);
+                        return number % 10 == 0 ? null : number;
+                    })
+                    .workers(4)
+                    .queueCapacity(8)
+                    .batchSize(64)
+                    .saveTo("target", (Integer number) -> new HBaseInputSet(new Put(toBytes(number))).addInt(FAMILY, "square", number * number));
+
+            Assert.assertEquals(900, written);
+            Assert.assertEquals(900, ((InMemoryTable) connection.getTable(TableName.valueOf("target"))).size());
+            Assert.assertEquals(Integer.valueOf(49), hBaseTemplate.get("target", new Get(toBytes(7)),
+                    outputSet -> outputSet.getInteger(FAMILY, "square")));
+        }
+    }
+
+    @Test
+    public void pipeline_should_stop_on_the_first_failure() throws IOException {
+        InMemoryConnection connection = new InMemoryConnection();
+        try (HBaseTemplate hBaseTemplate = new HBaseTemplate(connection)) {
+            List<String> keys = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                keys.add(String.format("key-%03d", i));
+            }
+            hBaseTemplate.save("source", keys, (String key) -> new HBaseInputSet(new Put(toBytes(key))).addString(FAMILY, "key", key));
+
+            try {
+                hBaseTemplate.pipeline("source", new Scan(), outputSet -> {
+                    String key = outputSet.getString(FAMILY, "key");
+                    if (key.equals("key-050")) {
+                        throw new IllegalStateException("unmappable " + key);
+                    }
+                    return key;
+                }).queueCapacity(4).batchSize(10).run(batch -> { });
+                Assert.fail();
+            } catch (IllegalStateException e) {
+                Assert.assertEquals("unmappable key-050", e.getMessage());
+            }
+
+            try {
+                hBaseTemplate.pipeline("source", new Scan(), outputSet -> outputSet.getString(FAMILY, "key"))
+                        .run(batch -> {
+                            throw new IOException("sink is down");
+                        });
+                Assert.fail();
+            } catch (IOException e) {
+                Assert.assertEquals("sink is down", e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void pipeline_should_fit_its_workers_to_a_fixed_pool() throws IOException, InterruptedException {
+        InMemoryConnection connection = new InMemoryConnection();
+        try (HBaseTemplate hBaseTemplate = new HBaseTemplate(connection)) {
+            List<String> keys = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                keys.add(String.format("key-%03d", i));
+            }
+            hBaseTemplate.save("source", keys, (String key) -> new HBaseInputSet(new Put(toBytes(key))).addString(FAMILY, "key", key));
+
+            // more workers than threads, the reader would wait behind them
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            try {
+                hBaseTemplate.setExecutorService(executor);
+                Assert.assertEquals(100, hBaseTemplate.pipeline("source", new Scan(), outputSet -> outputSet.getString(FAMILY, "key"))
+                        .workers(4).queueCapacity(4).run(batch -> { }));
+            } finally {
+                executor.shutdown();
+            }
+
+            executor = Executors.newFixedThreadPool(1);
+            try {
+                hBaseTemplate.setExecutorService(executor);
+                hBaseTemplate.pipeline("source", new Scan(), outputSet -> outputSet.getString(FAMILY, "key")).run(batch -> { });
+                Assert.fail();
+            } catch (IllegalStateException e) {
+                Assert.assertEquals("A pipeline needs an executor of at least two threads", e.getMessage());
+            } finally {
+                executor.shutdown();
+            }
+
+            // takes the reader then turns the workers away
+            AtomicInteger submitted = new AtomicInteger();
+            ThreadPoolExecutor rejecting = new ThreadPoolExecutor(4, 4, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>()) {
+                @Override
+                public void execute(Runnable command) {
+                    if (submitted.incrementAndGet() > 1) {
+                        throw new RejectedExecutionException("pool is full");
+                    }
+                    super.execute(command);
+                }
+            };
+            try {
+                hBaseTemplate.setExecutorService(rejecting);
+                hBaseTemplate.pipeline("source", new Scan(), outputSet -> outputSet.getString(FAMILY, "key"))
+                        .queueCapacity(4).run(batch -> { });
+                Assert.fail();
+            } catch (RejectedExecutionException e) {
+                Assert.assertEquals("pool is full", e.getMessage());
+            } finally {
+                rejecting.shutdown();
+            }
+            // the reader gave up instead of waiting on the full queue
+            Assert.assertTrue(rejecting.awaitTermination(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void incremental_scans_should_resume_from_the_committed_checkpoint() throws IOException {
+        HBaseTemplate hBaseTemplate = new HBaseTemplate(mockConnection);
+        File checkpointFile = new File(temporaryFolder.getRoot(), "checkpoints.properties");
+        long[] now = { 100_000 };
+        HBaseIncrementalScanner scanner = new HBaseIncrementalScanner(hBaseTemplate, new HBaseFileCheckpointStore(checkpointFile.toPath()),
+                Duration.ofSeconds(5), () -> now[0]);
+        ArgumentCaptor<Scan> scans = ArgumentCaptor.forClass(Scan.class);
+
+        Scan scan = new Scan();
+        try (HBaseChangeScan<Pojo> changes = scanner.scan("mockHbaseTable", "sync", scan, this::rowMapper)) {
+            Assert.assertEquals(1, changes.stream().count());
+            changes.commit();
+        }
+        verify(mockTable).getScanner(scans.capture());
+        Assert.assertEquals(0, scans.getValue().getTimeRange().getMin());
+        Assert.assertEquals(95_000, scans.getValue().getTimeRange().getMax());
+        // the time range goes on a copy, the caller's scan can be reused for the next run
+        Assert.assertTrue(scan.getTimeRange().isAllTime());
+
+        // not committed, the next run reads the same window again
+        now[0] = 160_000;
+        try (HBaseChangeScan<Pojo> changes = scanner.scan("mockHbaseTable", "sync", new Scan(), this::rowMapper)) {
+            Assert.assertEquals(95_000, changes.getFrom());
+            Assert.assertEquals(155_000, changes.getTo());
+        }
+        HBaseIncrementalScanner restarted = new HBaseIncrementalScanner(hBaseTemplate, new HBaseFileCheckpointStore(checkpointFile.toPath()),
+                Duration.ofSeconds(5), () -> now[0]);
+        try (HBaseChangeScan<Pojo> changes = restarted.scan("mockHbaseTable", "sync", new Scan(), this::rowMapper)) {
+            Assert.assertEquals(95_000, changes.getFrom());
+            changes.commit();
+        }
+
+        // nothing is read until the clock has moved past the safety margin
+        now[0] = 158_000;
+        try (HBaseChangeScan<Pojo> changes = restarted.scan("mockHbaseTable", "sync", new Scan(), this::rowMapper)) {
+            Assert.assertFalse(changes.hasNext());
+            changes.commit();
+        }
+        Assert.assertEquals(Long.valueOf(155_000), new HBaseFileCheckpointStore(checkpointFile.toPath()).load("sync"));
+        Assert.assertNull(new HBaseFileCheckpointStore(checkpointFile.toPath()).load("other"));
+        verify(mockTable, times(3)).getScanner(any(Scan.class));
+    }
+
+    @Test
+    public void aggregations_should_merge_region_partials_per_group() throws IOException {
+        HBaseColumn region = HBaseColumn.of(FAMILY, "region");
+        HBaseColumn amount = HBaseColumn.of(FAMILY, "amount");
+        HBaseColumn price = HBaseColumn.of(FAMILY, "price");
+        HBaseColumn quantity = HBaseColumn.of(FAMILY, "quantity");
+        InMemoryConnection connection = new InMemoryConnection().splitAt("row-0250", "row-0500", "row-0750");
+        try (HBaseTemplate hBaseTemplate = new HBaseTemplate(connection)) {
+            List<Integer> numbers = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                numbers.add(i);
+            }
+            String[] regions = { "eu", "us", "ap" };
+            hBaseTemplate.save("sales", numbers, (Integer i) -> {
+                HBaseInputSet inputSet = new HBaseInputSet(new Put(toBytes(String.format("row-%04d", i))))
+                        .addString(region, regions[i % 3])
+                        .addLong(amount, (long) i)
+                        .addDouble(price, i * 0.5);
+                return i % 2 == 0 ? inputSet.addInt(quantity, 2) : inputSet;
+            });
+
+            HBaseAggregation<String> byRegion = HBaseAggregation.groupBy(region)
+                    .longs("amount", amount)
+                    .doubles("price", price)
+                    .ints("quantity", quantity);
+            Scan plain = new Scan();
+            Assert.assertEquals(4, byRegion.apply(plain).getFamilyMap().get(BIN_FAMILY).size());
+            Assert.assertFalse(plain.hasFamilies());
+            // the caller's filter may test columns the aggregation does not read
+            Scan filtered = new Scan().setFilter(new SingleColumnValueFilter(BIN_FAMILY, toBytes("status"),
+                    CompareOperator.EQUAL, toBytes("paid")));
+            Assert.assertFalse(byRegion.apply(filtered).hasFamilies());
+            Assert.assertSame(filtered.getFilter(), HBaseAggregation.total().apply(filtered).getFilter());
+            HBaseAggregates<String> sales = hBaseTemplate.aggregate("sales", new Scan(), byRegion);
+
+            HBaseAggregate total = sales.getTotal();
+            Assert.assertEquals(1000, total.getCount());
+            Assert.assertEquals(499500, total.getLongs("amount").getSum());
+            Assert.assertEquals(0, total.getLongs("amount").getMin());
+            Assert.assertEquals(999, total.getLongs("amount").getMax());
+            Assert.assertEquals(249.75, total.getDoubles("price").getAverage(), 1e-9);
+            Assert.assertEquals(500, total.getLongs("quantity").getCount());
+            Assert.assertEquals(1000, total.getLongs("quantity").getSum());
+            Assert.assertEquals(3, sales.getGroups().size());
+            Assert.assertEquals(334, sales.getGroup("eu").getCount());
+            Assert.assertEquals(999, sales.getGroup("eu").getLongs("amount").getMax());
+
+            HBaseAggregates<Void> counted = hBaseTemplate.aggregate("sales",
+                    new Scan().withStartRow(toBytes("row-0100")).withStopRow(toBytes("row-0600")), HBaseAggregation.total());
+            Assert.assertEquals(500, counted.getTotal().getCount());
+        }
+    }
+
+    @Test
+    public void limits_should_count_the_rows_of_every_region_together() throws IOException {
+        HBaseColumn amount = HBaseColumn.of(FAMILY, "amount");
+        InMemoryConnection connection = new InMemoryConnection().splitAt("row-0250", "row-0500", "row-0750");
+        try (HBaseTemplate hBaseTemplate = new HBaseTemplate(connection)) {
+            List<Integer> numbers = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                numbers.add(i);
+            }
+            hBaseTemplate.save("sales", numbers, (Integer i) -> new HBaseInputSet(new Put(toBytes(String.format("row-%04d", i))))
+                    .addLong(amount, (long) i));
+            Function<HBaseOutputSet, Long> rowMapper = outputSet -> outputSet.getLong(amount);
+
+            Assert.assertEquals(LongStream.range(0, 10).boxed().collect(Collectors.toList()),
+                    hBaseTemplate.parallelScan("sales", new Scan().setLimit(10), rowMapper, true).collect(Collectors.toList()));
+            Assert.assertEquals(10, hBaseTemplate.parallelScan("sales", new Scan().setLimit(10), rowMapper, false).count());
+
+            HBaseAggregate first = hBaseTemplate.aggregate("sales", new Scan().setLimit(10),
+                    HBaseAggregation.total().longs("amount", amount)).getTotal();
+            Assert.assertEquals(10, first.getCount());
+            Assert.assertEquals(45, first.getLongs("amount").getSum());
+        }
+    }
+
+    @Test
+    public void bulk_loader_should_spill_sorted_hfiles_per_region_and_family() throws IOException {
+        HBaseColumn amount = HBaseColumn.of(FAMILY, "amount");
+        HBaseColumn tag = HBaseColumn.of("t", "tag");
+        InMemoryConnection connection = new InMemoryConnection().splitAt("row-0250", "row-0500", "row-0750");
+        try (HBaseTemplate hBaseTemplate = new HBaseTemplate(connection)) {
+            List<Integer> numbers = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                numbers.add(i);
+            }
+            Collections.shuffle(numbers, new Random(7));
+            // the last write of a cell within a spill has to win over the earlier ones
+            numbers.add(numbers.indexOf(42) + 1, -42);
+            Path directory = new Path(temporaryFolder.getRoot().toURI().toString(), "bulk");
+            Function<Integer, HBaseInputSet> putMapper = i -> new HBaseInputSet(new Put(toBytes(String.format("row-%04d", Math.abs(i)))))
+                    .addLong(amount, (long) i)
+                    .addString(tag, i % 2 == 0 ? "even" : "odd");
+            try (HBaseBulkLoader<Integer> loader = hBaseTemplate.bulkLoader("sales", putMapper, directory).bufferSize(64 * 1024)) {
+                loader.writeAll(numbers.iterator());
+                loader.close();
+
+                String[] regionStarts = { "", "row-0250", "row-0500", "row-0750", null };
+                Map<String, Long> amounts = new HashMap<>();
+                int spills = 0;
+                for (Path file : loader.getFiles()) {
+                    Assert.assertTrue(file.getParent().getName().equals(FAMILY) || file.getParent().getName().equals("t"));
+                    // under the loader's own subdirectory
+                    Assert.assertEquals(directory, file.getParent().getParent().getParent());
+                    spills = Math.max(spills, Integer.parseInt(file.getName().substring(0, 5)) + 1);
+                    int region = Integer.parseInt(file.getName().substring(6));
+                    HFile.Reader reader = HFile.createReader(file.getFileSystem(connection.getConfiguration()), file,
+                            CacheConfig.DISABLED, true, connection.getConfiguration());
+                    try {
+                        Assert.assertNotNull(reader.loadFileInfo().get(HStoreFile.TIMERANGE_KEY));
+                        HFileScanner scanner = reader.getScanner(false, false);
+                        Assert.assertTrue(scanner.seekTo());
+                        Cell previous = null;
+                        do {
+                            Cell cell = scanner.getCell();
+                            if (previous != null) {
+                                Assert.assertTrue(CellComparator.getInstance().compare(previous, cell) < 0);
+                            }
+                            String row = Bytes.toString(CellUtil.cloneRow(cell));
+                            Assert.assertTrue(row.compareTo(regionStarts[region]) >= 0);
+                            Assert.assertTrue(regionStarts[region + 1] == null || row.compareTo(regionStarts[region + 1]) < 0);
+                            if (CellUtil.matchingQualifier(cell, toBytes("amount"))) {
+                                Assert.assertNull(amounts.put(row, Bytes.toLong(CellUtil.cloneValue(cell))));
+                            }
+                            previous = cell;
+                        } while (scanner.next());
+                    } finally {
+                        reader.close();
+                    }
+                }
+                Assert.assertTrue(spills > 1);
+                Assert.assertEquals(1000, amounts.size());
+                Assert.assertEquals(Long.valueOf(-42), amounts.get("row-0042"));
+                Assert.assertEquals(Long.valueOf(999), amounts.get("row-0999"));
+            }
+        }
+    }
+
+    @Test
+    public void result_buffers_should_hold_rows_off_heap_and_spill_past_the_pool() throws IOException {
+        HBaseColumn amount = HBaseColumn.of(FAMILY, "amount");
+        HBaseColumn name = HBaseColumn.of(FAMILY, "name");
+        try (HBaseTemplate hBaseTemplate = new HBaseTemplate(new InMemoryConnection())) {
+            HBaseBufferPool pool = new HBaseBufferPool(4096, 16 * 1024, temporaryFolder.getRoot().toPath());
+            hBaseTemplate.setBufferPool(pool);
+            List<Integer> numbers = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                numbers.add(i);
+            }
+            hBaseTemplate.save("sales", numbers, (Integer i) -> new HBaseInputSet(new Put(toBytes(String.format("row-%04d", i))))
+                    .addLong(amount, (long) i)
+                    .addString(name, "name-" + i));
+
+            List<Long> expected = numbers.stream().map(Integer::longValue).collect(Collectors.toList());
+            try (HBaseResultBuffer buffer = hBaseTemplate.buffer("sales", new Scan())) {
+                Assert.assertEquals(1000, buffer.size());
+                Assert.assertTrue(buffer.getOffHeapBytes() > 0);
+                Assert.assertTrue(buffer.getSpilledBytes() > 0);
+                Assert.assertEquals(16 * 1024, pool.getAllocatedBytes());
+                Assert.assertEquals(expected, buffer.stream(outputSet -> outputSet.getLong(amount)).collect(Collectors.toList()));
+                // replays start over from the first row
+                try (Stream<String> names = buffer.stream(outputSet -> outputSet.getString(name))) {
+                    Assert.assertEquals("name-999", names.reduce((first, second) -> second).orElse(null));
+                }
+            }
+            Assert.assertEquals(0, temporaryFolder.getRoot().list().length);
+
+            Iterator<String> open;
+            try (HBaseResultBuffer buffer = hBaseTemplate.buffer("sales",
+                    Arrays.asList(new Get(toBytes("row-0042")), new Get(toBytes("missing")), new Get(toBytes("row-0007"))))) {
+                Assert.assertEquals(0, buffer.getSpilledBytes());
+                Assert.assertEquals(Arrays.asList("row-0042", "row-0007"), buffer.stream(outputSet -> Bytes.toString(outputSet.getRow()))
+                        .collect(Collectors.toList()));
+                open = buffer.iterator(outputSet -> Bytes.toString(outputSet.getRow()));
+                Assert.assertEquals("row-0042", open.next());
+            }
+            // its chunk is back in the pool
+            try {
+                open.next();
+                Assert.fail();
+            } catch (IllegalStateException e) {
+                Assert.assertEquals("Result buffer is closed", e.getMessage());
+            }
+            Assert.assertEquals(16 * 1024, pool.getAllocatedBytes());
+        }
+    }
+
+    private static List<HBaseColumn> columns(Map<byte[], NavigableSet<byte[]>> familyMap) {
+        List<HBaseColumn> columns = new ArrayList<>();
+        familyMap.forEach((family, qualifiers) -> qualifiers.forEach(qualifier -> columns.add(HBaseColumn.of(family, qualifier))));
+        return columns;
+    }
+
+    private void mockRegions(String... boundaries) throws IOException {
+        byte[][] startKeys = new byte[boundaries.length - 1][];
+        byte[][] endKeys = new byte[boundaries.length - 1][];
+        for (int i = 0; i < boundaries.length - 1; i++) {
+            startKeys[i] = toBytes(boundaries[i]);
+            endKeys[i] = toBytes(boundaries[i + 1]);
+        }
+        RegionLocator mockRegionLocator = mock(RegionLocator.class);
+        when(mockRegionLocator.getStartEndKeys()).thenReturn(new Pair<>(startKeys, endKeys));
+        when(mockConnection.getRegionLocator(any(TableName.class))).thenReturn(mockRegionLocator);
+    }
+
+    // every scan returns the rows between its start and stop row
+    private void mockRegionRows(String... rowKeys) throws IOException {
+        when(mockTable.getScanner(any(Scan.class))).thenAnswer(invocation -> {
+            Scan scan = invocation.getArgument(0);
+            List<Result> rows = new ArrayList<>();
+            for (String rowKey : rowKeys) {
+                byte[] row = toBytes(rowKey);
+                if (Bytes.compareTo(row, scan.getStartRow()) >= 0
+                        && (scan.getStopRow().length == 0 || Bytes.compareTo(row, scan.getStopRow()) < 0)) {
+                    rows.add(toResult(new Put(row).addColumn(BIN_FAMILY, toBytes("row"), row)));
+                }
+            }
+            ResultScanner scanner = mock(ResultScanner.class);
+            when(scanner.iterator()).thenReturn(rows.iterator());
+            return scanner;
+        });
+    }
+
+    private static Result toResult(Put put) {
+        List<Cell> cells = new ArrayList<>();
+        put.getFamilyCellMap().values().forEach(cells::addAll);
+        cells.sort(CellComparator.getInstance());
+        return Result.create(cells);
+    }
+
     private Pojo rowMapper(HBaseOutputSet outputSet) {
         Pojo pojo = new Pojo();
         pojo.setFloatPrimitive(outputSet.getFloat(FAMILY, "floatPrimitive"));
@@ -0,0 +1,165 @@
+package org.gooseman.hbase;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Pair;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Connection stand-in handing out {@link InMemoryTable}s, one per table name. Buffered mutators
+ * hold puts until they are flushed or closed.
+ */
+public class InMemoryConnection implements Connection {
+
+    private final Configuration configuration = HBaseConfiguration.create();
+    private final ConcurrentMap<TableName, Table> tables = new ConcurrentHashMap<>();
+    private final Function<TableName, Table> tableFactory;
+    private volatile boolean closed;
+    private volatile String[] splitKeys = new String[0];
+
+    public InMemoryConnection() {
+        this(InMemoryTable::new);
+    }
+
+    public InMemoryConnection(Function<TableName, Table> tableFactory) {
+        this.tableFactory = tableFactory;
+    }
+
+    @Override
+    public Configuration getConfiguration() {
+        return configuration;
+    }
+
+    @Override
+    public Table getTable(TableName tableName) {
+        return tables.computeIfAbsent(tableName, tableFactory);
+    }
+
+    @Override
+    public BufferedMutator getBufferedMutator(TableName tableName) {
+        return getBufferedMutator(new BufferedMutatorParams(tableName));
+    }
+
+    @Override
+    public BufferedMutator getBufferedMutator(BufferedMutatorParams params) {
+        Table table = getTable(params.getTableName());
+        return new BufferedMutator() {
+
+            private final List<Put> buffer = new ArrayList<>();
+
+            @Override
+            public TableName getName() {
+                return params.getTableName();
+            }
+
+            @Override
+            public Configuration getConfiguration() {
+                return configuration;
+            }
+
+            @Override
+            public synchronized void mutate(Mutation mutation) throws IOException {
+                buffer.add((Put) mutation);
+                if (buffer.size() >= 1000) {
+                    flush();
+                }
+            }
+
+            @Override
+            public synchronized void mutate(List<? extends Mutation> mutations) throws IOException {
+                for (Mutation mutation : mutations) {
+                    mutate(mutation);
+                }
+            }
+
+            @Override
+            public synchronized void flush() throws IOException {
+                table.put(new ArrayList<>(buffer));
+                buffer.clear();
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+
+            @Override
+            public long getWriteBufferSize() {
+                return params.getWriteBufferSize();
+            }
+
+            @Override
+            public void setRpcTimeout(int timeout) {
+            }
+
+            @Override
+            public void setOperationTimeout(int timeout) {
+            }
+        };
+    }
+
+    // every table is split at the same keys, a single region by default
+    public InMemoryConnection splitAt(String... splitKeys) {
+        this.splitKeys = splitKeys;
+        return this;
+    }
+
+    @Override
+    public RegionLocator getRegionLocator(TableName tableName) throws IOException {
+        byte[][] startKeys = new byte[splitKeys.length + 1][];
+        byte[][] endKeys = new byte[splitKeys.length + 1][];
+        startKeys[0] = HConstants.EMPTY_START_ROW;
+        for (int i = 0; i < splitKeys.length; i++) {
+            endKeys[i] = Bytes.toBytes(splitKeys[i]);
+            startKeys[i + 1] = endKeys[i];
+        }
+        endKeys[splitKeys.length] = HConstants.EMPTY_END_ROW;
+        RegionLocator regionLocator = mock(RegionLocator.class);
+        when(regionLocator.getStartEndKeys()).thenReturn(new Pair<>(startKeys, endKeys));
+        return regionLocator;
+    }
+
+    @Override
+    public Admin getAdmin() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public TableBuilder getTableBuilder(TableName tableName, ExecutorService pool) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void abort(String why, Throwable e) {
+        closed = true;
+    }
+
+    @Override
+    public boolean isAborted() {
+        return closed;
+    }
+}
@@ -0,0 +1,151 @@
+package org.gooseman.hbase;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.client.metrics.ScanMetrics;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Table stand-in that keeps the latest version of every cell in memory, enough to exercise the
+ * template without a cluster. Gets and scans return whole rows.
+ */
+public class InMemoryTable implements Table {
+
+    private final TableName tableName;
+    private final Configuration configuration = HBaseConfiguration.create();
+    private final NavigableMap<byte[], Result> rows = new ConcurrentSkipListMap<>(Bytes.BYTES_COMPARATOR);
+
+    public InMemoryTable(TableName tableName) {
+        this.tableName = tableName;
+    }
+
+    @Override
+    public TableName getName() {
+        return tableName;
+    }
+
+    @Override
+    public Configuration getConfiguration() {
+        return configuration;
+    }
+
+    @Override
+    public TableDescriptor getDescriptor() {
+        return TableDescriptorBuilder.newBuilder(tableName).build();
+    }
+
+    @Override
+    public Result get(Get get) throws IOException {
+        Result result = rows.get(get.getRow());
+        return result == null ? Result.EMPTY_RESULT : result;
+    }
+
+    @Override
+    public Result[] get(List<Get> gets) throws IOException {
+        Result[] results = new Result[gets.size()];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = get(gets.get(i));
+        }
+        return results;
+    }
+
+    @Override
+    public void batch(List<? extends Row> actions, Object[] results) throws IOException {
+        for (int i = 0; i < actions.size(); i++) {
+            Row action = actions.get(i);
+            if (action instanceof Get) {
+                results[i] = get((Get) action);
+            } else if (action instanceof Put) {
+                put((Put) action);
+                results[i] = Result.EMPTY_RESULT;
+            } else {
+                results[i] = new UnsupportedOperationException(action.getClass().getSimpleName());
+            }
+        }
+    }
+
+    @Override
+    public ResultScanner getScanner(Scan scan) throws IOException {
+        NavigableMap<byte[], Result> range = rows;
+        if (scan.getStartRow().length > 0) {
+            range = range.tailMap(scan.getStartRow(), scan.includeStartRow());
+        }
+        if (scan.getStopRow().length > 0) {
+            range = range.headMap(scan.getStopRow(), scan.includeStopRow());
+        }
+        Iterator<Result> results = range.values().iterator();
+        return new ResultScanner() {
+            @Override
+            public Result next() {
+                return results.hasNext() ? results.next() : null;
+            }
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public boolean renewLease() {
+                return true;
+            }
+
+            @Override
+            public ScanMetrics getScanMetrics() {
+                return null;
+            }
+        };
+    }
+
+    @Override
+    public void put(Put put) throws IOException {
+        rows.compute(put.getRow(), (row, existing) -> merge(existing, put));
+    }
+
+    @Override
+    public void put(List<Put> puts) throws IOException {
+        for (Put put : puts) {
+            put(put);
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    public int size() {
+        return rows.size();
+    }
+
+    private static Result merge(Result existing, Put put) {
+        List<Cell> cells = new ArrayList<>();
+        put.getFamilyCellMap().values().forEach(cells::addAll);
+        if (existing != null && !existing.isEmpty()) {
+            for (Cell cell : existing.rawCells()) {
+                if (cells.stream().noneMatch(added -> sameColumn(added, cell))) {
+                    cells.add(cell);
+                }
+            }
+        }
+        Collections.sort(cells, CellComparator.getInstance());
+        return Result.create(cells);
+    }
+
+    private static boolean sameColumn(Cell left, Cell right) {
+        return Bytes.equals(left.getFamilyArray(), left.getFamilyOffset(), left.getFamilyLength(),
+                right.getFamilyArray(), right.getFamilyOffset(), right.getFamilyLength())
+                && Bytes.equals(left.getQualifierArray(), left.getQualifierOffset(), left.getQualifierLength(),
+                right.getQualifierArray(), right.getQualifierOffset(), right.getQualifierLength());
+    }
+}